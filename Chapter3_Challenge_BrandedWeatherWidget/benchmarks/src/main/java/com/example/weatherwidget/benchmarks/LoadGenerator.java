@@ -0,0 +1,144 @@
+package com.example.weatherwidget.benchmarks;
+
+import com.example.weatherwidget.LatencyRecorder;
+import com.example.weatherwidget.TokenBucket;
+import com.example.weatherwidget.WeatherCache;
+import com.example.weatherwidget.WeatherService;
+import com.example.weatherwidget.WeatherTransport;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives {@link WeatherService#getWeather} at a fixed request rate and reports the throughput and latency
+ * percentiles it got, against a {@link StubWeatherServer} started in-process or any other endpoint.
+ *
+ * <p>Requests are sent open-loop: each one is due at a fixed time whether or not earlier ones have finished, and
+ * its latency is measured from that time. A service that falls behind therefore shows up in the percentiles
+ * instead of silently lowering the rate. Cities are drawn uniformly from {@code --cities} names, so that count
+ * sets how many lookups the cache can answer.
+ *
+ * <p>{@code java -cp target/benchmarks.jar com.example.weatherwidget.benchmarks.LoadGenerator --rate 500 --duration 30}
+ */
+public final class LoadGenerator {
+    private double rate = 100;
+    private int durationSeconds = 30;
+    private int warmupSeconds = 5;
+    private int cities = 500;
+    private int cacheTtlSeconds = 300;
+    private double limit;
+    private String url;
+    private final StubWeatherServer.Options stubOptions = new StubWeatherServer.Options();
+
+    private final LatencyRecorder latency = new LatencyRecorder();
+    private final AtomicLong ok = new AtomicLong();
+    private final AtomicLong notFound = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong outstanding = new AtomicLong();
+
+    private LoadGenerator() {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        LoadGenerator generator = new LoadGenerator();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i].toLowerCase(Locale.ROOT)) {
+                case "--rate": generator.rate = Double.parseDouble(value); break;
+                case "--duration": generator.durationSeconds = Integer.parseInt(value); break;
+                case "--warmup": generator.warmupSeconds = Integer.parseInt(value); break;
+                case "--cities": generator.cities = Integer.parseInt(value); break;
+                case "--cache-ttl": generator.cacheTtlSeconds = Integer.parseInt(value); break;
+                case "--limit": generator.limit = Double.parseDouble(value); break;
+                case "--url": generator.url = value; break;
+                default:
+                    if (!generator.stubOptions.parse(args[i], value)) {
+                        System.err.println("Unknown option " + args[i]);
+                        return;
+                    }
+            }
+        }
+        generator.run();
+    }
+
+    private void run() throws IOException, InterruptedException {
+        StubWeatherServer stub = null;
+        String target = url;
+        if (target == null) {
+            stub = new StubWeatherServer(stubOptions);
+            target = stub.getBaseUrl();
+            System.out.println("Stub: " + stubOptions);
+        }
+        // A cache TTL of 0 sends every lookup that is not already in flight to the server
+        Duration ttl = Duration.ofSeconds(cacheTtlSeconds);
+        WeatherCache cache = new WeatherCache(ttl, ttl, Math.max(cities, 256));
+        // Without --limit the generator measures the server's throttling, not the client's
+        TokenBucket permits = limit > 0
+                ? new TokenBucket((int) Math.max(1, limit), limit)
+                : new TokenBucket(Integer.MAX_VALUE, 1e9);
+        WeatherTransport transport = new WeatherTransport();
+        WeatherService service = new WeatherService(target, cache, permits, transport);
+
+        System.out.printf("Target %s: %.0f requests/s for %d s after %d s warm-up, %d cities%n",
+                target, rate, durationSeconds, warmupSeconds, cities);
+        Random random = new Random(stubOptions.seed);
+        long interval = (long) (1e9 / rate);
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(durationSeconds);
+        long sent = 0;
+        for (long due = start; due < end; due += interval) {
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            boolean measured = due >= measureFrom;
+            if (measured) {
+                sent++;
+            }
+            send(service, "city-" + random.nextInt(cities), due, measured);
+        }
+        long sentAt = System.nanoTime();
+
+        long deadline = sentAt + TimeUnit.SECONDS.toNanos(30);
+        while (outstanding.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        double seconds = (sentAt - measureFrom) / 1e9;
+        long completed = ok.get() + notFound.get() + failed.get();
+        System.out.printf("Sent %d, completed %d (ok %d, not found %d, failed %d), %d still outstanding%n",
+                sent, completed, ok.get(), notFound.get(), failed.get(), outstanding.get());
+        System.out.printf("Throughput %.1f requests/s (offered %.1f)%n", completed / seconds, sent / seconds);
+        System.out.printf("Latency p50=%.2fms p99=%.2fms p99.9=%.2fms max=%.2fms%n",
+                latency.percentile(50), latency.percentile(99), latency.percentile(99.9), latency.getMaxMillis());
+        System.out.println("Cache: " + service.getCacheStats());
+        System.out.printf("Transport: %s, hedging after %.1fms%n", transport.getStats(), transport.getHedgeAfterMillis());
+        if (stub != null) {
+            System.out.println("Stub: " + stub);
+            stub.close();
+        }
+        System.exit(0);
+    }
+
+    private void send(WeatherService service, String city, long due, boolean measured) {
+        outstanding.incrementAndGet();
+        service.getWeather(city).whenComplete((data, ex) -> {
+            outstanding.decrementAndGet();
+            if (!measured) {
+                return;
+            }
+            latency.record(System.nanoTime() - due);
+            if (ex != null) {
+                failed.incrementAndGet();
+            } else if (data == null) {
+                notFound.incrementAndGet();
+            } else {
+                ok.incrementAndGet();
+            }
+        });
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.weatherwidget.benchmarks;
+
+import com.example.weatherwidget.WeatherService;
+import com.example.weatherwidget.WeatherService.WeatherData;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Decoding a recorded OpenWeatherMap current-weather response: the streaming {@code JsonReader}-based
+ * {@link WeatherService#parseWeatherData} against the previous approach of reading the body into a
+ * {@code String}, building a Gson tree and walking it. Run with the GC profiler (the default of
+ * {@link BenchmarkRunner}) to see the bytes allocated per parse.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"london", "mumbai-rain"})
+    public String payload;
+
+    private byte[] body;
+    private Gson gson;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        try (InputStream in = ParseBenchmark.class.getResourceAsStream("/payloads/" + payload + ".json")) {
+            if (in == null) {
+                throw new IOException("No recorded payload " + payload);
+            }
+            body = in.readAllBytes();
+        }
+        gson = new Gson();
+    }
+
+    @Benchmark
+    public WeatherData streaming() throws IOException {
+        return WeatherService.parseWeatherData(new ByteArrayInputStream(body));
+    }
+
+    @Benchmark
+    public WeatherData tree() {
+        // What BodyHandlers.ofString() and the tree walk did before
+        String json = new String(body, StandardCharsets.UTF_8);
+        JsonObject jsonObject = gson.fromJson(json, JsonObject.class);
+        if (jsonObject.has("cod") && !"200".equals(jsonObject.get("cod").getAsString())) {
+            return null;
+        }
+        double temp = jsonObject.getAsJsonObject("main").get("temp").getAsDouble();
+        String condition = "Unknown";
+        String description = "Unknown";
+        if (jsonObject.has("weather") && jsonObject.getAsJsonArray("weather").size() > 0) {
+            JsonObject weatherObj = jsonObject.getAsJsonArray("weather").get(0).getAsJsonObject();
+            condition = weatherObj.get("main").getAsString();
+            description = weatherObj.get("description").getAsString();
+        }
+        return new WeatherData(temp, condition, description, (int) (Math.random() * 100));
+    }
+}
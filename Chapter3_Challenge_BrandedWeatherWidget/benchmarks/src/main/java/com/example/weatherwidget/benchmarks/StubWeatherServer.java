@@ -0,0 +1,246 @@
+package com.example.weatherwidget.benchmarks;
+
+import com.example.weatherwidget.TokenBucket;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-process stand-in for the OpenWeatherMap current-weather endpoint. It answers with the recorded responses
+ * in {@code src/main/resources/payloads}, after a latency drawn from a log-normal distribution with an optional
+ * slow tail, and can fail a share of requests with 500 or throttle them with 429 like the real provider.
+ *
+ * <p>Cities starting with "unknown" get the provider's 404 response. Responses are delayed on a scheduler rather
+ * than by sleeping, so thousands of requests can be outstanding at once.
+ */
+public class StubWeatherServer implements AutoCloseable {
+    private static final String[] PAYLOADS = {"london", "mumbai-rain"};
+    private static final byte[] NOT_FOUND = "{\"cod\":\"404\",\"message\":\"city not found\"}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SERVER_ERROR = "{\"cod\":\"500\",\"message\":\"Internal error\"}".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] THROTTLED = ("{\"cod\":429,\"message\":\"Your account is temporary blocked due to exceeding of "
+            + "requests limitation of your subscription type.\"}").getBytes(StandardCharsets.UTF_8);
+
+    private final Options options;
+    private final List<byte[]> payloads = new ArrayList<>();
+    private final Random random;
+    private final TokenBucket quota;
+    private final HttpServer server;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong served = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong throttled = new AtomicLong();
+
+    public static class Options {
+        int port;
+        long seed = 42;
+        double medianMillis = 40;
+        double latencySigma = 0.5;
+        double slowFraction;
+        double slowMillis = 1000;
+        double errorRate;
+        double throttlePerSecond;
+
+        /**
+         * Port to listen on; 0 picks a free one.
+         */
+        public Options port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public Options seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * Latency follows a log-normal distribution with this median and sigma.
+         */
+        public Options latency(double medianMillis, double sigma) {
+            this.medianMillis = medianMillis;
+            this.latencySigma = sigma;
+            return this;
+        }
+
+        /**
+         * Share (0..1) of requests that take {@code millis} longer, for a tail the log-normal alone does not give.
+         */
+        public Options slowTail(double fraction, double millis) {
+            this.slowFraction = fraction;
+            this.slowMillis = millis;
+            return this;
+        }
+
+        /**
+         * Share (0..1) of requests answered with 500.
+         */
+        public Options errorRate(double errorRate) {
+            this.errorRate = errorRate;
+            return this;
+        }
+
+        /**
+         * Requests per second allowed before answering 429; 0 allows everything.
+         */
+        public Options throttle(double permitsPerSecond) {
+            this.throttlePerSecond = permitsPerSecond;
+            return this;
+        }
+
+        /**
+         * Applies {@code --option value} from a command line; returns false if {@code option} is not a stub option.
+         */
+        boolean parse(String option, String value) {
+            switch (option.toLowerCase(Locale.ROOT)) {
+                case "--port": port = Integer.parseInt(value); break;
+                case "--seed": seed = Long.parseLong(value); break;
+                case "--median-ms": medianMillis = Double.parseDouble(value); break;
+                case "--sigma": latencySigma = Double.parseDouble(value); break;
+                case "--slow-fraction": slowFraction = Double.parseDouble(value); break;
+                case "--slow-ms": slowMillis = Double.parseDouble(value); break;
+                case "--error-rate": errorRate = Double.parseDouble(value); break;
+                case "--throttle": throttlePerSecond = Double.parseDouble(value); break;
+                default:
+                    return false;
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("median=%.0fms sigma=%.2f slow=%.1f%%@%.0fms errors=%.1f%% throttle=%s",
+                    medianMillis, latencySigma, slowFraction * 100, slowMillis, errorRate * 100,
+                    throttlePerSecond > 0 ? String.format("%.0f/s", throttlePerSecond) : "off");
+        }
+    }
+
+    public StubWeatherServer(Options options) throws IOException {
+        this.options = options;
+        for (String name : PAYLOADS) {
+            try (InputStream in = StubWeatherServer.class.getResourceAsStream("/payloads/" + name + ".json")) {
+                if (in == null) {
+                    throw new IOException("No recorded payload " + name);
+                }
+                payloads.add(in.readAllBytes());
+            }
+        }
+        this.random = new Random(options.seed);
+        this.quota = options.throttlePerSecond > 0
+                ? new TokenBucket((int) Math.max(1, options.throttlePerSecond), options.throttlePerSecond)
+                : null;
+        this.scheduler = Executors.newScheduledThreadPool(2, r -> {
+            Thread t = new Thread(r, "stub-weather");
+            t.setDaemon(true);
+            return t;
+        });
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), options.port), 1024);
+        server.createContext("/data/2.5/weather", this::handle);
+        server.start();
+    }
+
+    /**
+     * The URL to pass to {@code WeatherService} or {@code -Dweather.baseUrl}.
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/data/2.5/weather";
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("served=%d errors=%d throttled=%d", served.get(), failed.get(), throttled.get());
+    }
+
+    private void handle(HttpExchange exchange) {
+        String city = city(exchange.getRequestURI());
+        int status;
+        byte[] body;
+        if (quota != null && !quota.tryAcquire()) {
+            throttled.incrementAndGet();
+            status = 429;
+            body = THROTTLED;
+            exchange.getResponseHeaders().set("Retry-After", "1");
+        } else if (random.nextDouble() < options.errorRate) {
+            failed.incrementAndGet();
+            status = 500;
+            body = SERVER_ERROR;
+        } else if (city.startsWith("unknown")) {
+            status = 404;
+            body = NOT_FOUND;
+        } else {
+            status = 200;
+            body = payloads.get(Math.floorMod(city.hashCode(), payloads.size()));
+        }
+        served.incrementAndGet();
+        scheduler.schedule(() -> respond(exchange, status, body), latencyMicros(), TimeUnit.MICROSECONDS);
+    }
+
+    private long latencyMicros() {
+        double millis = options.medianMillis * Math.exp(options.latencySigma * random.nextGaussian());
+        if (random.nextDouble() < options.slowFraction) {
+            millis += options.slowMillis;
+        }
+        return (long) (millis * 1000);
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) {
+        try (OutputStream out = exchange.getResponseBody()) {
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(status, body.length);
+            out.write(body);
+        } catch (IOException e) {
+            // The client gave up on this request, e.g. a cancelled hedge
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static String city(URI uri) {
+        String query = uri.getRawQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (parameter.startsWith("q=")) {
+                    return URLDecoder.decode(parameter.substring(2), StandardCharsets.UTF_8).toLowerCase(Locale.ROOT);
+                }
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Runs the stub until killed, e.g. to point the widget at it with {@code -Dweather.baseUrl}:
+     * {@code java -cp target/benchmarks.jar com.example.weatherwidget.benchmarks.StubWeatherServer --port 8089}.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Options options = new Options();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!options.parse(args[i], args[i + 1])) {
+                System.err.println("Unknown option " + args[i]);
+                return;
+            }
+        }
+        StubWeatherServer stub = new StubWeatherServer(options);
+        System.out.println("Stub weather server at " + stub.getBaseUrl() + " (" + options + ")");
+        Thread.currentThread().join();
+    }
+}
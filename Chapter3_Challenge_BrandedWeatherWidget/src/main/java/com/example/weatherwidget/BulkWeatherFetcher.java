@@ -0,0 +1,291 @@
+package com.example.weatherwidget;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Fetches the weather of many cities through a {@link WeatherService}, with at most {@code maxInFlight} lookups
+ * outstanding at a time. Requests still go through the service's cache and rate limiter, so cities fetched
+ * recently cost nothing and the provider's quota is respected however large the batch.
+ *
+ * <p>Results are published in completion order, one {@link CityResult} per city, including cities that failed.
+ * A batch stops once nobody wants its results any more: when the subscriber cancels its subscription, or the
+ * future returned by {@link #fetchAll} is cancelled, no further cities are sent and the lookups outstanding are
+ * cancelled.
+ */
+public class BulkWeatherFetcher implements AutoCloseable {
+    private final WeatherService service;
+    private final int maxInFlight;
+    // Hands results to subscribers and starts the next lookup, off the HTTP client's threads
+    private final Executor executor;
+    // The executor this fetcher created itself and shuts down on close; null if it was given one
+    private final ExecutorService ownExecutor;
+
+    /**
+     * How one city's lookup ended.
+     */
+    public enum Status {
+        OK,
+        NOT_FOUND,
+        FAILED
+    }
+
+    public static final class CityResult {
+        private final String city;
+        private final Status status;
+        private final WeatherService.WeatherData data;
+        private final Throwable error;
+        private final long latencyNanos;
+
+        CityResult(String city, Status status, WeatherService.WeatherData data, Throwable error, long latencyNanos) {
+            this.city = city;
+            this.status = status;
+            this.data = data;
+            this.error = error;
+            this.latencyNanos = latencyNanos;
+        }
+
+        public String getCity() {
+            return city;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        /**
+         * The weather, or {@code null} unless the status is {@link Status#OK}.
+         */
+        public WeatherService.WeatherData getData() {
+            return data;
+        }
+
+        /**
+         * Why the lookup failed, or {@code null} unless the status is {@link Status#FAILED}.
+         */
+        public Throwable getError() {
+            return error;
+        }
+
+        /**
+         * Time from sending the lookup until it completed, waiting for the rate limiter included.
+         */
+        public double getLatencyMillis() {
+            return latencyNanos / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return city + ": " + status + (error == null ? "" : " (" + error + ")");
+        }
+    }
+
+    /**
+     * A fetcher with its own single thread for handing out results, stopped by {@link #close}.
+     */
+    public BulkWeatherFetcher(WeatherService service, int maxInFlight) {
+        this(service, maxInFlight, null);
+    }
+
+    /**
+     * @param executor hands results to subscribers and starts the next lookups; {@code null} for a thread of the
+     *                 fetcher's own
+     */
+    public BulkWeatherFetcher(WeatherService service, int maxInFlight, Executor executor) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("maxInFlight must be at least 1");
+        }
+        this.service = service;
+        this.maxInFlight = maxInFlight;
+        if (executor == null) {
+            this.ownExecutor = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(r, "weather-bulk");
+                t.setDaemon(true);
+                return t;
+            });
+            this.executor = ownExecutor;
+        } else {
+            this.ownExecutor = null;
+            this.executor = executor;
+        }
+    }
+
+    /**
+     * A publisher of the results for {@code cities}. Each subscription fetches the batch anew; the publisher
+     * completes after the last city. Cancelling the subscription stops the batch.
+     */
+    public Flow.Publisher<CityResult> publisher(Collection<String> cities) {
+        List<String> cityList = new ArrayList<>(cities);
+        return subscriber -> {
+            Batch batch = new Batch(cityList);
+            // SubmissionPublisher does not say when a subscriber leaves, so its subscription is wrapped to tell us
+            batch.results.subscribe(new Flow.Subscriber<CityResult>() {
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    subscriber.onSubscribe(new Flow.Subscription() {
+                        @Override
+                        public void request(long n) {
+                            subscription.request(n);
+                        }
+
+                        @Override
+                        public void cancel() {
+                            subscription.cancel();
+                            batch.cancel();
+                        }
+                    });
+                }
+
+                @Override
+                public void onNext(CityResult item) {
+                    subscriber.onNext(item);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    subscriber.onError(throwable);
+                }
+
+                @Override
+                public void onComplete() {
+                    subscriber.onComplete();
+                }
+            });
+            start(batch);
+        };
+    }
+
+    /**
+     * Fetches {@code cities} and hands each result to {@code consumer} as it arrives, one at a time. Completes
+     * once every city has a result; cancelling the future stops the batch.
+     */
+    public CompletableFuture<Void> fetchAll(Collection<String> cities, Consumer<CityResult> consumer) {
+        Batch batch = new Batch(new ArrayList<>(cities));
+        CompletableFuture<Void> done = batch.results.consume(consumer);
+        done.whenComplete((v, ex) -> {
+            if (done.isCancelled()) {
+                batch.cancel();
+            }
+        });
+        start(batch);
+        return done;
+    }
+
+    /**
+     * Stops the fetcher's own thread, if it has one. Batches still running are left without a thread to finish on.
+     */
+    @Override
+    public void close() {
+        if (ownExecutor != null) {
+            ownExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * The state of one batch: the cities not sent yet, the lookups outstanding and where results go.
+     */
+    private final class Batch {
+        final ConcurrentLinkedQueue<String> pending;
+        final AtomicInteger remaining;
+        final SubmissionPublisher<CityResult> results;
+        final Set<CompletableFuture<?>> inFlight = ConcurrentHashMap.newKeySet();
+        volatile boolean cancelled;
+
+        Batch(List<String> cities) {
+            this.pending = new ConcurrentLinkedQueue<>(cities);
+            this.remaining = new AtomicInteger(cities.size());
+            this.results = new SubmissionPublisher<>(executor, Math.max(Flow.defaultBufferSize(), cities.size()));
+        }
+
+        /**
+         * Whether the results still have somewhere to go.
+         */
+        boolean isWanted() {
+            return !cancelled && !results.isClosed() && results.hasSubscribers();
+        }
+
+        void cancel() {
+            cancelled = true;
+            pending.clear();
+            for (CompletableFuture<?> lookup : inFlight) {
+                // Through the cache, so a lookup other callers share keeps going for them
+                lookup.cancel(true);
+            }
+            results.close();
+        }
+    }
+
+    private void start(Batch batch) {
+        if (batch.pending.isEmpty()) {
+            batch.results.close();
+            return;
+        }
+        for (int i = 0; i < Math.min(maxInFlight, batch.pending.size()); i++) {
+            executor.execute(() -> next(batch));
+        }
+    }
+
+    /**
+     * Sends the next pending city; its completion sends the one after, so each of the {@code maxInFlight} slots
+     * has one lookup outstanding until the queue is empty or the results are no longer wanted.
+     */
+    private void next(Batch batch) {
+        if (!batch.isWanted()) {
+            batch.cancel();
+            return;
+        }
+        String city = batch.pending.poll();
+        if (city == null) {
+            return;
+        }
+        long start = System.nanoTime();
+        CompletableFuture<WeatherService.WeatherData> lookup;
+        try {
+            lookup = service.getWeather(city);
+        } catch (RuntimeException e) {
+            lookup = CompletableFuture.failedFuture(e);
+        }
+        batch.inFlight.add(lookup);
+        if (batch.cancelled) {
+            // Cancelled while we were sending; cancel() may have missed this one
+            lookup.cancel(true);
+        }
+        CompletableFuture<WeatherService.WeatherData> sent = lookup;
+        lookup.whenCompleteAsync((data, ex) -> {
+            batch.inFlight.remove(sent);
+            if (!batch.isWanted()) {
+                batch.cancel();
+                return;
+            }
+            long latency = System.nanoTime() - start;
+            CityResult result;
+            if (ex != null) {
+                Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                result = new CityResult(city, Status.FAILED, null, cause, latency);
+            } else if (data == null) {
+                result = new CityResult(city, Status.NOT_FOUND, null, null, latency);
+            } else {
+                result = new CityResult(city, Status.OK, data, null, latency);
+            }
+            batch.results.submit(result);
+            if (batch.remaining.decrementAndGet() == 0) {
+                batch.results.close();
+            } else {
+                next(batch);
+            }
+        }, executor);
+    }
+}
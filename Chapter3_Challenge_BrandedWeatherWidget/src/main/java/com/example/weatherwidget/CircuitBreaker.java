@@ -0,0 +1,82 @@
+package com.example.weatherwidget;
+
+/**
+ * Stops sending requests to a provider that keeps failing. After {@code threshold} failures in a row the circuit
+ * opens and requests are refused at once for {@code cooldownNanos}. Then one trial request is let through: if it
+ * succeeds the circuit closes again, otherwise it stays open for another cooldown.
+ */
+final class CircuitBreaker {
+    enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final int threshold;
+    private final long cooldownNanos;
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private long opened;
+
+    CircuitBreaker(int threshold, long cooldownNanos) {
+        this.threshold = threshold;
+        this.cooldownNanos = cooldownNanos;
+    }
+
+    /**
+     * Whether a request may be sent now. In the half-open state only the first caller gets through.
+     */
+    synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - openedAt < cooldownNanos) {
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    synchronized boolean isClosed() {
+        return state == State.CLOSED;
+    }
+
+    synchronized void onSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    synchronized void onFailure() {
+        failures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= threshold)) {
+            state = State.OPEN;
+            openedAt = System.nanoTime();
+            opened++;
+        }
+    }
+
+    /**
+     * A request let through was abandoned before it had an outcome. A half-open circuit lets the next caller try.
+     */
+    synchronized void onAbandoned() {
+        if (state == State.HALF_OPEN) {
+            state = State.OPEN;
+        }
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * How many times the circuit has opened.
+     */
+    synchronized long getTimesOpened() {
+        return opened;
+    }
+}
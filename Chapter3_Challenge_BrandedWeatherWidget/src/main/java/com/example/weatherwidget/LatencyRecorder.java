@@ -0,0 +1,94 @@
+package com.example.weatherwidget;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of latencies for tail percentiles. Values are kept in log-linear buckets, 64 per power of two of
+ * microseconds, so a percentile is within about 1.5% of the true value and the memory used is fixed however many
+ * samples are recorded.
+ */
+public class LatencyRecorder {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Up to 2^41 microseconds, about 25 days
+    private static final int RANGES = 41 - SUB_BUCKET_BITS + 1;
+
+    private final long[] counts = new long[RANGES * SUB_BUCKETS];
+    private long count;
+    private long totalMicros;
+    private long maxMicros;
+
+    public synchronized void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts[index(micros)]++;
+        count++;
+        totalMicros += micros;
+        maxMicros = Math.max(maxMicros, micros);
+    }
+
+    /**
+     * The latency below which {@code percentile} percent of the samples fall, in milliseconds; 0 if nothing was
+     * recorded.
+     */
+    public synchronized double percentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBound(i), maxMicros) / 1000.0;
+            }
+        }
+        return maxMicros / 1000.0;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public synchronized double getMeanMillis() {
+        return count == 0 ? 0 : totalMicros / 1000.0 / count;
+    }
+
+    public synchronized double getMaxMillis() {
+        return maxMicros / 1000.0;
+    }
+
+    public synchronized void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        totalMicros = 0;
+        maxMicros = 0;
+    }
+
+    private static int index(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        // Keep the top SUB_BUCKET_BITS + 1 bits; the highest is always set, the rest pick the sub-bucket
+        int shift = 64 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS - 1;
+        int range = shift + 1;
+        if (range >= RANGES) {
+            return RANGES * SUB_BUCKETS - 1;
+        }
+        return range * SUB_BUCKETS + (int) (micros >>> shift) - SUB_BUCKETS;
+    }
+
+    private static long upperBound(int index) {
+        int range = index / SUB_BUCKETS;
+        long sub = index % SUB_BUCKETS;
+        if (range == 0) {
+            return sub;
+        }
+        return ((SUB_BUCKETS + sub + 1) << (range - 1)) - 1;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("n=%d mean=%.1fms p50=%.1fms p95=%.1fms p99=%.1fms p99.9=%.1fms max=%.1fms",
+                count, getMeanMillis(), percentile(50), percentile(95), percentile(99), percentile(99.9), getMaxMillis());
+    }
+}
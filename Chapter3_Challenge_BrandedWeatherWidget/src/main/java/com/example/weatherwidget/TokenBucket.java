@@ -0,0 +1,78 @@
+package com.example.weatherwidget;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limiter matching a provider quota: up to {@code capacity} requests at once, refilled at
+ * {@code permitsPerSecond}. A request that finds the bucket empty reserves the next permit and waits for it
+ * without holding a thread, so waiting requests go out in arrival order at exactly the refill rate.
+ */
+public class TokenBucket {
+    private final double capacity;
+    private final double permitsPerNano;
+    private double tokens;
+    private long refilledAt;
+    private long granted;
+    private long delayed;
+    private long totalDelayNanos;
+
+    public TokenBucket(int capacity, double permitsPerSecond) {
+        this.capacity = capacity;
+        this.permitsPerNano = permitsPerSecond / 1e9;
+        this.tokens = capacity;
+        this.refilledAt = System.nanoTime();
+    }
+
+    /**
+     * Completes when the caller may send one request.
+     */
+    public CompletableFuture<Void> acquire() {
+        long wait = reserve();
+        if (wait == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> { }, CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Takes a permit only if one is available now, for requests that are not worth waiting for.
+     */
+    public synchronized boolean tryAcquire() {
+        refill();
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        granted++;
+        return true;
+    }
+
+    /**
+     * Takes one permit, going into debt if there is none, and returns how many nanoseconds to wait before using it.
+     */
+    synchronized long reserve() {
+        refill();
+        tokens -= 1;
+        granted++;
+        if (tokens >= 0) {
+            return 0;
+        }
+        long wait = (long) Math.ceil(-tokens / permitsPerNano);
+        delayed++;
+        totalDelayNanos += wait;
+        return wait;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - refilledAt) * permitsPerNano);
+        refilledAt = now;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("granted=%d delayed=%d avgDelay=%.1fms", granted, delayed,
+                delayed == 0 ? 0 : totalDelayNanos / 1e6 / delayed);
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.weatherwidget;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+/**
+ * Decodes UTF-8 from a stream with one small byte buffer. {@link java.io.InputStreamReader} sets up a charset
+ * decoder and an 8 KB buffer per instance, which is more than a whole weather response. Malformed bytes become
+ * U+FFFD.
+ */
+final class Utf8Reader extends Reader {
+    private static final char REPLACEMENT = '\uFFFD';
+
+    private final InputStream in;
+    private final byte[] buffer;
+    private int position;
+    private int limit;
+    // Low surrogate of a supplementary character that did not fit into the last read
+    private char pending;
+
+    Utf8Reader(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buffer = new byte[bufferSize];
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        int n = 0;
+        if (pending != 0) {
+            cbuf[off + n++] = pending;
+            pending = 0;
+        }
+        while (n < len) {
+            if (position == limit && (n > 0 || !fill())) {
+                // Hand over what is decoded rather than block for more
+                break;
+            }
+            int b = buffer[position++];
+            if (b >= 0) {
+                cbuf[off + n++] = (char) b;
+                continue;
+            }
+            int cp;
+            int more;
+            if ((b & 0xE0) == 0xC0) {
+                cp = b & 0x1F;
+                more = 1;
+            } else if ((b & 0xF0) == 0xE0) {
+                cp = b & 0x0F;
+                more = 2;
+            } else if ((b & 0xF8) == 0xF0) {
+                cp = b & 0x07;
+                more = 3;
+            } else {
+                cbuf[off + n++] = REPLACEMENT;
+                continue;
+            }
+            for (; more > 0; more--) {
+                int next = nextByte();
+                if (next < 0 || (next & 0xC0) != 0x80) {
+                    if (next >= 0) {
+                        position--;
+                    }
+                    cp = -1;
+                    break;
+                }
+                cp = (cp << 6) | (next & 0x3F);
+            }
+            if (cp < 0 || cp > Character.MAX_CODE_POINT) {
+                cbuf[off + n++] = REPLACEMENT;
+            } else if (cp < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                cbuf[off + n++] = (char) cp;
+            } else {
+                cbuf[off + n++] = Character.highSurrogate(cp);
+                if (n < len) {
+                    cbuf[off + n++] = Character.lowSurrogate(cp);
+                } else {
+                    pending = Character.lowSurrogate(cp);
+                }
+            }
+        }
+        return n == 0 ? -1 : n;
+    }
+
+    private int nextByte() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        int read = in.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = read;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,266 @@
+package com.example.weatherwidget;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * Weather per city, kept for a while so repeated lookups don't go back to the provider.
+ *
+ * <p>Keys are city names, trimmed, with runs of whitespace collapsed and lower-cased, so "Paris" and " paris "
+ * share an entry. A value younger than the TTL is returned as is. A value older than the TTL but still within
+ * the stale window is returned too, and one background reload is started for it (stale-while-revalidate).
+ * Anything older, or not cached, is loaded. Concurrent lookups of a key that is loading share that one request.
+ * Failed loads and unknown cities are not cached. The loader is called outside the cache's lock, so a slow or
+ * blocking loader does not hold up lookups of other cities. At most {@code maxEntries} cities are kept; the least recently used goes
+ * first.
+ *
+ * <p>Callers may cancel the future they get. A load is cancelled, and with it the request, once every caller
+ * waiting for it has cancelled; a background reload nobody waits for runs to the end.
+ */
+public class WeatherCache {
+    private final long ttlNanos;
+    private final long staleNanos;
+    private final Map<String, Entry> entries;
+    private final Stats stats = new Stats();
+
+    private static final class Entry {
+        WeatherService.WeatherData value;
+        long loadedAt;
+        CompletableFuture<WeatherService.WeatherData> loading;
+        // Callers waiting for the current load that have not cancelled
+        int waiters;
+    }
+
+    /**
+     * Lookup counters. A coalesced lookup joined a request already in flight; a stale hit was answered from an
+     * expired value while it was reloaded. A not-found load completed with {@code null} because the provider does
+     * not know the city; failures are loads that completed exceptionally. A cancelled load was abandoned by all
+     * its callers.
+     */
+    public static class Stats {
+        private long hits;
+        private long staleHits;
+        private long misses;
+        private long coalesced;
+        private long failures;
+        private long notFound;
+        private long cancelled;
+
+        private Stats copy() {
+            Stats s = new Stats();
+            s.hits = hits;
+            s.staleHits = staleHits;
+            s.misses = misses;
+            s.coalesced = coalesced;
+            s.failures = failures;
+            s.notFound = notFound;
+            s.cancelled = cancelled;
+            return s;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getStaleHits() {
+            return staleHits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getCoalesced() {
+            return coalesced;
+        }
+
+        public long getFailures() {
+            return failures;
+        }
+
+        public long getNotFound() {
+            return notFound;
+        }
+
+        public long getCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Lookups that did not need a request of their own.
+         */
+        public long getSaved() {
+            return hits + staleHits + coalesced;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hits=%d stale=%d misses=%d coalesced=%d failures=%d notFound=%d cancelled=%d", hits,
+                    staleHits, misses, coalesced, failures, notFound, cancelled);
+        }
+    }
+
+    /**
+     * @param ttl         how long a value is returned without reloading it
+     * @param staleWindow how long after the TTL a value is still returned while it is reloaded
+     * @param maxEntries  how many cities are kept
+     */
+    public WeatherCache(Duration ttl, Duration staleWindow, int maxEntries) {
+        this.ttlNanos = ttl.toNanos();
+        this.staleNanos = staleWindow.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public static String normalize(String city) {
+        return city.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the weather for {@code city}, from the cache or through {@code loader}. The returned future is the
+     * caller's own; cancelling it does not affect other callers.
+     */
+    public CompletableFuture<WeatherService.WeatherData> get(String city,
+            Function<String, CompletableFuture<WeatherService.WeatherData>> loader) {
+        String key = normalize(city);
+        CompletableFuture<WeatherService.WeatherData> result = null;
+        CompletableFuture<WeatherService.WeatherData> started = null;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.value != null) {
+                long age = System.nanoTime() - entry.loadedAt;
+                if (age < ttlNanos) {
+                    stats.hits++;
+                    return CompletableFuture.completedFuture(entry.value);
+                }
+                if (age < ttlNanos + staleNanos) {
+                    stats.staleHits++;
+                    if (entry.loading == null) {
+                        started = register(key, entry);
+                    }
+                    result = CompletableFuture.completedFuture(entry.value);
+                }
+            }
+            if (result == null) {
+                if (entry != null && entry.loading != null) {
+                    stats.coalesced++;
+                    return waitFor(entry, entry.loading);
+                }
+                stats.misses++;
+                if (entry == null) {
+                    entry = new Entry();
+                    entries.put(key, entry);
+                }
+                started = register(key, entry);
+                result = waitFor(entry, started);
+            }
+        }
+        // The loader may be slow or even block; nothing else waits on the lock meanwhile
+        if (started != null) {
+            start(started, city, loader);
+        }
+        return result;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized Stats getStats() {
+        return stats.copy();
+    }
+
+    private CompletableFuture<WeatherService.WeatherData> waitFor(Entry entry,
+            CompletableFuture<WeatherService.WeatherData> loading) {
+        CompletableFuture<WeatherService.WeatherData> mine = loading.copy();
+        entry.waiters++;
+        mine.whenComplete((data, ex) -> {
+            if (mine.isCancelled()) {
+                abandon(entry, loading);
+            }
+        });
+        return mine;
+    }
+
+    private void abandon(Entry entry, CompletableFuture<WeatherService.WeatherData> loading) {
+        synchronized (this) {
+            if (entry.loading != loading || --entry.waiters > 0) {
+                return;
+            }
+        }
+        // Outside the lock: the load's own completion handler takes it
+        loading.cancel(true);
+    }
+
+    /**
+     * Makes a placeholder for a load of {@code entry} the entry's current load, so lookups arriving before the
+     * loader has even been called join it. The caller starts it with {@link #start} once it has released the lock.
+     */
+    private CompletableFuture<WeatherService.WeatherData> register(String key, Entry entry) {
+        CompletableFuture<WeatherService.WeatherData> loading = new CompletableFuture<>();
+        entry.loading = loading;
+        entry.waiters = 0;
+        loading.whenComplete((data, ex) -> {
+            synchronized (this) {
+                if (entry.loading == loading) {
+                    entry.loading = null;
+                }
+                if (ex == null && data != null) {
+                    entry.value = data;
+                    entry.loadedAt = System.nanoTime();
+                } else {
+                    if (loading.isCancelled()) {
+                        stats.cancelled++;
+                    } else if (ex == null) {
+                        stats.notFound++;
+                    } else {
+                        stats.failures++;
+                    }
+                    // A stale value is kept until it expires; nothing else is worth keeping
+                    if (entry.value == null && entries.get(key) == entry) {
+                        entries.remove(key);
+                    }
+                }
+            }
+        });
+        return loading;
+    }
+
+    /**
+     * Calls {@code loader} and completes {@code loading} with its result. Cancelling {@code loading} cancels the
+     * request; if every caller cancelled before this runs, the loader is not called at all.
+     */
+    private static void start(CompletableFuture<WeatherService.WeatherData> loading, String city,
+            Function<String, CompletableFuture<WeatherService.WeatherData>> loader) {
+        if (loading.isDone()) {
+            return;
+        }
+        CompletableFuture<WeatherService.WeatherData> request;
+        try {
+            request = loader.apply(city);
+        } catch (RuntimeException e) {
+            loading.completeExceptionally(e);
+            return;
+        }
+        request.whenComplete((data, ex) -> {
+            if (ex != null) {
+                loading.completeExceptionally(ex);
+            } else {
+                loading.complete(data);
+            }
+        });
+        loading.whenComplete((data, ex) -> {
+            if (loading.isCancelled()) {
+                request.cancel(true);
+            }
+        });
+    }
+}
@@ -1,72 +1,219 @@
 package com.example.weatherwidget;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
+import java.net.URLEncoder;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class WeatherService {
     private static final String API_KEY = "9e1dc5cd71b67bc9790decaf552bf82c";
     private static final String BASE_URL = "https://api.openweathermap.org/data/2.5/weather";
+    // e.g. -Dweather.baseUrl=http://127.0.0.1:8089/data/2.5/weather for the benchmarks' stub server
+    private static final String BASE_URL_PROPERTY = "weather.baseUrl";
+    // The free plan allows 60 calls a minute
+    private static final int RATE_LIMIT_BURST = 10;
+    private static final double RATE_LIMIT_PER_SECOND = 1.0;
+    // The provider refreshes its data about every 10 minutes
+    private static final Duration CACHE_TTL = Duration.ofMinutes(5);
+    private static final Duration CACHE_STALE_WINDOW = Duration.ofMinutes(30);
+    private static final int CACHE_MAX_CITIES = 256;
+    // A current-weather response is well under 1 KB
+    private static final int RESPONSE_BUFFER_BYTES = 1024;
 
-    private final HttpClient httpClient;
-    private final Gson gson;
+    private final String baseUrl;
+    private final WeatherCache cache;
+    private final TokenBucket rateLimiter;
+    private final WeatherTransport transport;
 
     public WeatherService() {
-        this.httpClient = HttpClient.newHttpClient();
-        this.gson = new Gson();
+        this(new WeatherCache(CACHE_TTL, CACHE_STALE_WINDOW, CACHE_MAX_CITIES));
     }
 
+    public WeatherService(WeatherCache cache) {
+        this(System.getProperty(BASE_URL_PROPERTY, BASE_URL), cache, new TokenBucket(RATE_LIMIT_BURST, RATE_LIMIT_PER_SECOND));
+    }
+
+    /**
+     * @param baseUrl     the current-weather endpoint, e.g. a local stub server
+     * @param rateLimiter every request to the provider waits for a permit from it
+     */
+    public WeatherService(String baseUrl, WeatherCache cache, TokenBucket rateLimiter) {
+        this(baseUrl, cache, rateLimiter, WeatherTransport.shared());
+    }
+
+    public WeatherService(String baseUrl, WeatherCache cache, TokenBucket rateLimiter, WeatherTransport transport) {
+        this.baseUrl = baseUrl;
+        this.cache = cache;
+        this.rateLimiter = rateLimiter;
+        this.transport = transport;
+    }
+
+    /**
+     * Weather for {@code city}, from the cache when it is recent enough; see {@link WeatherCache}. Completes with
+     * {@code null} if the provider does not know the city.
+     */
     public CompletableFuture<WeatherData> getWeather(String city) {
-        String url = String.format("%s?q=%s&appid=%s&units=metric", BASE_URL, city, API_KEY);
-        
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(url))
-                .GET()
-                .build();
-
-        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
-                .thenApply(HttpResponse::body)
-                .thenApply(this::parseWeatherData);
+        return cache.get(city, this::fetchWeather);
+    }
+
+    public WeatherCache.Stats getCacheStats() {
+        return cache.getStats();
+    }
+
+    public TokenBucket getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public WeatherTransport getTransport() {
+        return transport;
     }
 
-    private WeatherData parseWeatherData(String json) {
+    /**
+     * Asks the provider, bypassing the cache. Timeouts, retries and the rate limit are up to the transport; reading
+     * the body is given the transport's request timeout as well. Cancelling the returned future cancels the request.
+     */
+    public CompletableFuture<WeatherData> fetchWeather(String city) {
+        String url = String.format("%s?q=%s&appid=%s&units=metric", baseUrl,
+                URLEncoder.encode(city.trim(), StandardCharsets.UTF_8), API_KEY);
+
+        // The body is decoded as it streams in, on the client's executor, without buffering it first
+        CompletableFuture<HttpResponse<InputStream>> exchange = transport.send(URI.create(url), rateLimiter);
+        CompletableFuture<WeatherData> weather = exchange.thenCompose(response -> read(city, response));
+        // Cancellation does not travel back up a chain of futures by itself
+        weather.whenComplete((data, ex) -> {
+            if (weather.isCancelled()) {
+                exchange.cancel(true);
+                // Too late to cancel once the headers are in; closing the body unblocks a parse waiting for it
+                exchange.thenAccept(response -> close(response.body()));
+            }
+        });
+        return weather;
+    }
+
+    /**
+     * Parses the body of {@code response}. The request timeout only covers the headers, so a body that stalls is
+     * closed after the same time and the lookup fails with a {@link TimeoutException}.
+     */
+    private CompletableFuture<WeatherData> read(String city, HttpResponse<InputStream> response) {
+        CompletableFuture<WeatherData> read = new CompletableFuture<WeatherData>()
+                .orTimeout(transport.getRequestTimeout().toNanos(), TimeUnit.NANOSECONDS);
+        read.whenComplete((data, ex) -> {
+            if (ex instanceof TimeoutException) {
+                close(response.body());
+            }
+        });
+        try (InputStream body = response.body()) {
+            read.complete(parseWeatherData(body));
+        } catch (IOException e) {
+            // Fail the lookup rather than report the city as unknown
+            read.completeExceptionally(new UncheckedIOException("Error parsing weather data for " + city, e));
+        }
+        return read;
+    }
+
+    private static void close(InputStream body) {
         try {
-            JsonObject jsonObject = gson.fromJson(json, JsonObject.class);
-            
-            // OpenWeatherMap can return cod as number or string
-            if (jsonObject.has("cod")) {
-                String codStr = jsonObject.get("cod").getAsString();
-                if (!"200".equals(codStr)) {
-                    System.err.println("API Error: " + json);
-                    return null; 
-                }
+            body.close();
+        } catch (IOException e) {
+            // Nothing left to release
+        }
+    }
+
+    /**
+     * Reads the four fields the widget shows from a current-weather response and skips everything else, without
+     * building a JSON tree. Returns {@code null} if the provider does not know the city; any other API error, such
+     * as an invalid key or an exceeded quota, is thrown. Public so the benchmarks can measure exactly what the
+     * service runs.
+     */
+    public static WeatherData parseWeatherData(InputStream body) throws IOException {
+        JsonReader reader = new JsonReader(new Utf8Reader(body, RESPONSE_BUFFER_BYTES));
+        String cod = null;
+        String message = null;
+        Double temp = null;
+        String condition = "Unknown";
+        String description = "Unknown";
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "cod":
+                    // OpenWeatherMap can return cod as number or string
+                    cod = reader.nextString();
+                    break;
+                case "message":
+                    message = reader.peek() == JsonToken.STRING ? reader.nextString() : skip(reader);
+                    break;
+                case "main":
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if ("temp".equals(reader.nextName())) {
+                            temp = reader.nextDouble();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    reader.endObject();
+                    break;
+                case "weather":
+                    reader.beginArray();
+                    if (reader.hasNext()) {
+                        reader.beginObject();
+                        while (reader.hasNext()) {
+                            switch (reader.nextName()) {
+                                case "main":
+                                    condition = reader.nextString();
+                                    break;
+                                case "description":
+                                    description = reader.nextString();
+                                    break;
+                                default:
+                                    reader.skipValue();
+                            }
+                        }
+                        reader.endObject();
+                    }
+                    while (reader.hasNext()) {
+                        reader.skipValue();
+                    }
+                    reader.endArray();
+                    break;
+                default:
+                    reader.skipValue();
             }
+        }
+        reader.endObject();
 
-            double temp = jsonObject.getAsJsonObject("main").get("temp").getAsDouble();
-            
-            String condition = "Unknown";
-            String description = "Unknown";
-            
-            if (jsonObject.has("weather") && jsonObject.getAsJsonArray("weather").size() > 0) {
-                JsonObject weatherObj = jsonObject.getAsJsonArray("weather").get(0).getAsJsonObject();
-                condition = weatherObj.get("main").getAsString();
-                description = weatherObj.get("description").getAsString();
+        if (cod != null && !"200".equals(cod)) {
+            String error = "API Error: " + cod + (message == null ? "" : " " + message);
+            if (!"404".equals(cod)) {
+                throw new IOException(error);
             }
-            
-            // Mocking AQI since it requires a different API endpoint usually
-            int aqi = (int) (Math.random() * 100); 
-
-            return new WeatherData(temp, condition, description, aqi);
-        } catch (Exception e) {
-            System.err.println("Error parsing weather data: " + e.getMessage());
-            e.printStackTrace();
+            System.err.println(error);
             return null;
         }
+        if (temp == null) {
+            throw new IOException("Response has no temperature");
+        }
+
+        // Mocking AQI since it requires a different API endpoint usually
+        int aqi = (int) (Math.random() * 100);
+
+        return new WeatherData(temp, condition, description, aqi);
+    }
+
+    private static String skip(JsonReader reader) throws IOException {
+        reader.skipValue();
+        return null;
     }
 
     public static class WeatherData {
@@ -0,0 +1,268 @@
+package com.example.weatherwidget;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The last weather fetched for each city, kept on disk so the widget can show something at launch and while the
+ * provider cannot be reached.
+ *
+ * <p>The file is an append log: a header {@code [int magic][int version]}, then one record per fetch,
+ * {@code [int crc32][int length][body]}, where the body is {@code [long fetchedMillis][UTF city][double temp]
+ * [UTF condition][UTF description][int aqi]} and the CRC covers the body. Opening replays the log, keeping the
+ * newest record per city and stopping at the first torn or corrupt record, which is cut off. Once the log holds
+ * more than twice as many records as cities, or more than {@code MAX_CITIES} cities, it is rewritten with the
+ * newest record of the most recently fetched cities only.
+ */
+public class WeatherStore implements Closeable {
+    private static final int MAGIC = 0x45435743; // "ECWC"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 8;
+    private static final String DATA_PROPERTY = "weather.dataDir";
+    private static final String FILE_NAME = "last-weather.log";
+    private static final int MAX_CITIES = 64;
+    private static final int MIN_RECORDS_TO_COMPACT = 32;
+
+    private final Path file;
+    // Newest record per normalized city, in the order they were fetched
+    private final Map<String, Record> latest = new LinkedHashMap<>();
+    private FileChannel channel;
+    private int records;
+
+    /**
+     * One stored fetch.
+     */
+    public static final class Record {
+        private final String city;
+        private final WeatherService.WeatherData data;
+        private final long fetchedMillis;
+
+        Record(String city, WeatherService.WeatherData data, long fetchedMillis) {
+            this.city = city;
+            this.data = data;
+            this.fetchedMillis = fetchedMillis;
+        }
+
+        /**
+         * The city as the user typed it.
+         */
+        public String getCity() {
+            return city;
+        }
+
+        public WeatherService.WeatherData getData() {
+            return data;
+        }
+
+        public long getFetchedMillis() {
+            return fetchedMillis;
+        }
+
+        public Duration getAge() {
+            return Duration.ofMillis(Math.max(0, System.currentTimeMillis() - fetchedMillis));
+        }
+    }
+
+    /**
+     * {@code ~/.ecolife-weather/last-weather.log}, or the same file under {@code -Dweather.dataDir}.
+     */
+    public static Path defaultFile() {
+        String dir = System.getProperty(DATA_PROPERTY);
+        Path base = dir != null ? Paths.get(dir) : Paths.get(System.getProperty("user.home"), ".ecolife-weather");
+        return base.resolve(FILE_NAME);
+    }
+
+    public WeatherStore(Path file) throws IOException {
+        this.file = file;
+        if (file.getParent() != null) {
+            Files.createDirectories(file.getParent());
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        replay();
+        if (needsCompaction()) {
+            compact();
+        }
+    }
+
+    /**
+     * The newest weather stored for {@code city}, or {@code null}.
+     */
+    public synchronized Record get(String city) {
+        return latest.get(WeatherCache.normalize(city));
+    }
+
+    /**
+     * The city fetched last, or {@code null} if nothing is stored.
+     */
+    public synchronized Record getMostRecent() {
+        Record last = null;
+        for (Record record : latest.values()) {
+            last = record;
+        }
+        return last;
+    }
+
+    /**
+     * Appends {@code data} as the weather of {@code city} now. The same data saved again, e.g. a cache hit, is
+     * not written twice.
+     */
+    public synchronized void save(String city, WeatherService.WeatherData data) throws IOException {
+        String key = WeatherCache.normalize(city);
+        Record previous = latest.get(key);
+        if (previous != null && previous.data == data) {
+            return;
+        }
+        Record record = new Record(city.trim(), data, System.currentTimeMillis());
+        ByteBuffer encoded = encode(record);
+        long position = channel.size();
+        while (encoded.hasRemaining()) {
+            position += channel.write(encoded, position);
+        }
+        records++;
+        // Re-inserted so the map stays in fetch order
+        latest.remove(key);
+        latest.put(key, record);
+        if (needsCompaction()) {
+            compact();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel.isOpen()) {
+            channel.force(false);
+            channel.close();
+        }
+    }
+
+    private void replay() throws IOException {
+        long size = channel.size();
+        if (size < HEADER_BYTES) {
+            writeHeader(channel);
+            return;
+        }
+        ByteBuffer content = ByteBuffer.allocate((int) Math.min(size, Integer.MAX_VALUE));
+        while (content.hasRemaining() && channel.read(content, content.position()) > 0) {
+            // Keep reading
+        }
+        content.flip();
+        if (content.getInt() != MAGIC || content.getInt() != VERSION) {
+            // Not ours, or an older layout; start over
+            channel.truncate(0);
+            writeHeader(channel);
+            return;
+        }
+        CRC32 crc = new CRC32();
+        long end = content.position();
+        while (content.remaining() >= 8) {
+            int expectedCrc = content.getInt();
+            int length = content.getInt();
+            if (length <= 0 || length > content.remaining()) {
+                break;
+            }
+            crc.reset();
+            crc.update(content.array(), content.position(), length);
+            if ((int) crc.getValue() != expectedCrc) {
+                break;
+            }
+            Record record = decode(content.array(), content.position(), length);
+            content.position(content.position() + length);
+            String key = WeatherCache.normalize(record.city);
+            latest.remove(key);
+            latest.put(key, record);
+            records++;
+            end = content.position();
+        }
+        if (end < size) {
+            // A write cut short by a crash; what follows it cannot be trusted
+            channel.truncate(end);
+        }
+    }
+
+    private boolean needsCompaction() {
+        return latest.size() > MAX_CITIES || (records >= MIN_RECORDS_TO_COMPACT && records > 2 * latest.size());
+    }
+
+    private void compact() throws IOException {
+        Iterator<Record> oldest = latest.values().iterator();
+        while (latest.size() > MAX_CITIES) {
+            oldest.next();
+            oldest.remove();
+        }
+        List<ByteBuffer> encoded = new ArrayList<>();
+        for (Record record : latest.values()) {
+            encoded.add(encode(record));
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeHeader(out);
+            for (ByteBuffer buffer : encoded) {
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            }
+            out.force(false);
+        }
+        channel.close();
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        records = latest.size();
+    }
+
+    private static void writeHeader(FileChannel out) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION);
+        header.flip();
+        out.write(header, 0);
+        out.position(HEADER_BYTES);
+    }
+
+    private static ByteBuffer encode(Record record) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.writeLong(record.fetchedMillis);
+        out.writeUTF(record.city);
+        out.writeDouble(record.data.getTemperature());
+        out.writeUTF(record.data.getCondition());
+        out.writeUTF(record.data.getDescription());
+        out.writeInt(record.data.getAqi());
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        int length = buffer.capacity() - 8;
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 8, length);
+        buffer.putInt(0, (int) crc.getValue());
+        buffer.putInt(4, length);
+        return buffer;
+    }
+
+    private static Record decode(byte[] array, int offset, int length) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(array, offset, length));
+        long fetchedMillis = in.readLong();
+        String city = in.readUTF();
+        double temperature = in.readDouble();
+        String condition = in.readUTF();
+        String description = in.readUTF();
+        int aqi = in.readInt();
+        return new Record(city, new WeatherService.WeatherData(temperature, condition, description, aqi), fetchedMillis);
+    }
+}
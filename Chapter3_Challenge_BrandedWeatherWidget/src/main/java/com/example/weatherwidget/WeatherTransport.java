@@ -0,0 +1,512 @@
+package com.example.weatherwidget;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends GET requests to the weather provider and copes with it being slow or failing:
+ *
+ * <ul>
+ * <li>Connecting and each exchange have a timeout, so a stalled provider cannot hang a lookup.</li>
+ * <li>Timeouts, connection errors, 429 and 5xx responses are retried, after a random delay of up to
+ * {@code backoff * 2^(attempt - 1)} (full jitter), or longer if the response asks for it with Retry-After.
+ * A response asking for more than {@value #MAX_RETRY_AFTER_SECONDS} seconds is returned to the caller at once.</li>
+ * <li>An exchange still running after the 95th percentile latency of the last 1000 exchanges gets a hedge: the
+ * same request sent again. Whichever answers first is used and the other is cancelled.</li>
+ * <li>After a run of failures a circuit breaker refuses requests for a while instead of queueing them.</li>
+ * </ul>
+ *
+ * <p>All services share one {@link HttpClient} through {@link #shared()}, so connections to the provider are
+ * reused. Cancelling the future returned by {@link #send} cancels the exchanges it started.
+ */
+public class WeatherTransport {
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(3);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(5);
+    private static final int MAX_ATTEMPTS = 3;
+    private static final Duration BACKOFF = Duration.ofMillis(200);
+    // Longer than this, a lookup the user is waiting for had better fail than hang
+    private static final long MAX_RETRY_AFTER_SECONDS = 10;
+    private static final int BREAKER_THRESHOLD = 5;
+    private static final Duration BREAKER_COOLDOWN = Duration.ofSeconds(30);
+    // Hedging starts once the percentile means something, and never sooner than the floor
+    private static final int HEDGE_MIN_SAMPLES = 20;
+    private static final long HEDGE_FLOOR_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final int HEDGE_REFRESH_SAMPLES = 32;
+    // The percentile covers the latest exchanges only, so a slow start or an old incident does not stick
+    private static final int HEDGE_WINDOW_SAMPLES = 1000;
+
+    private static WeatherTransport shared;
+
+    private final HttpClient client;
+    private final Duration requestTimeout;
+    private final int maxAttempts;
+    private final long backoffNanos;
+    private final boolean hedging;
+    private final CircuitBreaker breaker;
+    // Latencies of the last HEDGE_WINDOW_SAMPLES good exchanges, overwritten oldest first; guarded by itself
+    private final long[] exchangeWindow = new long[HEDGE_WINDOW_SAMPLES];
+    private long exchangesTimed;
+    private final LatencyRecorder latency = new LatencyRecorder();
+    private final Stats stats = new Stats();
+    // 0 until enough exchanges have been timed
+    private volatile long hedgeAfterNanos;
+
+    /**
+     * Request outcomes. A request is one call to {@link #send}; its attempts are the rounds sent for it, the first
+     * one and each retry, and a hedge is a second exchange within an attempt.
+     */
+    public static class Stats {
+        private long requests;
+        private long succeeded;
+        private long failed;
+        private long cancelled;
+        private long attempts;
+        private long retries;
+        private long hedges;
+        private long hedgeWins;
+        private long timeouts;
+        private long errorResponses;
+        private long rejected;
+        private long circuitOpened;
+
+        private Stats copy() {
+            Stats s = new Stats();
+            s.requests = requests;
+            s.succeeded = succeeded;
+            s.failed = failed;
+            s.cancelled = cancelled;
+            s.attempts = attempts;
+            s.retries = retries;
+            s.hedges = hedges;
+            s.hedgeWins = hedgeWins;
+            s.timeouts = timeouts;
+            s.errorResponses = errorResponses;
+            s.rejected = rejected;
+            return s;
+        }
+
+        public long getRequests() {
+            return requests;
+        }
+
+        public long getSucceeded() {
+            return succeeded;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getCancelled() {
+            return cancelled;
+        }
+
+        public long getAttempts() {
+            return attempts;
+        }
+
+        public long getRetries() {
+            return retries;
+        }
+
+        public long getHedges() {
+            return hedges;
+        }
+
+        /**
+         * Hedges that answered before the exchange they were hedging.
+         */
+        public long getHedgeWins() {
+            return hedgeWins;
+        }
+
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        /**
+         * 429 and 5xx responses, retried or not.
+         */
+        public long getErrorResponses() {
+            return errorResponses;
+        }
+
+        /**
+         * Requests refused at once because the circuit was open.
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        public long getCircuitOpened() {
+            return circuitOpened;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("requests=%d ok=%d failed=%d cancelled=%d attempts=%d retries=%d hedges=%d hedgeWins=%d "
+                    + "timeouts=%d errorResponses=%d rejected=%d circuitOpened=%d", requests, succeeded, failed, cancelled,
+                    attempts, retries, hedges, hedgeWins, timeouts, errorResponses, rejected, circuitOpened);
+        }
+    }
+
+    /**
+     * The transport used by services that are not given one.
+     */
+    public static synchronized WeatherTransport shared() {
+        if (shared == null) {
+            shared = new WeatherTransport();
+        }
+        return shared;
+    }
+
+    public WeatherTransport() {
+        this(CONNECT_TIMEOUT, REQUEST_TIMEOUT, MAX_ATTEMPTS, BACKOFF, true, BREAKER_THRESHOLD, BREAKER_COOLDOWN);
+    }
+
+    /**
+     * @param connectTimeout   how long to wait for a connection
+     * @param requestTimeout   how long to wait for the response headers of one exchange
+     * @param maxAttempts      attempts per request, the first one included
+     * @param backoff          the longest delay before the first retry; it doubles for each one after
+     * @param hedging          whether slow exchanges are hedged
+     * @param breakerThreshold failures in a row that open the circuit
+     * @param breakerCooldown  how long an open circuit refuses requests
+     */
+    public WeatherTransport(Duration connectTimeout, Duration requestTimeout, int maxAttempts, Duration backoff,
+            boolean hedging, int breakerThreshold, Duration breakerCooldown) {
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(connectTimeout)
+                .build();
+        this.requestTimeout = requestTimeout;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffNanos = backoff.toNanos();
+        this.hedging = hedging;
+        this.breaker = new CircuitBreaker(breakerThreshold, breakerCooldown.toNanos());
+    }
+
+    /**
+     * Sends a GET to {@code uri}. Every exchange waits for a permit from {@code permits}, except hedges, which are
+     * only sent if a permit is free. Completes with the first response that is not retried, which may still be an
+     * error response once the attempts run out; the caller closes its body.
+     */
+    public CompletableFuture<HttpResponse<InputStream>> send(URI uri, TokenBucket permits) {
+        Call call = new Call(uri, permits);
+        synchronized (stats) {
+            stats.requests++;
+        }
+        call.result.whenComplete((response, ex) -> {
+            if (call.result.isCancelled()) {
+                call.cancelExchanges(null);
+                synchronized (stats) {
+                    stats.cancelled++;
+                }
+            }
+        });
+        nextAttempt(call);
+        return call.result;
+    }
+
+    public Stats getStats() {
+        synchronized (stats) {
+            Stats s = stats.copy();
+            s.circuitOpened = breaker.getTimesOpened();
+            return s;
+        }
+    }
+
+    /**
+     * Time from {@link #send} until its future completed, for every request that was not cancelled.
+     */
+    public LatencyRecorder getLatency() {
+        return latency;
+    }
+
+    /**
+     * How long one exchange may wait for its response headers.
+     */
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    /**
+     * How long an exchange may run before it is hedged, in milliseconds; 0 while there are too few samples.
+     */
+    public double getHedgeAfterMillis() {
+        return hedgeAfterNanos / 1e6;
+    }
+
+    private void nextAttempt(Call call) {
+        call.permits.acquire().thenRun(() -> {
+            if (call.result.isDone()) {
+                return;
+            }
+            if (!breaker.tryAcquire()) {
+                synchronized (stats) {
+                    stats.rejected++;
+                }
+                deliver(call, null, new IOException("Weather provider unavailable, circuit open"));
+                return;
+            }
+            call.attempt++;
+            Round round = new Round(call);
+            round.outcome.whenComplete((response, ex) -> settle(call, response, ex));
+            round.start(false);
+            long hedgeAfter = hedgeAfterNanos;
+            if (hedging && hedgeAfter > 0) {
+                CompletableFuture.delayedExecutor(hedgeAfter, TimeUnit.NANOSECONDS).execute(round::hedge);
+            }
+        });
+    }
+
+    /**
+     * Hands the outcome of an attempt to the caller, or retries it.
+     */
+    private void settle(Call call, HttpResponse<InputStream> response, Throwable ex) {
+        if (ex == null && !isRetryable(response.statusCode())) {
+            deliver(call, response, null);
+            return;
+        }
+        if (call.attempt < maxAttempts && !call.result.isDone()) {
+            long delay = backoffNanos << (call.attempt - 1);
+            delay = ThreadLocalRandom.current().nextLong(delay + 1);
+            if (response != null) {
+                long retryAfter = retryAfterNanos(response);
+                if (retryAfter > TimeUnit.SECONDS.toNanos(MAX_RETRY_AFTER_SECONDS)) {
+                    deliver(call, response, null);
+                    return;
+                }
+                delay = Math.max(delay, retryAfter);
+                close(response);
+            }
+            synchronized (stats) {
+                stats.retries++;
+            }
+            CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS).execute(() -> nextAttempt(call));
+        } else {
+            deliver(call, response, ex == null ? null : unwrap(ex));
+        }
+    }
+
+    /**
+     * Records the outcome, then completes the caller's future. Recording first keeps whatever the caller chains
+     * onto the future, such as reading the body, out of the latency.
+     */
+    private void deliver(Call call, HttpResponse<InputStream> response, Throwable ex) {
+        if (call.result.isDone()) {
+            if (response != null) {
+                close(response);
+            }
+            return;
+        }
+        latency.record(System.nanoTime() - call.start);
+        synchronized (stats) {
+            if (ex == null && !isRetryable(response.statusCode())) {
+                stats.succeeded++;
+            } else {
+                stats.failed++;
+            }
+        }
+        boolean completed = ex == null ? call.result.complete(response) : call.result.completeExceptionally(ex);
+        if (!completed && response != null) {
+            close(response);
+        }
+    }
+
+    /**
+     * Adds a good exchange to the rolling window and, every few samples, recomputes the hedge threshold from it.
+     */
+    private void timed(long nanos) {
+        synchronized (exchangeWindow) {
+            exchangeWindow[(int) (exchangesTimed % HEDGE_WINDOW_SAMPLES)] = nanos;
+            exchangesTimed++;
+            if (exchangesTimed == HEDGE_MIN_SAMPLES
+                    || (exchangesTimed > HEDGE_MIN_SAMPLES && exchangesTimed % HEDGE_REFRESH_SAMPLES == 0)) {
+                long[] window = Arrays.copyOf(exchangeWindow, (int) Math.min(exchangesTimed, HEDGE_WINDOW_SAMPLES));
+                Arrays.sort(window);
+                long p95 = window[(int) Math.ceil(window.length * 0.95) - 1];
+                hedgeAfterNanos = Math.max(HEDGE_FLOOR_NANOS, p95);
+            }
+        }
+    }
+
+    private static boolean isRetryable(int status) {
+        return status == 408 || status == 429 || status >= 500;
+    }
+
+    private static long retryAfterNanos(HttpResponse<?> response) {
+        try {
+            return response.headers().firstValue("Retry-After")
+                    .map(seconds -> TimeUnit.SECONDS.toNanos(Long.parseLong(seconds.trim())))
+                    .orElse(0L);
+        } catch (NumberFormatException e) {
+            // An HTTP date; the backoff will do
+            return 0;
+        }
+    }
+
+    private static Throwable unwrap(Throwable ex) {
+        return ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+    }
+
+    private static void close(HttpResponse<InputStream> response) {
+        try {
+            response.body().close();
+        } catch (IOException e) {
+            // Nothing was read from it
+        }
+    }
+
+    /**
+     * One call to {@link #send} and the exchanges it has in flight.
+     */
+    private final class Call {
+        final URI uri;
+        final TokenBucket permits;
+        final long start = System.nanoTime();
+        final CompletableFuture<HttpResponse<InputStream>> result = new CompletableFuture<>();
+        final List<CompletableFuture<HttpResponse<InputStream>>> exchanges = new ArrayList<>();
+        volatile int attempt;
+
+        Call(URI uri, TokenBucket permits) {
+            this.uri = uri;
+            this.permits = permits;
+        }
+
+        synchronized void track(CompletableFuture<HttpResponse<InputStream>> exchange) {
+            exchanges.add(exchange);
+        }
+
+        synchronized void untrack(CompletableFuture<HttpResponse<InputStream>> exchange) {
+            exchanges.remove(exchange);
+        }
+
+        void cancelExchanges(CompletableFuture<HttpResponse<InputStream>> except) {
+            List<CompletableFuture<HttpResponse<InputStream>>> running;
+            synchronized (this) {
+                running = new ArrayList<>(exchanges);
+            }
+            for (CompletableFuture<HttpResponse<InputStream>> exchange : running) {
+                if (exchange != except) {
+                    exchange.cancel(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * One attempt: an exchange and possibly its hedge. The outcome is the first good response, or the last
+     * failure once neither exchange can still succeed.
+     */
+    private final class Round {
+        final Call call;
+        final CompletableFuture<HttpResponse<InputStream>> outcome = new CompletableFuture<>();
+        private int outstanding;
+        private boolean decided;
+
+        Round(Call call) {
+            this.call = call;
+        }
+
+        void hedge() {
+            synchronized (this) {
+                if (decided || call.result.isDone() || !breaker.isClosed() || !call.permits.tryAcquire()) {
+                    return;
+                }
+            }
+            if (start(true)) {
+                synchronized (stats) {
+                    stats.hedges++;
+                }
+            }
+        }
+
+        boolean start(boolean hedge) {
+            synchronized (this) {
+                if (decided) {
+                    return false;
+                }
+                outstanding++;
+            }
+            if (!hedge) {
+                synchronized (stats) {
+                    stats.attempts++;
+                }
+            }
+            HttpRequest request = HttpRequest.newBuilder(call.uri)
+                    .timeout(requestTimeout)
+                    .GET()
+                    .build();
+            long sent = System.nanoTime();
+            CompletableFuture<HttpResponse<InputStream>> exchange = client.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream());
+            call.track(exchange);
+            exchange.whenComplete((response, ex) -> completed(exchange, hedge, System.nanoTime() - sent, response, ex));
+            return true;
+        }
+
+        private void completed(CompletableFuture<HttpResponse<InputStream>> exchange, boolean hedge, long nanos,
+                HttpResponse<InputStream> response, Throwable ex) {
+            call.untrack(exchange);
+            Throwable cause = ex == null ? null : unwrap(ex);
+            if (cause instanceof CancellationException) {
+                breaker.onAbandoned();
+                synchronized (this) {
+                    outstanding--;
+                }
+                return;
+            }
+            boolean good = cause == null && !isRetryable(response.statusCode());
+            if (good) {
+                breaker.onSuccess();
+                timed(nanos);
+            } else {
+                breaker.onFailure();
+                synchronized (stats) {
+                    if (cause instanceof HttpTimeoutException) {
+                        stats.timeouts++;
+                    } else if (cause == null) {
+                        stats.errorResponses++;
+                    }
+                }
+            }
+            synchronized (this) {
+                outstanding--;
+                // A failure waits for the other exchange, which may still succeed
+                if (decided || (!good && outstanding > 0)) {
+                    if (response != null) {
+                        close(response);
+                    }
+                    return;
+                }
+                decided = true;
+            }
+            if (good) {
+                if (hedge) {
+                    synchronized (stats) {
+                        stats.hedgeWins++;
+                    }
+                }
+                call.cancelExchanges(exchange);
+            }
+            if (cause != null) {
+                outcome.completeExceptionally(cause);
+            } else {
+                outcome.complete(response);
+            }
+        }
+    }
+}
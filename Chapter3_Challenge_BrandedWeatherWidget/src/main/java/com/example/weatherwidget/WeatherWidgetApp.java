@@ -13,20 +13,43 @@ import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import javafx.scene.shape.SVGPath;
 import javafx.stage.Stage;
+import javafx.animation.PauseTransition;
 import javafx.animation.ScaleTransition;
 import javafx.util.Duration;
 
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
 public class WeatherWidgetApp extends Application {
+    // Look a city up once typing has paused this long, and only once it is long enough to be a name
+    private static final Duration TYPING_PAUSE = Duration.millis(400);
+    private static final int MIN_CITY_CHARS = 3;
+    // -Dweather.stats=true prints the cache and transport counters on exit
+    private static final boolean PRINT_STATS = Boolean.getBoolean("weather.stats");
 
     private WeatherService weatherService;
+    private WeatherStore weatherStore;
+    private PauseTransition typingPause;
+    // Only the newest lookup may update the labels
+    private long lookupSequence;
+    private CompletableFuture<WeatherService.WeatherData> pendingLookup;
+    private String pendingCity;
+    // The city whose weather the labels show
+    private String displayedCity;
     private Label tempLabel;
     private Label conditionLabel;
+    private Label updatedLabel;
     private Label airQuality;
     private Label gardeningTip;
 
     @Override
     public void start(Stage primaryStage) {
         weatherService = new WeatherService();
+        try {
+            weatherStore = new WeatherStore(WeatherStore.defaultFile());
+        } catch (IOException e) {
+            System.err.println("Last-known weather unavailable: " + e.getMessage());
+        }
 
         // Root Layout
         BorderPane root = new BorderPane();
@@ -56,6 +79,17 @@ public class WeatherWidgetApp extends Application {
         // Action for Refresh Button
         refreshButton.setOnAction(e -> fetchWeather(cityInput.getText()));
 
+        // Search as you type, once typing pauses; Enter looks the city up at once
+        typingPause = new PauseTransition(TYPING_PAUSE);
+        cityInput.textProperty().addListener((observable, oldValue, newValue) -> {
+            typingPause.stop();
+            if (newValue != null && newValue.trim().length() >= MIN_CITY_CHARS) {
+                typingPause.setOnFinished(e -> fetchWeather(newValue));
+                typingPause.playFromStart();
+            }
+        });
+        cityInput.setOnAction(e -> fetchWeather(cityInput.getText()));
+
         inputContainer.getChildren().addAll(cityInput, refreshButton);
         topContainer.getChildren().addAll(cityHeading, inputContainer);
         
@@ -72,6 +106,9 @@ public class WeatherWidgetApp extends Application {
         conditionLabel = new Label("Enter a city");
         conditionLabel.getStyleClass().add("condition-text");
 
+        updatedLabel = new Label("");
+        updatedLabel.getStyleClass().add("updated-text");
+
         // Company Shape: Leaf (SVG Path)
         SVGPath leafShape = new SVGPath();
         // Better Leaf Path:
@@ -95,7 +132,7 @@ public class WeatherWidgetApp extends Application {
         airQuality = new Label("AQI: --");
         airQuality.getStyleClass().add("aqi-text");
 
-        centerContainer.getChildren().addAll(leafShape, tempLabel, conditionLabel, airQuality, gardeningTip);
+        centerContainer.getChildren().addAll(leafShape, tempLabel, conditionLabel, updatedLabel, airQuality, gardeningTip);
         root.setCenter(centerContainer);
 
         // --- Bottom Section: 3-Day Forecast ---
@@ -119,37 +156,131 @@ public class WeatherWidgetApp extends Application {
         
         primaryStage.setTitle("EcoLife Solutions Weather");
         primaryStage.setScene(scene);
+        showLastKnownWeather(cityInput);
         primaryStage.show();
     }
 
+    /**
+     * Fills the labels from the city looked up last time, before anything is fetched, then refreshes it in the
+     * background.
+     */
+    private void showLastKnownWeather(TextField cityInput) {
+        WeatherStore.Record last = weatherStore == null ? null : weatherStore.getMostRecent();
+        if (last == null) {
+            return;
+        }
+        cityInput.setText(last.getCity());
+        showWeather(last.getCity(), last.getData());
+        updatedLabel.setText("Updated " + describeAge(last.getAge()));
+        fetchWeather(last.getCity());
+    }
+
     private void fetchWeather(String city) {
         if (city == null || city.trim().isEmpty()) return;
+        typingPause.stop();
 
-        conditionLabel.setText("Loading...");
-        
-        weatherService.getWeather(city).thenAccept(data -> {
+        String key = WeatherCache.normalize(city);
+        if (pendingLookup != null && key.equals(pendingCity)) {
+            // Already on its way, e.g. Enter right after the typing pause fired
+            return;
+        }
+        // The previous city is no longer wanted; cancelling also stops its request unless another lookup shares it
+        if (pendingLookup != null) {
+            pendingLookup.cancel(true);
+        }
+        long sequence = ++lookupSequence;
+
+        if (key.equals(displayedCity)) {
+            // Keep showing what we have while it is refreshed
+            updatedLabel.setText("Refreshing...");
+        } else {
+            conditionLabel.setText("Loading...");
+        }
+
+        CompletableFuture<WeatherService.WeatherData> lookup = weatherService.getWeather(city);
+        pendingLookup = lookup;
+        pendingCity = key;
+        lookup.whenComplete((data, ex) -> {
+            if (data != null && weatherStore != null) {
+                try {
+                    weatherStore.save(city, data);
+                } catch (IOException e) {
+                    System.err.println("Could not store weather for " + city + ": " + e.getMessage());
+                }
+            }
             Platform.runLater(() -> {
-                if (data != null) {
-                    tempLabel.setText(String.format("%.1f°C", data.getTemperature()));
-                    conditionLabel.setText(data.getDescription()); // Using description for more detail
-                    airQuality.setText(String.format("AQI: %d (%s)", data.getAqi(), getAqiDescription(data.getAqi())));
-                    gardeningTip.setText(getGardeningTip(data.getCondition(), data.getTemperature()));
+                if (sequence != lookupSequence) {
+                    // Superseded by a newer city, or cancelled
+                    return;
+                }
+                pendingLookup = null;
+                pendingCity = null;
+                if (ex != null) {
+                    WeatherStore.Record stored = weatherStore == null ? null : weatherStore.get(city);
+                    if (stored != null) {
+                        // Offline or the provider is down: the last known weather beats an error
+                        showWeather(city, stored.getData());
+                        updatedLabel.setText("Offline, showing weather from " + describeAge(stored.getAge()));
+                    } else {
+                        conditionLabel.setText("Error fetching data");
+                        updatedLabel.setText("");
+                    }
+                    ex.printStackTrace();
+                } else if (data != null) {
+                    showWeather(city, data);
+                    // A cache hit can be minutes old; the store knows when it was fetched
+                    WeatherStore.Record stored = weatherStore == null ? null : weatherStore.get(city);
+                    boolean known = stored != null && stored.getData() == data;
+                    updatedLabel.setText("Updated " + (known ? describeAge(stored.getAge()) : "just now"));
                 } else {
+                    displayedCity = null;
+                    updatedLabel.setText("");
                     conditionLabel.setText("City not found");
                     tempLabel.setText("--°C");
                     airQuality.setText("AQI: --");
                     gardeningTip.setText("Gardening Tip: --");
                 }
             });
-        }).exceptionally(ex -> {
-            Platform.runLater(() -> {
-                conditionLabel.setText("Error fetching data");
-                ex.printStackTrace();
-            });
-            return null;
         });
     }
 
+    private void showWeather(String city, WeatherService.WeatherData data) {
+        displayedCity = WeatherCache.normalize(city);
+        tempLabel.setText(String.format("%.1f°C", data.getTemperature()));
+        conditionLabel.setText(data.getDescription()); // Using description for more detail
+        airQuality.setText(String.format("AQI: %d (%s)", data.getAqi(), getAqiDescription(data.getAqi())));
+        gardeningTip.setText(getGardeningTip(data.getCondition(), data.getTemperature()));
+    }
+
+    private static String describeAge(java.time.Duration age) {
+        long minutes = age.toMinutes();
+        if (minutes < 1) {
+            return "just now";
+        } else if (minutes < 60) {
+            return minutes + " min ago";
+        } else if (minutes < 48 * 60) {
+            return age.toHours() + " h ago";
+        }
+        return age.toDays() + " days ago";
+    }
+
+    @Override
+    public void stop() {
+        if (PRINT_STATS && weatherService != null) {
+            System.out.println("Weather cache: " + weatherService.getCacheStats());
+            System.out.println("Rate limiter: " + weatherService.getRateLimiter());
+            System.out.println("Transport: " + weatherService.getTransport().getStats());
+            System.out.println("Latency: " + weatherService.getTransport().getLatency());
+        }
+        if (weatherStore != null) {
+            try {
+                weatherStore.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     private String getAqiDescription(int aqi) {
         if (aqi <= 50) return "Good";
         if (aqi <= 100) return "Moderate";
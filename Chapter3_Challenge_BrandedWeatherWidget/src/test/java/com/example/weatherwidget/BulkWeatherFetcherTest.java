@@ -0,0 +1,103 @@
+package com.example.weatherwidget;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class BulkWeatherFetcherTest {
+    private StubWeatherServer stub;
+    private WeatherService service;
+
+    @BeforeEach
+    void startStub() throws IOException {
+        stub = new StubWeatherServer();
+        // One attempt and no hedges, so every lookup is exactly one request to the stub
+        WeatherTransport transport = new WeatherTransport(Duration.ofSeconds(2), Duration.ofSeconds(2), 1,
+                Duration.ofMillis(10), false, 100, Duration.ofMinutes(1));
+        service = new WeatherService(stub.getBaseUrl(), new WeatherCache(Duration.ofMinutes(5), Duration.ZERO, 256),
+                new TokenBucket(1000, 1000), transport);
+    }
+
+    @AfterEach
+    void stopStub() {
+        stub.close();
+    }
+
+    private static List<String> cities(int count) {
+        List<String> cities = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            cities.add("city-" + i);
+        }
+        return cities;
+    }
+
+    @Test
+    void reportsEveryCityWhenSomeFail() throws Exception {
+        Map<String, BulkWeatherFetcher.CityResult> results = new ConcurrentHashMap<>();
+        try (BulkWeatherFetcher fetcher = new BulkWeatherFetcher(service, 2)) {
+            fetcher.fetchAll(List.of("London", "Paris", "unknown-town", "error-city"),
+                    result -> results.put(result.getCity(), result)).get(10, TimeUnit.SECONDS);
+        }
+
+        assertEquals(4, results.size());
+        assertEquals(BulkWeatherFetcher.Status.OK, results.get("London").getStatus());
+        assertNotNull(results.get("London").getData());
+        assertEquals(BulkWeatherFetcher.Status.OK, results.get("Paris").getStatus());
+        assertEquals(BulkWeatherFetcher.Status.NOT_FOUND, results.get("unknown-town").getStatus());
+        assertNull(results.get("unknown-town").getError());
+        assertEquals(BulkWeatherFetcher.Status.FAILED, results.get("error-city").getStatus());
+        assertNotNull(results.get("error-city").getError());
+
+        WeatherCache.Stats stats = service.getCacheStats();
+        assertEquals(1, stats.getNotFound());
+        assertEquals(1, stats.getFailures());
+    }
+
+    @Test
+    void keepsAtMostMaxInFlightRequestsOutstanding() throws Exception {
+        stub.setLatency(50);
+        List<BulkWeatherFetcher.CityResult> results = new ArrayList<>();
+        try (BulkWeatherFetcher fetcher = new BulkWeatherFetcher(service, 3)) {
+            fetcher.fetchAll(cities(20), results::add).get(30, TimeUnit.SECONDS);
+        }
+
+        assertEquals(20, results.size());
+        for (BulkWeatherFetcher.CityResult result : results) {
+            assertEquals(BulkWeatherFetcher.Status.OK, result.getStatus());
+        }
+        assertEquals(20, stub.getRequests());
+        assertTrue(stub.getMaxInFlight() <= 3, "max in flight was " + stub.getMaxInFlight());
+    }
+
+    @Test
+    void cancellingTheBatchStopsSendingCities() throws Exception {
+        stub.setLatency(200);
+        List<BulkWeatherFetcher.CityResult> results = new ArrayList<>();
+        try (BulkWeatherFetcher fetcher = new BulkWeatherFetcher(service, 2)) {
+            CompletableFuture<Void> done = fetcher.fetchAll(cities(20), results::add);
+            while (stub.getRequests() < 2) {
+                Thread.sleep(10);
+            }
+            done.cancel(true);
+            Thread.sleep(500);
+        }
+
+        assertTrue(stub.getRequests() < 20, "sent " + stub.getRequests() + " requests after cancelling");
+        assertTrue(results.size() < 20);
+        assertTrue(service.getCacheStats().getCancelled() > 0);
+        assertTrue(service.getTransport().getStats().getCancelled() > 0);
+    }
+}
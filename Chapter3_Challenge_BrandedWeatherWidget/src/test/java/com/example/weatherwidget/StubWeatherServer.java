@@ -0,0 +1,202 @@
+package com.example.weatherwidget;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A scriptable stand-in for the current-weather endpoint, for tests. It follows the benchmarks' stub server:
+ * cities starting with "unknown" get the provider's 404 response, and cities starting with "error" get a 500.
+ * Everything else gets a recorded 200 response after {@link #setLatency the latency}. Replies queued with
+ * {@link #enqueue} are used first, one per request, in the order requests arrive.
+ *
+ * <p>It speaks just enough HTTP/1.1 for {@link java.net.http.HttpClient}, on a plain socket, since the
+ * application's module does not read {@code jdk.httpserver}. Each connection carries one exchange.
+ */
+class StubWeatherServer implements AutoCloseable {
+    static final String PAYLOAD = "{\"coord\":{\"lon\":-0.1257,\"lat\":51.5085},\"weather\":[{\"id\":803,\"main\":\"Clouds\","
+            + "\"description\":\"broken clouds\",\"icon\":\"04d\"}],\"main\":{\"temp\":14.62,\"humidity\":72},"
+            + "\"name\":\"London\",\"cod\":200}";
+    private static final String NOT_FOUND = "{\"cod\":\"404\",\"message\":\"city not found\"}";
+    private static final String SERVER_ERROR = "{\"cod\":\"500\",\"message\":\"Internal error\"}";
+
+    private final ServerSocket socket;
+    private final ExecutorService workers;
+    private final Queue<Reply> script = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private volatile long latencyMillis;
+
+    /**
+     * One scripted answer: a status and how long to wait before sending it.
+     */
+    private static final class Reply {
+        final int status;
+        final long delayMillis;
+        final String retryAfter;
+
+        Reply(int status, long delayMillis, String retryAfter) {
+            this.status = status;
+            this.delayMillis = delayMillis;
+            this.retryAfter = retryAfter;
+        }
+    }
+
+    StubWeatherServer() throws IOException {
+        socket = new ServerSocket(0, 256, InetAddress.getLoopbackAddress());
+        workers = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "stub-weather");
+            t.setDaemon(true);
+            return t;
+        });
+        workers.execute(this::accept);
+    }
+
+    String getBaseUrl() {
+        return "http://127.0.0.1:" + socket.getLocalPort() + "/data/2.5/weather";
+    }
+
+    /**
+     * How long every unscripted request waits before it is answered.
+     */
+    void setLatency(long millis) {
+        this.latencyMillis = millis;
+    }
+
+    /**
+     * Answers the next request with {@code status}, after {@code delayMillis}, whatever city it asks for.
+     */
+    void enqueue(int status, long delayMillis) {
+        script.add(new Reply(status, delayMillis, null));
+    }
+
+    /**
+     * Answers the next request with {@code status} and a Retry-After header.
+     */
+    void enqueueRetryAfter(int status, String retryAfter) {
+        script.add(new Reply(status, 0, retryAfter));
+    }
+
+    /**
+     * Requests received so far, including ones the client gave up on.
+     */
+    int getRequests() {
+        return requests.get();
+    }
+
+    /**
+     * The most requests that were being answered at the same time.
+     */
+    int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Already closed
+        }
+        workers.shutdownNow();
+    }
+
+    private void accept() {
+        while (!socket.isClosed()) {
+            try {
+                Socket connection = socket.accept();
+                workers.execute(() -> serve(connection));
+            } catch (IOException e) {
+                // Closed
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket connection) {
+        try (Socket c = connection) {
+            BufferedReader in = new BufferedReader(new InputStreamReader(c.getInputStream(), StandardCharsets.ISO_8859_1));
+            String requestLine = in.readLine();
+            if (requestLine == null) {
+                return;
+            }
+            String line;
+            while ((line = in.readLine()) != null && !line.isEmpty()) {
+                // Headers are not needed
+            }
+            requests.incrementAndGet();
+            int now = inFlight.incrementAndGet();
+            maxInFlight.accumulateAndGet(now, Math::max);
+            try {
+                Reply reply = script.poll();
+                if (reply == null) {
+                    reply = reply(city(requestLine));
+                }
+                if (reply.delayMillis > 0) {
+                    Thread.sleep(reply.delayMillis);
+                }
+                respond(c.getOutputStream(), reply);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        } catch (IOException e) {
+            // The client gave up on this exchange, e.g. a cancelled hedge
+        } catch (InterruptedException e) {
+            // Shutting down
+        }
+    }
+
+    private Reply reply(String city) {
+        if (city.startsWith("unknown")) {
+            return new Reply(404, latencyMillis, null);
+        }
+        if (city.startsWith("error")) {
+            return new Reply(500, latencyMillis, null);
+        }
+        return new Reply(200, latencyMillis, null);
+    }
+
+    private static void respond(OutputStream out, Reply reply) throws IOException {
+        String body = reply.status == 200 ? PAYLOAD : reply.status == 404 ? NOT_FOUND : SERVER_ERROR;
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        StringBuilder head = new StringBuilder()
+                .append("HTTP/1.1 ").append(reply.status).append(reply.status == 200 ? " OK" : " Error").append("\r\n")
+                .append("Content-Type: application/json; charset=utf-8\r\n")
+                .append("Content-Length: ").append(bytes.length).append("\r\n")
+                .append("Connection: close\r\n");
+        if (reply.retryAfter != null) {
+            head.append("Retry-After: ").append(reply.retryAfter).append("\r\n");
+        }
+        head.append("\r\n");
+        out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        out.write(bytes);
+        out.flush();
+    }
+
+    private static String city(String requestLine) {
+        // GET /data/2.5/weather?q=...&appid=... HTTP/1.1
+        String[] parts = requestLine.split(" ");
+        int query = parts.length > 1 ? parts[1].indexOf('?') : -1;
+        if (query >= 0) {
+            for (String parameter : parts[1].substring(query + 1).split("&")) {
+                if (parameter.startsWith("q=")) {
+                    return URLDecoder.decode(parameter.substring(2), StandardCharsets.UTF_8).toLowerCase(Locale.ROOT);
+                }
+            }
+        }
+        return "";
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.weatherwidget;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+class WeatherCacheTest {
+    private static final WeatherService.WeatherData SUNNY = new WeatherService.WeatherData(21, "Clear", "clear sky", 20);
+
+    private final WeatherCache cache = new WeatherCache(Duration.ofMinutes(5), Duration.ofMinutes(30), 16);
+    private final List<CompletableFuture<WeatherService.WeatherData>> requests = new ArrayList<>();
+
+    private CompletableFuture<WeatherService.WeatherData> request(String city) {
+        CompletableFuture<WeatherService.WeatherData> request = new CompletableFuture<>();
+        requests.add(request);
+        return request;
+    }
+
+    @Test
+    void concurrentLookupsShareOneRequest() throws Exception {
+        CompletableFuture<WeatherService.WeatherData> first = cache.get("Paris", this::request);
+        CompletableFuture<WeatherService.WeatherData> second = cache.get(" paris ", this::request);
+        assertEquals(1, requests.size());
+
+        requests.get(0).complete(SUNNY);
+        assertSame(SUNNY, first.get(1, TimeUnit.SECONDS));
+        assertSame(SUNNY, second.get(1, TimeUnit.SECONDS));
+        assertSame(SUNNY, cache.get("PARIS", this::request).getNow(null));
+        assertEquals(1, requests.size());
+
+        WeatherCache.Stats stats = cache.getStats();
+        assertEquals(1, stats.getMisses());
+        assertEquals(1, stats.getCoalesced());
+        assertEquals(1, stats.getHits());
+    }
+
+    @Test
+    void requestIsCancelledOnlyOnceEveryCallerHasCancelled() {
+        CompletableFuture<WeatherService.WeatherData> first = cache.get("Oslo", this::request);
+        CompletableFuture<WeatherService.WeatherData> second = cache.get("Oslo", this::request);
+
+        first.cancel(true);
+        assertFalse(requests.get(0).isCancelled());
+        assertFalse(second.isDone());
+
+        second.cancel(true);
+        assertTrue(requests.get(0).isCancelled());
+        assertEquals(1, cache.getStats().getCancelled());
+
+        // Nothing was cached; the next lookup asks again
+        cache.get("Oslo", this::request);
+        assertEquals(2, requests.size());
+    }
+
+    @Test
+    void failuresAndUnknownCitiesAreNotCachedAndCountedApart() {
+        cache.get("Atlantis", city -> CompletableFuture.completedFuture(null));
+        cache.get("Lima", city -> CompletableFuture.failedFuture(new IOException("offline")));
+        assertNull(cache.get("Atlantis", this::request).getNow(null));
+        cache.get("Lima", this::request);
+        assertEquals(2, requests.size());
+
+        WeatherCache.Stats stats = cache.getStats();
+        assertEquals(1, stats.getNotFound());
+        assertEquals(1, stats.getFailures());
+    }
+
+    @Test
+    void loaderRunsWithoutHoldingTheCache() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread slow = new Thread(() -> cache.get("Rome", city -> {
+            loading.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return CompletableFuture.completedFuture(SUNNY);
+        }));
+        slow.start();
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+        // Neither another city nor the city being loaded waits for the loader to return
+        AtomicInteger loads = new AtomicInteger();
+        CompletableFuture<WeatherService.WeatherData> other = cache.get("Madrid", city -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture(SUNNY);
+        });
+        CompletableFuture<WeatherService.WeatherData> joined = cache.get("Rome", city -> {
+            loads.incrementAndGet();
+            return CompletableFuture.completedFuture(SUNNY);
+        });
+        assertSame(SUNNY, other.getNow(null));
+        assertEquals(1, loads.get());
+        assertFalse(joined.isDone());
+
+        release.countDown();
+        slow.join();
+        assertSame(SUNNY, joined.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void lookupsThroughTheServiceSendOneRequestPerCity() throws Exception {
+        try (StubWeatherServer stub = new StubWeatherServer()) {
+            stub.setLatency(200);
+            WeatherTransport transport = new WeatherTransport(Duration.ofSeconds(2), Duration.ofSeconds(2), 1,
+                    Duration.ofMillis(10), false, 10, Duration.ofMinutes(1));
+            WeatherService service = new WeatherService(stub.getBaseUrl(), cache, new TokenBucket(100, 100), transport);
+
+            List<CompletableFuture<WeatherService.WeatherData>> lookups = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                lookups.add(service.getWeather("London"));
+            }
+            for (CompletableFuture<WeatherService.WeatherData> lookup : lookups) {
+                assertEquals(14.62, lookup.get(10, TimeUnit.SECONDS).getTemperature(), 0.001);
+            }
+            assertEquals(1, stub.getRequests());
+            assertEquals(4, service.getCacheStats().getCoalesced());
+        }
+    }
+}
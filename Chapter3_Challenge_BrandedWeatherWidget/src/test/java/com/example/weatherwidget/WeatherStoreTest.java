@@ -0,0 +1,116 @@
+package com.example.weatherwidget;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class WeatherStoreTest {
+    @TempDir
+    Path dir;
+
+    private static WeatherService.WeatherData weather(double temperature) {
+        return new WeatherService.WeatherData(temperature, "Clouds", "broken clouds", 42);
+    }
+
+    private Path file() {
+        return dir.resolve("last-weather.log");
+    }
+
+    @Test
+    void keepsTheNewestWeatherPerCityAcrossReopen() throws IOException {
+        try (WeatherStore store = new WeatherStore(file())) {
+            store.save("London", weather(10));
+            store.save("Paris", weather(15));
+            store.save(" london ", weather(11));
+        }
+        try (WeatherStore store = new WeatherStore(file())) {
+            assertEquals(11, store.get("LONDON").getData().getTemperature());
+            assertEquals("london", store.get("London").getCity());
+            assertEquals(15, store.get("paris").getData().getTemperature());
+            assertEquals("london", store.getMostRecent().getCity());
+            assertNull(store.get("Rome"));
+        }
+    }
+
+    @Test
+    void doesNotWriteTheSameDataTwice() throws IOException {
+        WeatherService.WeatherData data = weather(20);
+        try (WeatherStore store = new WeatherStore(file())) {
+            store.save("Oslo", data);
+            long size = Files.size(file());
+            store.save("Oslo", data);
+            assertEquals(size, Files.size(file()));
+        }
+    }
+
+    @Test
+    void cutsOffATornRecord() throws IOException {
+        try (WeatherStore store = new WeatherStore(file())) {
+            store.save("Lima", weather(19));
+        }
+        long size = Files.size(file());
+        // A record header promising more bytes than follow
+        Files.write(file(), new byte[] {0, 0, 0, 1, 0, 0, 0, 100, 1, 2}, StandardOpenOption.APPEND);
+
+        try (WeatherStore store = new WeatherStore(file())) {
+            assertEquals(size, Files.size(file()));
+            assertEquals(19, store.get("Lima").getData().getTemperature());
+            store.save("Quito", weather(14));
+        }
+        try (WeatherStore store = new WeatherStore(file())) {
+            assertEquals(14, store.get("Quito").getData().getTemperature());
+        }
+    }
+
+    @Test
+    void dropsEverythingFromACorruptRecordOn() throws IOException {
+        try (WeatherStore store = new WeatherStore(file())) {
+            store.save("Rome", weather(25));
+            store.save("Madrid", weather(30));
+        }
+        byte[] bytes = Files.readAllBytes(file());
+        bytes[bytes.length - 2] ^= 1;
+        Files.write(file(), bytes);
+
+        try (WeatherStore store = new WeatherStore(file())) {
+            assertEquals(25, store.get("Rome").getData().getTemperature());
+            assertNull(store.get("Madrid"));
+        }
+    }
+
+    @Test
+    void startsOverOnAFileThatIsNotAWeatherLog() throws IOException {
+        Files.write(file(), "not a weather log at all".getBytes());
+        try (WeatherStore store = new WeatherStore(file())) {
+            assertNull(store.getMostRecent());
+            store.save("Cairo", weather(35));
+        }
+        try (WeatherStore store = new WeatherStore(file())) {
+            assertEquals(35, store.get("Cairo").getData().getTemperature());
+        }
+    }
+
+    @Test
+    void compactsRepeatedFetchesOfTheSameCities() throws IOException {
+        try (WeatherStore store = new WeatherStore(file())) {
+            store.save("Berlin", weather(0));
+            long oneRecord = Files.size(file());
+            for (int i = 1; i <= 100; i++) {
+                store.save(i % 2 == 0 ? "Berlin" : "Vienna", weather(i));
+            }
+            // Two cities never take more than a handful of records once compacted
+            assertTrue(Files.size(file()) < 40 * oneRecord, "log of " + Files.size(file()) + " bytes");
+        }
+        try (WeatherStore store = new WeatherStore(file())) {
+            assertEquals(100, store.get("Berlin").getData().getTemperature());
+            assertEquals(99, store.get("Vienna").getData().getTemperature());
+        }
+    }
+}
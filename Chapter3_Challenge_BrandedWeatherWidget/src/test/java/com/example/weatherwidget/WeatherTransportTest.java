@@ -0,0 +1,173 @@
+package com.example.weatherwidget;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class WeatherTransportTest {
+    private StubWeatherServer stub;
+    private TokenBucket permits;
+
+    @BeforeEach
+    void startStub() throws IOException {
+        stub = new StubWeatherServer();
+        permits = new TokenBucket(1000, 1000);
+    }
+
+    @AfterEach
+    void stopStub() {
+        stub.close();
+    }
+
+    private static WeatherTransport transport(int maxAttempts, boolean hedging, int breakerThreshold) {
+        return new WeatherTransport(Duration.ofSeconds(2), Duration.ofSeconds(2), maxAttempts, Duration.ofMillis(10),
+                hedging, breakerThreshold, Duration.ofMinutes(1));
+    }
+
+    private URI uri(String city) {
+        return URI.create(stub.getBaseUrl() + "?q=" + city);
+    }
+
+    private static int status(CompletableFuture<HttpResponse<InputStream>> future) throws Exception {
+        HttpResponse<InputStream> response = future.get(10, TimeUnit.SECONDS);
+        response.body().close();
+        return response.statusCode();
+    }
+
+    @Test
+    void retriesServerErrorsUntilOneSucceeds() throws Exception {
+        WeatherTransport transport = transport(3, false, 10);
+        stub.enqueue(500, 0);
+        stub.enqueue(503, 0);
+
+        assertEquals(200, status(transport.send(uri("london"), permits)));
+        WeatherTransport.Stats stats = transport.getStats();
+        assertEquals(3, stats.getAttempts());
+        assertEquals(2, stats.getRetries());
+        assertEquals(2, stats.getErrorResponses());
+        assertEquals(1, stats.getSucceeded());
+        assertEquals(3, stub.getRequests());
+    }
+
+    @Test
+    void deliversTheLastErrorOnceAttemptsRunOut() throws Exception {
+        WeatherTransport transport = transport(2, false, 10);
+        stub.enqueue(500, 0);
+        stub.enqueue(500, 0);
+
+        assertEquals(500, status(transport.send(uri("london"), permits)));
+        assertEquals(1, transport.getStats().getFailed());
+        assertEquals(2, stub.getRequests());
+    }
+
+    @Test
+    void doesNotRetryNotFound() throws Exception {
+        WeatherTransport transport = transport(3, false, 10);
+
+        assertEquals(404, status(transport.send(uri("unknown-city"), permits)));
+        assertEquals(1, transport.getStats().getAttempts());
+        assertEquals(0, transport.getStats().getRetries());
+        assertEquals(1, stub.getRequests());
+    }
+
+    @Test
+    void waitsAsLongAsRetryAfterAsks() throws Exception {
+        WeatherTransport transport = transport(2, false, 10);
+        stub.enqueueRetryAfter(429, "1");
+
+        long start = System.nanoTime();
+        assertEquals(200, status(transport.send(uri("london"), permits)));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(1000), "retried before Retry-After");
+        assertEquals(2, stub.getRequests());
+    }
+
+    @Test
+    void failsAtOnceWhenRetryAfterIsTooLong() throws Exception {
+        WeatherTransport transport = transport(2, false, 10);
+        stub.enqueueRetryAfter(503, "3600");
+
+        long start = System.nanoTime();
+        assertEquals(503, status(transport.send(uri("london"), permits)));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5), "waited for Retry-After");
+        assertEquals(1, stub.getRequests());
+        assertEquals(0, transport.getStats().getRetries());
+        assertEquals(1, transport.getStats().getFailed());
+    }
+
+    @Test
+    void timesOutAStalledExchange() throws Exception {
+        WeatherTransport transport = new WeatherTransport(Duration.ofSeconds(2), Duration.ofMillis(300), 1,
+                Duration.ofMillis(10), false, 10, Duration.ofMinutes(1));
+        stub.enqueue(200, 3000);
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> transport.send(uri("london"), permits).get(10, TimeUnit.SECONDS));
+        assertInstanceOf(HttpTimeoutException.class, e.getCause());
+        assertEquals(1, transport.getStats().getTimeouts());
+    }
+
+    @Test
+    void openCircuitRefusesRequestsWithoutSendingThem() throws Exception {
+        WeatherTransport transport = transport(1, false, 2);
+        stub.enqueue(500, 0);
+        stub.enqueue(500, 0);
+        assertEquals(500, status(transport.send(uri("london"), permits)));
+        assertEquals(500, status(transport.send(uri("london"), permits)));
+
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> transport.send(uri("london"), permits).get(10, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, e.getCause());
+        WeatherTransport.Stats stats = transport.getStats();
+        assertEquals(1, stats.getRejected());
+        assertEquals(1, stats.getCircuitOpened());
+        assertEquals(2, stub.getRequests());
+    }
+
+    @Test
+    void hedgesAnExchangeSlowerThanUsual() throws Exception {
+        WeatherTransport transport = transport(1, true, 10);
+        // Enough quick exchanges to set the hedge threshold
+        for (int i = 0; i < 20; i++) {
+            assertEquals(200, status(transport.send(uri("london"), permits)));
+        }
+        assertTrue(transport.getHedgeAfterMillis() > 0, "no hedge threshold after 20 exchanges");
+
+        // The first exchange stalls; its hedge, the next request the stub sees, does not
+        stub.enqueue(200, 5000);
+        long start = System.nanoTime();
+        assertEquals(200, status(transport.send(uri("london"), permits)));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(4000), "waited for the stalled exchange");
+        WeatherTransport.Stats stats = transport.getStats();
+        assertEquals(1, stats.getHedges());
+        assertEquals(1, stats.getHedgeWins());
+    }
+
+    @Test
+    void cancellingTheRequestCancelsItsExchange() throws Exception {
+        WeatherTransport transport = transport(1, false, 10);
+        stub.enqueue(200, 5000);
+
+        CompletableFuture<HttpResponse<InputStream>> request = transport.send(uri("london"), permits);
+        while (stub.getRequests() == 0) {
+            Thread.sleep(10);
+        }
+        request.cancel(true);
+        assertTrue(request.isCancelled());
+        assertEquals(1, transport.getStats().getCancelled());
+        assertEquals(0, transport.getStats().getSucceeded());
+    }
+}
@@ -2,8 +2,10 @@ import java.io.*;
 import java.nio.file.*;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
@@ -12,13 +14,17 @@ import java.util.zip.ZipOutputStream;
 public class DiaryManager {
     private static final String ENTRIES_DIR = "entries";
     private static final String CONFIG_FILE = "diary_config.ser";
+    private static final String INDEX_FILE = "entries_index.ser";
+    private static final String BACKUP_DIR = "backups";
     private static final DateTimeFormatter FILE_NAME_FORMATTER = DateTimeFormatter.ofPattern("yyyy_MM_dd_HH_mm_ss");
     
     private static DiaryConfiguration config;
+    private static EntrySearchIndex searchIndex;
 
     public static void main(String[] args) {
         ensureEntriesDirectoryExists();
         loadConfiguration();
+        loadSearchIndex();
         Scanner scanner = new Scanner(System.in);
 
         System.out.println("Welcome " + (config.getOwnerName() != null ? config.getOwnerName() : "User"));
@@ -31,6 +37,10 @@ public class DiaryManager {
             System.out.println("4. Backup Entries (ZIP)");
             System.out.println("5. Settings (Set Owner Name)");
             System.out.println("6. Exit");
+            System.out.println("7. Rebuild Search Index");
+            System.out.println("8. Scan Entries (multiple keywords, no index)");
+            System.out.println("9. Incremental Backup");
+            System.out.println("10. Restore Backup");
             System.out.print("Choose an option: ");
 
             String choice = scanner.nextLine();
@@ -52,8 +62,23 @@ public class DiaryManager {
                     updateSettings(scanner);
                     break;
                 case "6":
+                    if (searchIndex.hasJournal()) {
+                        saveSearchIndex();
+                    }
                     System.out.println("Goodbye!");
                     return;
+                case "7":
+                    reindexEntries();
+                    break;
+                case "8":
+                    scanEntries(scanner);
+                    break;
+                case "9":
+                    incrementalBackup();
+                    break;
+                case "10":
+                    restoreBackup(scanner);
+                    break;
                 default:
                     System.out.println("Invalid option. Please try again.");
             }
@@ -91,6 +116,34 @@ public class DiaryManager {
         }
     }
 
+    private static void loadSearchIndex() {
+        searchIndex = EntrySearchIndex.load(Paths.get(INDEX_FILE), Paths.get(ENTRIES_DIR));
+        if (searchIndex.size() == 0) {
+            // First run (or unreadable index): pick up whatever is already in entries/
+            reindexEntries();
+        }
+    }
+
+    private static void saveSearchIndex() {
+        try {
+            searchIndex.save(Paths.get(INDEX_FILE));
+        } catch (IOException e) {
+            System.err.println("Error saving search index: " + e.getMessage());
+        }
+    }
+
+    private static void reindexEntries() {
+        long start = System.nanoTime();
+        try {
+            EntrySearchIndex.ReindexResult result = searchIndex.reindex(Paths.get(ENTRIES_DIR));
+            saveSearchIndex();
+            System.out.printf("Index updated: %d added, %d changed, %d removed, %d unchanged (%.1f ms)%n",
+                    result.added, result.updated, result.removed, result.unchanged, (System.nanoTime() - start) / 1e6);
+        } catch (IOException e) {
+            System.err.println("Error rebuilding search index: " + e.getMessage());
+        }
+    }
+
     private static void updateSettings(Scanner scanner) {
         System.out.print("Enter owner name: ");
         String name = scanner.nextLine();
@@ -120,6 +173,15 @@ public class DiaryManager {
             System.out.println("Entry saved to " + filename);
         } catch (IOException e) {
             System.err.println("Error writing entry: " + e.getMessage());
+            return;
+        }
+
+        try {
+            searchIndex.update(filePath);
+            // Only the entry's name is appended; the whole index is saved on exit
+            searchIndex.journal(Paths.get(INDEX_FILE), filename);
+        } catch (IOException e) {
+            System.err.println("Error indexing entry: " + e.getMessage());
         }
     }
 
@@ -164,31 +226,75 @@ public class DiaryManager {
         System.out.print("Enter keyword to search: ");
         String keyword = scanner.nextLine().toLowerCase();
 
-        try (Stream<Path> paths = Files.list(Paths.get(ENTRIES_DIR))) {
-            List<Path> files = paths.filter(Files::isRegularFile).collect(Collectors.toList());
-            boolean found = false;
-
-            for (Path file : files) {
-                try {
-                    List<String> lines = Files.readAllLines(file);
-                    for (String line : lines) {
-                        if (line.toLowerCase().contains(keyword)) {
-                            System.out.println("Found in " + file.getFileName() + ": " + line.trim());
-                            found = true;
-                            break; // Show file once if found
-                        }
+        long start = System.nanoTime();
+        // The index only narrows down the files; each candidate is still read to confirm and show the line
+        List<String> candidates = searchIndex.candidates(keyword);
+        int matches = 0;
+
+        for (String name : candidates) {
+            Path file = Paths.get(ENTRIES_DIR, name);
+            try (BufferedReader reader = Files.newBufferedReader(file)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.toLowerCase().contains(keyword)) {
+                        System.out.println("Found in " + file.getFileName() + ": " + line.trim());
+                        matches++;
+                        break; // Show file once if found
                     }
-                } catch (IOException e) {
-                    System.err.println("Error reading file " + file.getFileName() + ": " + e.getMessage());
                 }
+            } catch (IOException e) {
+                System.err.println("Error reading file " + file.getFileName() + ": " + e.getMessage());
             }
+        }
 
-            if (!found) {
-                System.out.println("No entries found containing '" + keyword + "'.");
-            }
+        if (matches == 0) {
+            System.out.println("No entries found containing '" + keyword + "'.");
+        }
+        System.out.printf("Search took %.1f ms, scanned %d of %d files.%n",
+                (System.nanoTime() - start) / 1e6, candidates.size(), searchIndex.size());
+    }
+
+    private static void scanEntries(Scanner scanner) {
+        System.out.print("Enter keywords separated by commas: ");
+        List<String> keywords = Arrays.asList(scanner.nextLine().split(","));
+        System.out.print("Stop after how many matching files? (Enter for all): ");
+        int maxHits;
+        try {
+            String input = scanner.nextLine().trim();
+            maxHits = input.isEmpty() ? 0 : Integer.parseInt(input);
+        } catch (NumberFormatException e) {
+            System.out.println("Invalid input.");
+            return;
+        }
 
+        EntryScanner entryScanner;
+        try {
+            entryScanner = new EntryScanner(keywords);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+
+        long start = System.nanoTime();
+        // A pool of its own: the reads block, and each worker's read buffers go away with its thread
+        ForkJoinPool pool = new ForkJoinPool();
+        try (Stream<Path> paths = Files.list(Paths.get(ENTRIES_DIR))) {
+            List<Path> files = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            List<EntryScanner.Hit> hits = entryScanner.scan(files, maxHits, pool);
+
+            for (EntryScanner.Hit hit : hits) {
+                System.out.println("Found " + hit.keywords + " in " + hit.file.getFileName() + ": " + hit.line);
+            }
+            if (hits.isEmpty()) {
+                System.out.println("No entries found containing any of " + entryScanner.getKeywords() + ".");
+            }
+            System.out.printf("Scan took %.1f ms over %d files.%n", (System.nanoTime() - start) / 1e6, files.size());
         } catch (IOException e) {
-            System.err.println("Error searching entries: " + e.getMessage());
+            System.err.println("Error scanning entries: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdown();
         }
     }
 
@@ -220,6 +326,60 @@ public class DiaryManager {
         }
     }
 
+    private static void incrementalBackup() {
+        String timestamp = LocalDateTime.now().format(FILE_NAME_FORMATTER);
+        IncrementalBackup backup = new IncrementalBackup(Paths.get(ENTRIES_DIR), Paths.get(BACKUP_DIR), ForkJoinPool.commonPool());
+        long start = System.nanoTime();
+        try {
+            IncrementalBackup.Result result = backup.backup(timestamp);
+            System.out.printf("Backup %s created: %d files (%d unchanged, %d stored, %d already in earlier backups), %d bytes written in %.1f ms%n",
+                    result.name, result.files, result.unchanged, result.stored, result.deduplicated,
+                    result.packBytes, (System.nanoTime() - start) / 1e6);
+        } catch (IOException e) {
+            System.err.println("Error creating backup: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void restoreBackup(Scanner scanner) {
+        IncrementalBackup backup = new IncrementalBackup(Paths.get(ENTRIES_DIR), Paths.get(BACKUP_DIR), ForkJoinPool.commonPool());
+        try {
+            List<String> backups = backup.listBackups();
+            if (backups.isEmpty()) {
+                System.out.println("No incremental backups found.");
+                return;
+            }
+
+            System.out.println("\nAvailable Backups:");
+            for (int i = 0; i < backups.size(); i++) {
+                System.out.println((i + 1) + ". " + backups.get(i));
+            }
+            System.out.print("Select a backup to restore: ");
+            int index;
+            try {
+                index = Integer.parseInt(scanner.nextLine()) - 1;
+            } catch (NumberFormatException e) {
+                System.out.println("Invalid input.");
+                return;
+            }
+            if (index < 0 || index >= backups.size()) {
+                System.out.println("Invalid selection.");
+                return;
+            }
+
+            // Restore next to entries/ rather than over it, so nothing current is lost
+            String name = backups.get(index);
+            Path target = Paths.get("restored_" + name);
+            int count = backup.restore(name, target);
+            System.out.println("Restored " + count + " entries to " + target);
+        } catch (IOException e) {
+            System.err.println("Error restoring backup: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     // Serializable Configuration Class
     static class DiaryConfiguration implements Serializable {
         private static final long serialVersionUID = 1L;
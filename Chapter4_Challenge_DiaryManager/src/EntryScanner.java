@@ -0,0 +1,239 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+/**
+ * Index-free search: scans entry files in parallel for any of several keywords at once.
+ *
+ * Files are spread over a ForkJoinPool and each is read in 64 KB chunks through a FileChannel into a buffer
+ * that the worker thread reuses. The reads block, so give the scan a pool of its own and shut it down afterwards;
+ * that also frees the per-thread buffers. The keywords are compiled into one Aho-Corasick automaton over bytes, with
+ * ASCII case folding built into its transition table, so no line is ever lower-cased or copied to match.
+ * Matching is case-insensitive for ASCII letters; other characters must match exactly.
+ *
+ * Results come back in file order no matter which worker finished first, and with a hit limit the result is
+ * the same as a sequential scan that stopped after that many files matched.
+ */
+class EntryScanner {
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int MAX_KEYWORDS = 64;
+
+    private static final ThreadLocal<ByteBuffer> CHUNK = ThreadLocal.withInitial(() -> ByteBuffer.allocate(CHUNK_SIZE));
+    private static final ThreadLocal<LineBuffer> LINE = ThreadLocal.withInitial(LineBuffer::new);
+
+    private final List<String> keywords;
+    private final int[][] next;
+    private final long[] output;
+
+    static class Hit {
+        final Path file;
+        final String line;
+        final List<String> keywords;
+
+        Hit(Path file, String line, List<String> keywords) {
+            this.file = file;
+            this.line = line;
+            this.keywords = keywords;
+        }
+    }
+
+    EntryScanner(Collection<String> keywords) {
+        Set<String> unique = new LinkedHashSet<>();
+        for (String k : keywords) {
+            String trimmed = k.trim().toLowerCase(Locale.ROOT);
+            if (!trimmed.isEmpty()) {
+                unique.add(trimmed);
+            }
+        }
+        if (unique.isEmpty() || unique.size() > MAX_KEYWORDS) {
+            throw new IllegalArgumentException("Between 1 and " + MAX_KEYWORDS + " keywords are required");
+        }
+        this.keywords = new ArrayList<>(unique);
+
+        // Trie over the UTF-8 bytes of each keyword
+        List<int[]> trie = new ArrayList<>();
+        List<Long> out = new ArrayList<>();
+        trie.add(newState());
+        out.add(0L);
+        for (int k = 0; k < this.keywords.size(); k++) {
+            int state = 0;
+            for (byte b : this.keywords.get(k).getBytes(StandardCharsets.UTF_8)) {
+                int c = b & 0xFF;
+                if (trie.get(state)[c] < 0) {
+                    trie.get(state)[c] = trie.size();
+                    trie.add(newState());
+                    out.add(0L);
+                }
+                state = trie.get(state)[c];
+            }
+            out.set(state, out.get(state) | (1L << k));
+        }
+
+        // Turn the trie into a DFA: missing transitions follow the failure link, resolved breadth-first
+        next = trie.toArray(new int[0][]);
+        output = new long[next.length];
+        for (int i = 0; i < output.length; i++) output[i] = out.get(i);
+        int[] fail = new int[next.length];
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < 256; c++) {
+            if (next[0][c] < 0) {
+                next[0][c] = 0;
+            } else {
+                queue.add(next[0][c]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            output[state] |= output[fail[state]];
+            for (int c = 0; c < 256; c++) {
+                int child = next[state][c];
+                if (child < 0) {
+                    next[state][c] = next[fail[state]][c];
+                } else {
+                    fail[child] = next[fail[state]][c];
+                    queue.add(child);
+                }
+            }
+        }
+        for (int[] row : next) {
+            for (int c = 'A'; c <= 'Z'; c++) {
+                row[c] = row[c + ('a' - 'A')];
+            }
+        }
+    }
+
+    List<String> getKeywords() {
+        return keywords;
+    }
+
+    /**
+     * Scans {@code files} and returns at most {@code maxHits} hits (0 for no limit), one per matching file,
+     * in the order of {@code files}.
+     */
+    List<Hit> scan(List<Path> files, int maxHits, ForkJoinPool pool) throws InterruptedException {
+        int limit = maxHits <= 0 ? Integer.MAX_VALUE : maxHits;
+        Hit[] hits = new Hit[files.size()];
+        // The lowest `limit` hit indexes so far; once there are that many, no file after the last can make it
+        TreeSet<Integer> firstHits = new TreeSet<>();
+        AtomicInteger cutoff = new AtomicInteger(Integer.MAX_VALUE);
+        try {
+            pool.submit(() -> IntStream.range(0, files.size()).parallel().forEach(i -> {
+                if (i > cutoff.get()) {
+                    return;
+                }
+                try {
+                    Hit hit = scanFile(files.get(i));
+                    if (hit != null) {
+                        hits[i] = hit;
+                        if (limit != Integer.MAX_VALUE) {
+                            synchronized (firstHits) {
+                                firstHits.add(i);
+                                if (firstHits.size() > limit) {
+                                    firstHits.pollLast();
+                                }
+                                if (firstHits.size() == limit) {
+                                    cutoff.set(firstHits.last());
+                                }
+                            }
+                        }
+                    }
+                } catch (IOException e) {
+                    System.err.println("Error reading file " + files.get(i).getFileName() + ": " + e.getMessage());
+                }
+            })).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+
+        List<Hit> result = new ArrayList<>();
+        for (Hit hit : hits) {
+            if (hit != null && result.size() < limit) {
+                result.add(hit);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the first line of {@code file} containing any keyword, or {@code null}.
+     */
+    Hit scanFile(Path file) throws IOException {
+        ByteBuffer chunk = CHUNK.get();
+        LineBuffer line = LINE.get();
+        line.reset();
+        int state = 0;
+        long matched = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            chunk.clear();
+            while (channel.read(chunk) >= 0) {
+                chunk.flip();
+                byte[] bytes = chunk.array();
+                int limit = chunk.limit();
+                for (int i = 0; i < limit; i++) {
+                    byte b = bytes[i];
+                    if (b == '\n') {
+                        if (matched != 0) {
+                            return toHit(file, line, matched);
+                        }
+                        line.reset();
+                        state = 0;
+                        continue;
+                    }
+                    line.append(b);
+                    state = next[state][b & 0xFF];
+                    matched |= output[state];
+                }
+                chunk.clear();
+            }
+        }
+        return matched != 0 ? toHit(file, line, matched) : null;
+    }
+
+    private Hit toHit(Path file, LineBuffer line, long matched) {
+        List<String> found = new ArrayList<>();
+        for (int k = 0; k < keywords.size(); k++) {
+            if ((matched & (1L << k)) != 0) {
+                found.add(keywords.get(k));
+            }
+        }
+        return new Hit(file, line.toString().trim(), found);
+    }
+
+    private static int[] newState() {
+        int[] row = new int[256];
+        Arrays.fill(row, -1);
+        return row;
+    }
+
+    /**
+     * Growable byte buffer holding the current line, reused across files by one worker thread.
+     */
+    private static class LineBuffer {
+        private byte[] bytes = new byte[256];
+        private int length;
+
+        void append(byte b) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, length * 2);
+            }
+            bytes[length++] = b;
+        }
+
+        void reset() {
+            length = 0;
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+}
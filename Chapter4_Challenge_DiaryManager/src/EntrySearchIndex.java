@@ -0,0 +1,259 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Persistent trigram index over the files in the entries directory.
+ *
+ * For every three-character sequence that occurs (lower-cased) inside a line of an entry, the index keeps the
+ * set of files containing it. A keyword of three or more characters can only occur in files that contain
+ * all of its trigrams, so a search only has to open those candidate files to confirm the match and print the
+ * line. Each file's modification time and size are recorded so a reindex only re-reads files that changed.
+ *
+ * Writing one entry does not rewrite the whole index: its name is appended to a journal next to the index file,
+ * and {@link #load} re-reads the journalled files on top of the saved index. The index is saved, and the journal
+ * emptied, on exit or once the journal holds {@value #MAX_JOURNAL_ENTRIES} names.
+ */
+class EntrySearchIndex implements Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final int GRAM = 3;
+    private static final int MAX_JOURNAL_ENTRIES = 100;
+    private static final String JOURNAL_SUFFIX = ".journal";
+
+    private final Map<String, FileStamp> files = new HashMap<>();
+    private final List<String> fileNames = new ArrayList<>();
+    private final Map<String, BitSet> postings = new HashMap<>();
+    // Names appended to the journal since the index was last saved
+    private transient int journalled;
+
+    static class FileStamp implements Serializable {
+        private static final long serialVersionUID = 1L;
+        final int id;
+        final long modifiedMillis;
+        final long size;
+        // The file's distinct trigrams, so removing it only touches their posting lists; null in older indexes
+        final String[] grams;
+
+        FileStamp(int id, long modifiedMillis, long size, String[] grams) {
+            this.id = id;
+            this.modifiedMillis = modifiedMillis;
+            this.size = size;
+            this.grams = grams;
+        }
+    }
+
+    static class ReindexResult {
+        int added;
+        int updated;
+        int removed;
+        int unchanged;
+    }
+
+    /**
+     * Reads the index saved at {@code path} and re-indexes the files of {@code directory} named in its journal.
+     */
+    static EntrySearchIndex load(Path path, Path directory) {
+        EntrySearchIndex index = new EntrySearchIndex();
+        if (Files.exists(path)) {
+            try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                index = (EntrySearchIndex) ois.readObject();
+            } catch (IOException | ClassNotFoundException e) {
+                System.err.println("Search index unreadable, rebuilding: " + e.getMessage());
+                return new EntrySearchIndex();
+            }
+        }
+        Path journal = journalPath(path);
+        if (Files.exists(journal)) {
+            try {
+                List<String> names = Files.readAllLines(journal, StandardCharsets.UTF_8);
+                // A crash mid-append leaves a torn last name, which matches no file and is simply removed
+                for (String name : new LinkedHashSet<>(names)) {
+                    if (!name.isEmpty()) {
+                        index.refresh(directory.resolve(name));
+                    }
+                }
+                index.journalled = names.size();
+            } catch (IOException e) {
+                System.err.println("Search index journal unreadable, rebuilding: " + e.getMessage());
+                return new EntrySearchIndex();
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Writes the whole index to {@code path} and empties its journal.
+     */
+    void save(Path path) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            oos.writeObject(this);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // Replaying the journal over the new index would only repeat what it already holds
+        Files.deleteIfExists(journalPath(path));
+        journalled = 0;
+    }
+
+    /**
+     * Records that the entry {@code name} was (re)indexed since the index at {@code path} was saved. Once the
+     * journal is long enough, the index is saved instead.
+     */
+    void journal(Path path, String name) throws IOException {
+        if (journalled >= MAX_JOURNAL_ENTRIES) {
+            save(path);
+            return;
+        }
+        Files.write(journalPath(path), (name + "\n").getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        journalled++;
+    }
+
+    /**
+     * Whether changes are only in the journal, not in the saved index.
+     */
+    boolean hasJournal() {
+        return journalled > 0;
+    }
+
+    private static Path journalPath(Path path) {
+        return path.resolveSibling(path.getFileName() + JOURNAL_SUFFIX);
+    }
+
+    private void refresh(Path file) throws IOException {
+        if (Files.isRegularFile(file)) {
+            update(file);
+        } else {
+            remove(file.getFileName().toString());
+        }
+    }
+
+    int size() {
+        return files.size();
+    }
+
+    /**
+     * (Re)indexes one entry file.
+     */
+    void update(Path file) throws IOException {
+        String name = file.getFileName().toString();
+        BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        remove(name);
+
+        int id = fileNames.indexOf(null);
+        if (id < 0) {
+            id = fileNames.size();
+            fileNames.add(name);
+        } else {
+            fileNames.set(id, name);
+        }
+        Set<String> grams = new HashSet<>();
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String lower = line.toLowerCase();
+                for (int i = 0; i + GRAM <= lower.length(); i++) {
+                    grams.add(lower.substring(i, i + GRAM));
+                }
+            }
+        }
+        for (String gram : grams) {
+            postings.computeIfAbsent(gram, g -> new BitSet()).set(id);
+        }
+        files.put(name, new FileStamp(id, attrs.lastModifiedTime().toMillis(), attrs.size(), grams.toArray(new String[0])));
+    }
+
+    void remove(String name) {
+        FileStamp stamp = files.remove(name);
+        if (stamp == null) {
+            return;
+        }
+        fileNames.set(stamp.id, null);
+        if (stamp.grams == null) {
+            postings.values().removeIf(bits -> {
+                bits.clear(stamp.id);
+                return bits.isEmpty();
+            });
+            return;
+        }
+        for (String gram : stamp.grams) {
+            BitSet bits = postings.get(gram);
+            if (bits != null) {
+                bits.clear(stamp.id);
+                if (bits.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    /**
+     * Brings the index up to date with {@code directory}, re-reading only files whose modification time or
+     * size differ from what was recorded.
+     */
+    ReindexResult reindex(Path directory) throws IOException {
+        ReindexResult result = new ReindexResult();
+        Set<String> seen = new HashSet<>();
+        List<Path> current;
+        try (Stream<Path> paths = Files.list(directory)) {
+            current = paths.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        for (Path file : current) {
+            String name = file.getFileName().toString();
+            seen.add(name);
+            FileStamp stamp = files.get(name);
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            if (stamp != null && stamp.modifiedMillis == attrs.lastModifiedTime().toMillis() && stamp.size == attrs.size()) {
+                result.unchanged++;
+                continue;
+            }
+            update(file);
+            if (stamp == null) {
+                result.added++;
+            } else {
+                result.updated++;
+            }
+        }
+        for (String name : new ArrayList<>(files.keySet())) {
+            if (!seen.contains(name)) {
+                remove(name);
+                result.removed++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Names of the files that may contain {@code keyword} (already lower-cased), sorted. Keywords shorter than
+     * a trigram cannot be narrowed down, so every indexed file is a candidate.
+     */
+    List<String> candidates(String keyword) {
+        if (keyword.length() < GRAM) {
+            List<String> all = new ArrayList<>(files.keySet());
+            Collections.sort(all);
+            return all;
+        }
+        BitSet result = null;
+        for (int i = 0; i + GRAM <= keyword.length(); i++) {
+            BitSet bits = postings.get(keyword.substring(i, i + GRAM));
+            if (bits == null) {
+                return new ArrayList<>();
+            }
+            if (result == null) {
+                result = (BitSet) bits.clone();
+            } else {
+                result.and(bits);
+            }
+        }
+        List<String> names = new ArrayList<>();
+        for (int id = result.nextSetBit(0); id >= 0; id = result.nextSetBit(id + 1)) {
+            names.add(fileNames.get(id));
+        }
+        Collections.sort(names);
+        return names;
+    }
+}
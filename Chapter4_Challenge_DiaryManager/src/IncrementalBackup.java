@@ -0,0 +1,312 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Incremental, deduplicating backups of the entries directory.
+ *
+ * Each run writes two files into the backup directory:
+ *   backup_TIMESTAMP.manifest  - one line per entry file at that moment: SHA-256, size, mtime, and where its
+ *                                compressed content lives (pack file, offset, length)
+ *   backup_TIMESTAMP.pack      - the compressed content of files whose hash no earlier backup already holds
+ * A run that finds a backup with the same timestamp adds a counter to its name (backup_TIMESTAMP_001).
+ *
+ * Files whose size and modification time match the previous manifest are not even read, and content that is
+ * already stored (in any earlier pack) is referenced instead of stored again. Hashing and compression of the
+ * changed files run in parallel; only the final append to the pack is sequential. Because every manifest
+ * lists the complete directory, restoring a point in time only needs that manifest and the packs it names.
+ */
+class IncrementalBackup {
+    private static final String MANIFEST_SUFFIX = ".manifest";
+    private static final String PACK_SUFFIX = ".pack";
+    private static final String PREFIX = "backup_";
+
+    private final Path entriesDir;
+    private final Path backupDir;
+    private final ForkJoinPool pool;
+
+    static class Result {
+        int files;
+        int unchanged;
+        int stored;
+        int deduplicated;
+        long packBytes;
+        String name;
+    }
+
+    /**
+     * One manifest line.
+     */
+    static class Item {
+        final String hash;
+        final long size;
+        final long modifiedMillis;
+        final String pack;
+        final long offset;
+        final long length;
+        final String name;
+
+        Item(String hash, long size, long modifiedMillis, String pack, long offset, long length, String name) {
+            this.hash = hash;
+            this.size = size;
+            this.modifiedMillis = modifiedMillis;
+            this.pack = pack;
+            this.offset = offset;
+            this.length = length;
+            this.name = name;
+        }
+
+        Item withStamp(String fileName, long fileSize, long modified) {
+            return new Item(hash, fileSize, modified, pack, offset, length, fileName);
+        }
+
+        String toLine() {
+            return String.join("\t", hash, Long.toString(size), Long.toString(modifiedMillis), pack,
+                    Long.toString(offset), Long.toString(length), name);
+        }
+
+        static Item parse(String line) {
+            String[] f = line.split("\t", 7);
+            return new Item(f[0], Long.parseLong(f[1]), Long.parseLong(f[2]), f[3],
+                    Long.parseLong(f[4]), Long.parseLong(f[5]), f[6]);
+        }
+    }
+
+    IncrementalBackup(Path entriesDir, Path backupDir, ForkJoinPool pool) {
+        this.entriesDir = entriesDir;
+        this.backupDir = backupDir;
+        this.pool = pool;
+    }
+
+    /**
+     * Backups available for restore, oldest first (names without suffix).
+     */
+    List<String> listBackups() throws IOException {
+        if (!Files.isDirectory(backupDir)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> paths = Files.list(backupDir)) {
+            return paths.map(p -> p.getFileName().toString())
+                        .filter(n -> n.startsWith(PREFIX) && n.endsWith(MANIFEST_SUFFIX))
+                        .map(n -> n.substring(0, n.length() - MANIFEST_SUFFIX.length()))
+                        .sorted()
+                        .collect(Collectors.toList());
+        }
+    }
+
+    Result backup(String timestamp) throws IOException, InterruptedException {
+        Files.createDirectories(backupDir);
+        List<String> backups = listBackups();
+        String name = PREFIX + timestamp;
+        // A second backup within the same timestamp gets a counter, which still sorts after the first
+        for (int n = 1; backups.contains(name); n++) {
+            name = String.format("%s%s_%03d", PREFIX, timestamp, n);
+        }
+
+        // Previous state: the last manifest by file name, and every stored object by hash
+        Map<String, Item> previous = new HashMap<>();
+        Map<String, Item> stored = new HashMap<>();
+        for (String backup : backups) {
+            for (Item item : readManifest(backup)) {
+                stored.putIfAbsent(item.hash, item);
+            }
+        }
+        if (!backups.isEmpty()) {
+            for (Item item : readManifest(backups.get(backups.size() - 1))) {
+                previous.put(item.name, item);
+            }
+        }
+
+        List<Path> files;
+        try (Stream<Path> paths = Files.list(entriesDir)) {
+            files = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+
+        Result result = new Result();
+        result.name = name;
+        result.files = files.size();
+        Item[] items = new Item[files.size()];
+        List<Integer> changed = new ArrayList<>();
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            Item before = previous.get(file.getFileName().toString());
+            if (before != null && before.size == attrs.size() && before.modifiedMillis == attrs.lastModifiedTime().toMillis()) {
+                items[i] = before;
+                result.unchanged++;
+            } else {
+                changed.add(i);
+            }
+        }
+
+        // Hash and compress the changed files in parallel
+        Compressed[] compressed = new Compressed[files.size()];
+        try {
+            pool.submit(() -> changed.parallelStream().forEach(i -> compressed[i] = compress(files.get(i)))).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            throw new IOException(cause);
+        }
+
+        String packName = name + PACK_SUFFIX;
+        Path packPath = backupDir.resolve(packName);
+        long offset = 0;
+        try (OutputStream pack = new BufferedOutputStream(Files.newOutputStream(packPath))) {
+            for (int i : changed) {
+                Compressed c = compressed[i];
+                String fileName = files.get(i).getFileName().toString();
+                Item existing = stored.get(c.hash);
+                if (existing != null) {
+                    items[i] = existing.withStamp(fileName, c.size, c.modifiedMillis);
+                    result.deduplicated++;
+                    continue;
+                }
+                pack.write(c.data);
+                items[i] = new Item(c.hash, c.size, c.modifiedMillis, packName, offset, c.data.length, fileName);
+                stored.put(c.hash, items[i]);
+                offset += c.data.length;
+                result.stored++;
+            }
+        }
+        result.packBytes = offset;
+        if (offset == 0) {
+            Files.delete(packPath);
+        }
+
+        // The manifest is written last, so an interrupted run leaves no half-made backup in the chain
+        Path temp = backupDir.resolve(name + MANIFEST_SUFFIX + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp)) {
+            for (Item item : items) {
+                writer.write(item.toLine());
+                writer.newLine();
+            }
+        }
+        Files.move(temp, backupDir.resolve(name + MANIFEST_SUFFIX), StandardCopyOption.ATOMIC_MOVE);
+        return result;
+    }
+
+    /**
+     * Rebuilds the entries directory as it was at {@code backup} into {@code target}. Returns the file count.
+     */
+    int restore(String backup, Path target) throws IOException, InterruptedException {
+        List<Item> items = readManifest(backup);
+        Files.createDirectories(target);
+        try {
+            pool.submit(() -> items.parallelStream().forEach(item -> {
+                try {
+                    restoreItem(item, target);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            })).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            throw new IOException(cause);
+        }
+        return items.size();
+    }
+
+    private void restoreItem(Item item, Path target) throws IOException {
+        byte[] packed = new byte[Math.toIntExact(item.length)];
+        try (FileChannel pack = FileChannel.open(backupDir.resolve(item.pack), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.wrap(packed);
+            long position = item.offset;
+            while (buffer.hasRemaining()) {
+                int n = pack.read(buffer, position);
+                if (n < 0) {
+                    throw new EOFException("Pack " + item.pack + " is truncated");
+                }
+                position += n;
+            }
+        }
+        MessageDigest digest = sha256();
+        Path out = target.resolve(item.name);
+        try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(packed));
+             OutputStream os = Files.newOutputStream(out)) {
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+                os.write(buffer, 0, n);
+            }
+        }
+        if (!toHex(digest.digest()).equals(item.hash)) {
+            throw new IOException("Checksum mismatch restoring " + item.name);
+        }
+        Files.setLastModifiedTime(out, FileTime.fromMillis(item.modifiedMillis));
+    }
+
+    private List<Item> readManifest(String backup) throws IOException {
+        List<Item> items = new ArrayList<>();
+        for (String line : Files.readAllLines(backupDir.resolve(backup + MANIFEST_SUFFIX))) {
+            if (!line.isEmpty()) {
+                items.add(Item.parse(line));
+            }
+        }
+        return items;
+    }
+
+    private static class Compressed {
+        String hash;
+        long size;
+        long modifiedMillis;
+        byte[] data;
+    }
+
+    private static Compressed compress(Path file) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            byte[] content = Files.readAllBytes(file);
+            Compressed c = new Compressed();
+            c.hash = toHex(sha256().digest(content));
+            c.size = content.length;
+            c.modifiedMillis = attrs.lastModifiedTime().toMillis();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 2 + 64);
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+            try (DeflaterOutputStream dos = new DeflaterOutputStream(bytes, deflater)) {
+                dos.write(content);
+            } finally {
+                deflater.end();
+            }
+            c.data = bytes.toByteArray();
+            return c;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,61 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class EntryScannerTest {
+    @TempDir
+    Path dir;
+    private ForkJoinPool pool;
+
+    @BeforeEach
+    void setUp() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdown();
+    }
+
+    private Path write(String name, String text) throws IOException {
+        return Files.writeString(dir.resolve(name), text);
+    }
+
+    @Test
+    void findsTheFirstLineWithAnyKeyword() throws IOException {
+        EntryScanner scanner = new EntryScanner(List.of("Coffee", " rain "));
+        EntryScanner.Hit hit = scanner.scanFile(write("a.txt", "Nothing here\nSome RAIN and coffee\nMore coffee"));
+        assertEquals("Some RAIN and coffee", hit.line);
+        assertEquals(List.of("coffee", "rain"), hit.keywords);
+        assertNull(scanner.scanFile(write("b.txt", "Sunny all day")));
+    }
+
+    @Test
+    void returnsTheSameHitsAsASequentialScan() throws Exception {
+        List<Path> files = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            files.add(write(String.format("entry_%03d.txt", i), i % 3 == 0 ? "line one\nmatch " + i : "no luck " + i));
+        }
+        EntryScanner scanner = new EntryScanner(List.of("match"));
+
+        List<EntryScanner.Hit> all = scanner.scan(files, 0, pool);
+        assertEquals(67, all.size());
+        for (int limit : new int[] {1, 5, 66, 67, 100}) {
+            List<EntryScanner.Hit> limited = scanner.scan(files, limit, pool);
+            assertEquals(Math.min(limit, 67), limited.size());
+            for (int k = 0; k < limited.size(); k++) {
+                assertEquals(all.get(k).file, limited.get(k).file);
+            }
+        }
+    }
+}
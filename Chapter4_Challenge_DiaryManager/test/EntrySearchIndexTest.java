@@ -0,0 +1,98 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class EntrySearchIndexTest {
+    @TempDir
+    Path temp;
+    private Path entries;
+    private Path indexPath;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        entries = Files.createDirectories(temp.resolve("entries"));
+        indexPath = temp.resolve("entries_index.ser");
+        write("a.txt", "Coffee in the morning");
+        write("b.txt", "A long walk at SUNSET");
+        write("c.txt", "More coffee, then a walk");
+    }
+
+    private Path write(String name, String text) throws IOException {
+        return Files.writeString(entries.resolve(name), text);
+    }
+
+    private EntrySearchIndex indexAll() throws IOException {
+        EntrySearchIndex index = new EntrySearchIndex();
+        index.reindex(entries);
+        return index;
+    }
+
+    @Test
+    void narrowsKeywordsToFilesWithAllTheirTrigrams() throws IOException {
+        EntrySearchIndex index = indexAll();
+        assertEquals(List.of("a.txt", "c.txt"), index.candidates("coffee"));
+        assertEquals(List.of("b.txt"), index.candidates("sunset"));
+        assertEquals(List.of(), index.candidates("tea"));
+        // Too short to narrow down
+        assertEquals(List.of("a.txt", "b.txt", "c.txt"), index.candidates("a"));
+    }
+
+    @Test
+    void reindexRereadsOnlyChangedFiles() throws IOException {
+        EntrySearchIndex index = indexAll();
+        Path a = write("a.txt", "Tea in the morning, for a change");
+        Files.setLastModifiedTime(a, FileTime.fromMillis(Files.getLastModifiedTime(a).toMillis() + 2000));
+        Files.delete(entries.resolve("b.txt"));
+        write("d.txt", "Sunset again");
+
+        EntrySearchIndex.ReindexResult result = index.reindex(entries);
+        assertEquals(1, result.added);
+        assertEquals(1, result.updated);
+        assertEquals(1, result.removed);
+        assertEquals(1, result.unchanged);
+        assertEquals(List.of("c.txt"), index.candidates("coffee"));
+        assertEquals(List.of("d.txt"), index.candidates("sunset"));
+        assertEquals(3, index.size());
+    }
+
+    @Test
+    void replaysTheJournalOnTopOfTheSavedIndex() throws IOException {
+        EntrySearchIndex index = indexAll();
+        index.save(indexPath);
+
+        index.update(write("d.txt", "Rain all day"));
+        index.journal(indexPath, "d.txt");
+        Files.delete(entries.resolve("a.txt"));
+        index.remove("a.txt");
+        index.journal(indexPath, "a.txt");
+        assertTrue(index.hasJournal());
+
+        EntrySearchIndex loaded = EntrySearchIndex.load(indexPath, entries);
+        assertEquals(List.of("d.txt"), loaded.candidates("rain"));
+        assertEquals(List.of("c.txt"), loaded.candidates("coffee"));
+        assertTrue(loaded.hasJournal());
+
+        loaded.save(indexPath);
+        assertFalse(loaded.hasJournal());
+        assertFalse(Files.exists(temp.resolve("entries_index.ser.journal")));
+        assertEquals(List.of("d.txt"), EntrySearchIndex.load(indexPath, entries).candidates("rain"));
+    }
+
+    @Test
+    void startsOverFromAnUnreadableIndex() throws IOException {
+        Files.writeString(indexPath, "not an index");
+        EntrySearchIndex index = EntrySearchIndex.load(indexPath, entries);
+        assertEquals(0, index.size());
+        index.reindex(entries);
+        assertEquals(List.of("a.txt", "c.txt"), index.candidates("coffee"));
+    }
+}
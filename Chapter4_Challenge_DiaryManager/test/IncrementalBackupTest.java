@@ -0,0 +1,113 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class IncrementalBackupTest {
+    @TempDir
+    Path temp;
+    private Path entries;
+    private Path backups;
+    private ForkJoinPool pool;
+    private IncrementalBackup backup;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        entries = Files.createDirectories(temp.resolve("entries"));
+        backups = temp.resolve("backups");
+        pool = new ForkJoinPool(2);
+        backup = new IncrementalBackup(entries, backups, pool);
+        write("a.txt", "First entry");
+        write("b.txt", "Second entry");
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdown();
+    }
+
+    private Path write(String name, String text) throws IOException {
+        return Files.writeString(entries.resolve(name), text);
+    }
+
+    private void touch(Path file) throws IOException {
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 2000));
+    }
+
+    @Test
+    void storesOnlyNewOrChangedContent() throws Exception {
+        IncrementalBackup.Result first = backup.backup("2024_01_01_10_00_00");
+        assertEquals(2, first.files);
+        assertEquals(2, first.stored);
+
+        touch(write("a.txt", "First entry, edited"));
+        write("c.txt", "Second entry");
+        IncrementalBackup.Result second = backup.backup("2024_01_01_11_00_00");
+        assertEquals(3, second.files);
+        assertEquals(1, second.unchanged);
+        assertEquals(1, second.stored);
+        assertEquals(1, second.deduplicated);
+
+        IncrementalBackup.Result third = backup.backup("2024_01_01_12_00_00");
+        assertEquals(3, third.unchanged);
+        assertEquals(0, third.packBytes);
+        assertEquals(List.of("backup_2024_01_01_10_00_00", "backup_2024_01_01_11_00_00", "backup_2024_01_01_12_00_00"),
+                backup.listBackups());
+    }
+
+    @Test
+    void numbersBackupsTakenWithinTheSameSecond() throws Exception {
+        assertEquals("backup_2024_01_01_10_00_00", backup.backup("2024_01_01_10_00_00").name);
+        touch(write("a.txt", "First entry, edited"));
+        IncrementalBackup.Result second = backup.backup("2024_01_01_10_00_00");
+        assertEquals("backup_2024_01_01_10_00_00_001", second.name);
+        assertEquals(1, second.unchanged);
+        assertEquals("backup_2024_01_01_10_00_00_002", backup.backup("2024_01_01_10_00_00").name);
+        backup.backup("2024_01_01_10_00_01");
+        assertEquals(List.of("backup_2024_01_01_10_00_00", "backup_2024_01_01_10_00_00_001",
+                "backup_2024_01_01_10_00_00_002", "backup_2024_01_01_10_00_01"), backup.listBackups());
+
+        Path restored = temp.resolve("restored");
+        backup.restore("backup_2024_01_01_10_00_00_001", restored);
+        assertEquals("First entry, edited", Files.readString(restored.resolve("a.txt")));
+    }
+
+    @Test
+    void restoresEachBackupAsItWas() throws Exception {
+        backup.backup("2024_01_01_10_00_00");
+        touch(write("a.txt", "First entry, edited"));
+        Files.delete(entries.resolve("b.txt"));
+        backup.backup("2024_01_01_11_00_00");
+
+        Path old = temp.resolve("old");
+        assertEquals(2, backup.restore("backup_2024_01_01_10_00_00", old));
+        assertEquals("First entry", Files.readString(old.resolve("a.txt")));
+        assertEquals("Second entry", Files.readString(old.resolve("b.txt")));
+
+        Path latest = temp.resolve("latest");
+        assertEquals(1, backup.restore("backup_2024_01_01_11_00_00", latest));
+        assertEquals("First entry, edited", Files.readString(latest.resolve("a.txt")));
+        assertEquals(Files.getLastModifiedTime(entries.resolve("a.txt")), Files.getLastModifiedTime(latest.resolve("a.txt")));
+    }
+
+    @Test
+    void refusesToRestoreContentThatDoesNotMatchItsHash() throws Exception {
+        backup.backup("2024_01_01_10_00_00");
+        Path pack = backups.resolve("backup_2024_01_01_10_00_00.pack");
+        byte[] bytes = Files.readAllBytes(pack);
+        // Breaks either the deflate stream or the hash check
+        bytes[bytes.length / 2] ^= 0x20;
+        Files.write(pack, bytes);
+
+        assertThrows(IOException.class, () -> backup.restore("backup_2024_01_01_10_00_00", temp.resolve("out")));
+    }
+}
@@ -0,0 +1,35 @@
+package com.diary.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Seeded synthetic entry text, so every run benchmarks the same data.
+ */
+final class Corpus {
+    private static final String[] WORDS = {
+        "morning", "coffee", "walked", "park", "meeting", "project", "deadline", "friend", "dinner", "rain",
+        "sunny", "tired", "happy", "learned", "java", "diary", "weekend", "movie", "book", "music",
+        "garden", "train", "city", "family", "exam", "lecture", "idea", "plan", "café", "naïve"
+    };
+
+    private Corpus() {
+    }
+
+    /**
+     * HTML body of roughly {@code chars} characters, in the shape the editor produces.
+     */
+    static String html(Random random, int chars) {
+        StringBuilder sb = new StringBuilder(chars + 64);
+        sb.append("<html dir=\"ltr\"><head></head><body contenteditable=\"true\"><p>");
+        while (sb.length() < chars) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            if (random.nextInt(40) == 0) {
+                sb.append("<b>").append(word).append("</b>");
+            } else {
+                sb.append(word);
+            }
+            sb.append(random.nextInt(12) == 0 ? ".</p><p>" : " ");
+        }
+        return sb.append("</p></body></html>").toString();
+    }
+}
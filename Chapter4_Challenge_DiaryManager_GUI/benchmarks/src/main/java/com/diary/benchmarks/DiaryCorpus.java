@@ -0,0 +1,55 @@
+package com.diary.benchmarks;
+
+import com.diary.util.FileManager;
+import com.diary.util.SampleDataGenerator;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * A corpus from {@link SampleDataGenerator}, written into a fresh store in a temporary directory and shared by
+ * every benchmark thread.
+ */
+@State(Scope.Benchmark)
+public class DiaryCorpus {
+    static final long SEED = 20240101L;
+    static final LocalDate START = LocalDate.of(2023, 1, 1);
+    static final int DAYS = 3 * 365;
+
+    @Param({"1000", "10000", "100000"})
+    public int entries;
+
+    Path directory;
+    FileManager fileManager;
+    String[] ids;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        directory = Files.createTempDirectory("diary-bench");
+        fileManager = new FileManager(directory);
+        SampleDataGenerator.generateCorpus(fileManager, new SampleDataGenerator.CorpusOptions()
+                .seed(SEED)
+                .entries(entries)
+                .dates(START, DAYS));
+        List<String> stored = new ArrayList<>(entries);
+        fileManager.forEachEntry(e -> stored.add(e.getId()));
+        stored.sort(null);
+        ids = stored.toArray(new String[0]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fileManager.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(p);
+            }
+        }
+    }
+}
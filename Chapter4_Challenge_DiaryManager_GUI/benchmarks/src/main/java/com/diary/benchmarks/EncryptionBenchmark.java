@@ -0,0 +1,101 @@
+package com.diary.benchmarks;
+
+import com.diary.model.DiaryEntry;
+import com.diary.storage.EntryCipher;
+import com.diary.util.FileManager;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Saving and loading with an encrypted data directory against a plain one, for small entries and for large ones
+ * that span many cipher chunks. The key is derived once per trial, as the app does once per session; setup prints
+ * how long that took and the size of the log.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class EncryptionBenchmark {
+
+    @Param({"plain", "encrypted"})
+    public String storage;
+
+    @Param({"2", "512"})
+    public int entryKb;
+
+    private Path directory;
+    private FileManager fileManager;
+    private String[] ids;
+    private String[] bodies;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("diary-encryption");
+        EntryCipher cipher = null;
+        if ("encrypted".equals(storage)) {
+            long start = System.nanoTime();
+            cipher = FileManager.unlock(directory, "benchmark passphrase".toCharArray());
+            System.out.printf("%nKey derived in %.0f ms%n", (System.nanoTime() - start) / 1e6);
+        }
+        fileManager = new FileManager(directory, cipher);
+
+        Random random = new Random(DiaryCorpus.SEED);
+        // About 2 MB of small entries, or 32 MB of large ones
+        int count = entryKb >= 64 ? 64 : 1000;
+        ids = new String[count];
+        bodies = new String[16];
+        for (int i = 0; i < bodies.length; i++) {
+            bodies[i] = Corpus.html(random, entryKb * 1024);
+        }
+        for (int i = 0; i < count; i++) {
+            DiaryEntry entry = new DiaryEntry("Entry " + i, bodies[i % bodies.length]);
+            fileManager.saveEntry(entry);
+            ids[i] = entry.getId();
+        }
+        fileManager.sync();
+        try (Stream<Path> files = Files.walk(directory)) {
+            long bytes = files.filter(Files::isRegularFile).mapToLong(p -> p.toFile().length()).sum();
+            System.out.printf("%s, %d entries of about %d KB: %,d bytes on disk%n", storage, count, entryKb, bytes);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fileManager.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    @Benchmark
+    public DiaryEntry saveEntry() throws IOException {
+        int i = next++;
+        LocalDateTime now = LocalDateTime.now();
+        DiaryEntry entry = DiaryEntry.restore(ids[i % ids.length], "Edited " + i, bodies[i & 15], now, now);
+        fileManager.saveEntry(entry);
+        return entry;
+    }
+
+    @Benchmark
+    public DiaryEntry loadEntry() throws IOException {
+        return fileManager.loadEntry(ids[next++ % ids.length]);
+    }
+
+    @Benchmark
+    public List<DiaryEntry> loadAllEntries() {
+        return fileManager.loadAllEntries();
+    }
+}
@@ -0,0 +1,96 @@
+package com.diary.benchmarks;
+
+import com.diary.model.DiaryEntry;
+import com.diary.storage.EntryCodec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.LocalDateTime;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the {@link EntryCodec} record format with the Java serialization it replaced: time to encode and
+ * decode a batch of entries, and (printed once per trial) the encoded size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EntryCodecBenchmark {
+    private static final int ENTRIES = 1000;
+
+    @Param({"200", "2000", "20000"})
+    public int contentChars;
+
+    private DiaryEntry[] entries;
+    private byte[][] serialized;
+    private byte[][] binary;
+    private EntryCodec codec;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Random random = new Random(42);
+        entries = new DiaryEntry[ENTRIES];
+        serialized = new byte[ENTRIES][];
+        binary = new byte[ENTRIES][];
+        codec = new EntryCodec();
+        long serializedBytes = 0;
+        long binaryBytes = 0;
+        for (int i = 0; i < ENTRIES; i++) {
+            DiaryEntry entry = new DiaryEntry("Entry " + i, Corpus.html(random, contentChars));
+            entry.setCreatedDate(LocalDateTime.of(2024, 1, 1, 8, 0).plusMinutes(random.nextInt(500_000)));
+            entries[i] = entry;
+            serialized[i] = serialize(entry);
+            binary[i] = codec.encodeToArray(entry);
+            serializedBytes += serialized[i].length;
+            binaryBytes += binary[i].length;
+        }
+        System.out.printf("%n%d entries of ~%d chars: serialized %d bytes, binary %d bytes (%.1f%%)%n",
+                ENTRIES, contentChars, serializedBytes, binaryBytes, 100.0 * binaryBytes / serializedBytes);
+    }
+
+    @Benchmark
+    public void encodeSerialized(Blackhole bh) throws IOException {
+        for (DiaryEntry entry : entries) {
+            bh.consume(serialize(entry));
+        }
+    }
+
+    @Benchmark
+    public void encodeBinary(Blackhole bh) {
+        for (DiaryEntry entry : entries) {
+            bh.consume(codec.encode(entry));
+        }
+    }
+
+    @Benchmark
+    public void decodeSerialized(Blackhole bh) throws IOException, ClassNotFoundException {
+        for (byte[] bytes : serialized) {
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                bh.consume(in.readObject());
+            }
+        }
+    }
+
+    @Benchmark
+    public void decodeBinary(Blackhole bh) throws IOException {
+        for (byte[] bytes : binary) {
+            bh.consume(EntryCodec.decode(bytes));
+        }
+    }
+
+    private static byte[] serialize(DiaryEntry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(entry);
+        }
+        return bytes.toByteArray();
+    }
+}
@@ -0,0 +1,82 @@
+package com.diary.benchmarks;
+
+import com.diary.model.DiaryEntry;
+import com.diary.storage.EntryCodec;
+import com.diary.util.FileManager;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Saving an entry with a pasted image: with the image inlined as base64, as before, and with it moved to the
+ * blob store, where every save after the first only writes a reference. Setup prints the stored entry size of
+ * each.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+public class ImageBenchmark {
+
+    @Param({"0", "512", "4096"})
+    public int imageKb;
+
+    private Path directory;
+    private FileManager fileManager;
+    private String inline;
+    private String referenced;
+    private String id;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("diary-images");
+        fileManager = new FileManager(directory);
+        Random random = new Random(DiaryCorpus.SEED);
+        byte[] image = new byte[imageKb * 1024];
+        random.nextBytes(image);
+        String text = Corpus.html(random, 2000);
+        inline = text.replace("</body>", "<img src=\"data:image/png;base64,"
+                + Base64.getEncoder().encodeToString(image) + "\"></body>");
+        referenced = fileManager.storeImages(inline);
+        id = new DiaryEntry("Image", "").getId();
+
+        EntryCodec codec = new EntryCodec();
+        System.out.printf("%n%d KB image: entry with inline image %,d bytes, with reference %,d bytes%n", imageKb,
+                codec.encodeToArray(entry(inline)).length, codec.encodeToArray(entry(referenced)).length);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        fileManager.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(p);
+            }
+        }
+    }
+
+    @Benchmark
+    public void saveInline() throws IOException {
+        fileManager.saveEntry(entry(inline));
+    }
+
+    @Benchmark
+    public void saveReferenced() throws IOException {
+        // What the editor hands over on every save after the first: blob URLs, turned back into references
+        fileManager.saveEntry(entry(fileManager.storeImages(fileManager.resolveImages(referenced))));
+    }
+
+    private DiaryEntry entry(String content) {
+        LocalDateTime now = LocalDateTime.now();
+        return DiaryEntry.restore(id, "Image", content, now, now);
+    }
+}
@@ -0,0 +1,107 @@
+package com.diary.benchmarks;
+
+import com.diary.model.DiaryEntry;
+import com.diary.storage.RevisionStore;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Revision history of one entry edited {@code edits} times: rebuilding the newest, the oldest and a random
+ * revision, and appending another edit. Setup prints the history's size on disk against keeping a full copy of
+ * every version.
+ */
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class RevisionBenchmark {
+    private static final String ID = "revision-benchmark";
+
+    @Param({"100", "1000"})
+    public int edits;
+
+    private Path directory;
+    private RevisionStore store;
+    private Random random;
+    private String body;
+    private int appended;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("diary-revisions");
+        store = new RevisionStore(directory);
+        random = new Random(DiaryCorpus.SEED);
+        body = Corpus.html(random, 4000);
+
+        long fullCopies = 0;
+        for (int i = 0; i < edits; i++) {
+            body = edit(random, body);
+            fullCopies += body.getBytes(StandardCharsets.UTF_8).length;
+            store.append(entry(i));
+        }
+        store.sync();
+        System.out.printf("%n%d revisions: %,d bytes on disk, %,d bytes as full copies (%.1f%%)%n",
+                edits, store.sizeOnDisk(), fullCopies, 100.0 * store.sizeOnDisk() / fullCopies);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public String reconstructNewest() throws IOException {
+        return store.content(ID, edits);
+    }
+
+    @Benchmark
+    public String reconstructOldest() throws IOException {
+        return store.content(ID, 1);
+    }
+
+    @Benchmark
+    public String reconstructRandom() throws IOException {
+        return store.content(ID, 1 + random.nextInt(edits));
+    }
+
+    @Benchmark
+    public void appendEdit() throws IOException {
+        body = edit(random, body);
+        store.append(entry(edits + appended++));
+    }
+
+    private DiaryEntry entry(int version) {
+        LocalDateTime now = LocalDateTime.now();
+        return DiaryEntry.restore(ID, "Revision " + version, body, now, now);
+    }
+
+    /**
+     * A typical editing session: a sentence typed, changed or removed somewhere in the body.
+     */
+    private static String edit(Random random, String html) {
+        int start = html.indexOf("<p>") + 3;
+        int end = html.lastIndexOf("</p>");
+        int at = start + random.nextInt(Math.max(1, end - start));
+        switch (random.nextInt(3)) {
+            case 0:
+                return html.substring(0, at) + Corpus.html(random, 120).replaceAll("<[^>]*>", "") + html.substring(at);
+            case 1:
+                return html.substring(0, at) + "edited " + html.substring(Math.min(end, at + 12));
+            default:
+                return html.substring(0, at) + html.substring(Math.min(end, at + 30));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.diary.benchmarks;
+
+import com.diary.model.DiaryEntry;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * {@code FileManager} hot paths: saving an edited entry, loading everything (full entries and the header-only
+ * summaries the Timeline uses) and deleting.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class StorageBenchmark {
+
+    /**
+     * Pre-built edits, so the save benchmark measures the store and not text generation.
+     */
+    @State(Scope.Thread)
+    public static class Edits {
+        String[] bodies;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            Random random = new Random(DiaryCorpus.SEED + 1);
+            bodies = new String[256];
+            for (int i = 0; i < bodies.length; i++) {
+                bodies[i] = Corpus.html(random, 200 + random.nextInt(1600));
+            }
+        }
+    }
+
+    /**
+     * A throwaway entry saved before each delete invocation, so every delete removes a live entry.
+     */
+    @State(Scope.Thread)
+    public static class Doomed {
+        String id;
+        int counter;
+
+        @Setup(Level.Invocation)
+        public void setUp(DiaryCorpus corpus) throws IOException {
+            DiaryEntry entry = new DiaryEntry("Doomed " + counter++, "<p>to be deleted</p>");
+            corpus.fileManager.saveEntry(entry);
+            id = entry.getId();
+        }
+    }
+
+    @Benchmark
+    public DiaryEntry saveEntry(DiaryCorpus corpus, Edits edits) throws IOException {
+        int i = edits.next++;
+        String id = corpus.ids[i % corpus.ids.length];
+        LocalDateTime now = LocalDateTime.now();
+        DiaryEntry entry = DiaryEntry.restore(id, "Edited " + i, edits.bodies[i & 255], now, now);
+        corpus.fileManager.saveEntry(entry);
+        return entry;
+    }
+
+    @Benchmark
+    public List<DiaryEntry> loadAllEntries(DiaryCorpus corpus) {
+        return corpus.fileManager.loadAllEntries();
+    }
+
+    @Benchmark
+    public List<DiaryEntry> loadEntrySummaries(DiaryCorpus corpus) {
+        return corpus.fileManager.loadEntrySummaries();
+    }
+
+    @Benchmark
+    public void deleteEntry(DiaryCorpus corpus, Doomed doomed) throws IOException {
+        corpus.fileManager.deleteEntry(doomed.id);
+    }
+}
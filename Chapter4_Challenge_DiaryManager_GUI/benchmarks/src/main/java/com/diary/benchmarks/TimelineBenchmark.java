@@ -0,0 +1,80 @@
+package com.diary.benchmarks;
+
+import com.diary.DiaryApplication;
+import com.diary.model.DiaryEntry;
+import com.diary.search.SearchIndex;
+import com.diary.search.TimeIndex;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.collections.transformation.FilteredList;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Timeline filtering as the application does it: a search or a date-picker click is an index query followed by
+ * one predicate swap on the {@code FilteredList}. The calendar heatmap reads per-day counts for a month. The list holds the header-only
+ * entries the Timeline is filled with. JavaFX collections work without starting the toolkit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TimelineBenchmark {
+
+    @Param({"coffee", "par", "\"the day\"", "rain OR exam"})
+    public String query;
+
+    private SearchIndex index;
+    private TimeIndex timeIndex;
+    private FilteredList<DiaryEntry> filtered;
+    private LocalDate[] dates;
+    private int nextDate;
+
+    @Setup(Level.Trial)
+    public void setUp(DiaryCorpus corpus) {
+        index = new SearchIndex();
+        corpus.fileManager.forEachEntry(e -> index.put(e.getId(), e.getTitle(), e.getContent()));
+        List<DiaryEntry> summaries = corpus.fileManager.loadEntrySummaries();
+        timeIndex = new TimeIndex();
+        timeIndex.putAll(summaries);
+        ObservableList<DiaryEntry> entries = FXCollections.observableArrayList(summaries);
+        filtered = new FilteredList<>(entries, p -> true);
+
+        Random random = new Random(DiaryCorpus.SEED + 2);
+        dates = new LocalDate[1024];
+        for (int i = 0; i < dates.length; i++) {
+            dates[i] = DiaryCorpus.START.plusDays(random.nextInt(DiaryCorpus.DAYS));
+        }
+    }
+
+    @Benchmark
+    public Set<String> searchIndex() {
+        return index.search(query);
+    }
+
+    @Benchmark
+    public int searchPredicate() {
+        Set<String> matches = index.search(query);
+        filtered.setPredicate(DiaryApplication.matchingIds(matches));
+        return filtered.size();
+    }
+
+    @Benchmark
+    public int filterByDate() {
+        filtered.setPredicate(DiaryApplication.matchingIds(timeIndex.idsOn(dates[nextDate++ & (dates.length - 1)])));
+        return filtered.size();
+    }
+
+    @Benchmark
+    public Map<LocalDate, Integer> monthDensity() {
+        LocalDate day = dates[nextDate++ & (dates.length - 1)].withDayOfMonth(1);
+        return timeIndex.countsBetween(day, day.plusMonths(1).minusDays(1));
+    }
+}
@@ -1,8 +1,19 @@
 package com.diary;
 
 import com.diary.model.DiaryEntry;
+import com.diary.search.SearchService;
+import com.diary.search.TimeIndex;
+import com.diary.storage.EntryCipher;
+import com.diary.storage.RevisionStore;
+import com.diary.storage.StoreChanges;
+import com.diary.util.ContentCache;
+import com.diary.util.DataDirectoryWatcher;
 import com.diary.util.FileManager;
+import com.diary.util.PersistenceQueue;
 import com.diary.util.SampleDataGenerator;
+import com.diary.util.SelectionLoader;
+import com.diary.util.StartupTimer;
+import com.diary.util.ViewSnapshot;
 import javafx.application.Application;
 import javafx.application.Platform;
 import javafx.collections.FXCollections;
@@ -18,19 +29,61 @@ import javafx.scene.web.HTMLEditor;
 import javafx.stage.Stage;
 import javafx.util.Callback;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.LocalDate;
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 public class DiaryApplication extends Application {
-
+    // Entries on each side of the selection whose bodies are read ahead
+    private static final int PREFETCH_NEIGHBOURS = 2;
+    private static final String SNAPSHOT_FILE = "view.snapshot";
+    // Saves in quick succession share one snapshot write
+    private static final long SNAPSHOT_DELAY_SECONDS = 2;
+    // -Ddiary.stats=true prints the startup timings, and the counters of each component on exit
+    private static final boolean PRINT_STATS = Boolean.getBoolean("diary.stats");
+
+    private final StartupTimer startup = new StartupTimer();
+    private final ScheduledExecutorService snapshotWriter = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "diary-snapshot");
+        t.setDaemon(true);
+        return t;
+    });
+    private boolean snapshotScheduled;
+    private Path dataDirectory;
+    // Key of an encrypted diary, derived once per session
+    private EntryCipher cipher;
     private FileManager fileManager;
+    private SearchService searchService;
+    private final TimeIndex timeIndex = new TimeIndex();
+    private PersistenceQueue persistenceQueue;
+    private ContentCache contentCache;
+    private DataDirectoryWatcher dataWatcher;
+    private SelectionLoader selectionLoader;
+    private boolean applyingExternalChanges;
+    private boolean storageReady;
+    private BorderPane mainContent;
     private ObservableList<DiaryEntry> entries;
     private FilteredList<DiaryEntry> filteredEntries;
     private ListView<DiaryEntry> entryListView;
+    private TextField searchField;
+    private long searchSequence;
     private TextField titleField;
     private HTMLEditor contentEditor;
     private DiaryEntry currentEntry;
+    private boolean currentEntryPinned;
     private Label statusLabel;
     private BorderPane root;
     private boolean isDarkMode = false;
@@ -38,10 +91,15 @@ public class DiaryApplication extends Application {
 
     @Override
     public void start(Stage primaryStage) {
-        fileManager = new FileManager();
-        
-        // Generate sample data if empty
-        SampleDataGenerator.generateSampleData(fileManager);
+        // What the Timeline showed last time is painted at once; the store is opened behind it
+        dataDirectory = FileManager.defaultDataDirectory();
+        if (FileManager.needsPassphrase(dataDirectory) && !unlockStorage()) {
+            Platform.exit();
+            return;
+        }
+        ViewSnapshot snapshot = ViewSnapshot.read(dataDirectory.resolve(SNAPSHOT_FILE), cipher);
+        startup.mark("snapshot read");
+        searchService = new SearchService();
 
         entries = FXCollections.observableArrayList();
         filteredEntries = new FilteredList<>(entries, p -> true);
@@ -54,7 +112,7 @@ public class DiaryApplication extends Application {
         root.setLeft(sidebar);
 
         // Main Content
-        BorderPane mainContent = new BorderPane();
+        mainContent = new BorderPane();
         mainContent.setPadding(new Insets(20));
         
         // Top Bar (Search & New Entry)
@@ -66,9 +124,11 @@ public class DiaryApplication extends Application {
         mainContent.setCenter(editorArea);
 
         root.setCenter(mainContent);
+        // Nothing can be opened, saved or searched until the store is open
+        mainContent.setDisable(true);
 
         // Status Bar
-        statusLabel = new Label("Ready");
+        statusLabel = new Label("Loading entries...");
         statusLabel.getStyleClass().add("status-label");
         HBox statusBar = new HBox(statusLabel);
         statusBar.setPadding(new Insets(5));
@@ -76,15 +136,53 @@ public class DiaryApplication extends Application {
         statusBar.setStyle("-fx-background-color: #FAFAFA; -fx-border-color: #E0E0E0; -fx-border-width: 1 0 0 0;");
         root.setBottom(statusBar);
 
+        if (snapshot != null) {
+            List<DiaryEntry> warm = snapshot.toEntries(this::loadContent);
+            timeIndex.putAll(warm);
+            entries.setAll(warm);
+        }
+        startup.mark("ui built");
+
         Scene scene = new Scene(root, 1100, 750);
         scene.getStylesheets().add(getClass().getResource("/styles.css").toExternalForm());
+        scene.addPostLayoutPulseListener(new Runnable() {
+            @Override
+            public void run() {
+                startup.mark("first paint");
+                scene.removePostLayoutPulseListener(this);
+            }
+        });
         
         primaryStage.setTitle("My Diary");
         primaryStage.setScene(scene);
         primaryStage.show();
+        startup.mark("stage shown");
 
         // Load entries in background
-        loadEntriesInBackground();
+        loadEntriesInBackground(snapshot);
+    }
+
+    /**
+     * Asks for the passphrase until the key is derived. Returns {@code false} if the user gives up.
+     */
+    private boolean unlockStorage() {
+        boolean choosing = !FileManager.isEncrypted(dataDirectory);
+        String error = null;
+        while (true) {
+            Optional<char[]> passphrase = new PassphraseDialog(choosing, error).showAndWait();
+            if (passphrase.isEmpty()) {
+                return false;
+            }
+            try {
+                cipher = FileManager.unlock(dataDirectory, passphrase.get());
+                startup.mark("key derived");
+                return true;
+            } catch (IOException e) {
+                error = e.getMessage();
+            } finally {
+                Arrays.fill(passphrase.get(), '\0');
+            }
+        }
     }
 
     private VBox createSidebar() {
@@ -102,6 +200,7 @@ public class DiaryApplication extends Application {
         calendarPicker = new DatePicker(LocalDate.now());
         calendarPicker.setMaxWidth(Double.MAX_VALUE);
         calendarPicker.setOnAction(e -> filterByDate(calendarPicker.getValue()));
+        calendarPicker.setDayCellFactory(picker -> new DensityDateCell());
 
         // Navigation Buttons
         Button btnAllEntries = createNavButton("📚 All Entries");
@@ -137,10 +236,8 @@ public class DiaryApplication extends Application {
                             Label date = new Label(item.getFormattedDate());
                             date.setStyle("-fx-opacity: 0.7; -fx-font-size: 11px;");
                             
-                            // Preview content (stripped of HTML tags for list view)
-                            String previewText = item.getContent().replaceAll("<[^>]*>", "").trim();
-                            if (previewText.length() > 60) previewText = previewText.substring(0, 60) + "...";
-                            Label preview = new Label(previewText);
+                            // Preview comes from the header index, so the body is not loaded here
+                            Label preview = new Label(item.getPreview());
                             preview.setWrapText(true);
                             preview.setStyle("-fx-font-size: 12px; -fx-opacity: 0.9;");
 
@@ -152,8 +249,8 @@ public class DiaryApplication extends Application {
             }
         });
         entryListView.getSelectionModel().selectedItemProperty().addListener((obs, oldVal, newVal) -> {
-            if (newVal != null) {
-                loadEntry(newVal);
+            if (newVal != null && storageReady && !applyingExternalChanges) {
+                selectEntry(newVal);
             }
         });
         VBox.setVgrow(entryListView, Priority.ALWAYS);
@@ -174,23 +271,10 @@ public class DiaryApplication extends Application {
         topBar.setAlignment(Pos.CENTER_LEFT);
         topBar.setPadding(new Insets(0, 0, 20, 0));
 
-        TextField searchField = new TextField();
+        searchField = new TextField();
         searchField.setPromptText("🔍 Search entries...");
         searchField.setPrefWidth(300);
-        searchField.textProperty().addListener((observable, oldValue, newValue) -> {
-            filteredEntries.setPredicate(entry -> {
-                if (newValue == null || newValue.isEmpty()) {
-                    return true;
-                }
-                String lowerCaseFilter = newValue.toLowerCase();
-                if (entry.getTitle().toLowerCase().contains(lowerCaseFilter)) {
-                    return true;
-                } else if (entry.getContent().toLowerCase().contains(lowerCaseFilter)) {
-                    return true;
-                }
-                return false;
-            });
-        });
+        searchField.textProperty().addListener((observable, oldValue, newValue) -> runSearch(newValue));
 
         Region spacer = new Region();
         HBox.setHgrow(spacer, Priority.ALWAYS);
@@ -203,14 +287,39 @@ public class DiaryApplication extends Application {
         saveBtn.getStyleClass().add("action-button");
         saveBtn.setOnAction(e -> saveCurrentEntry());
 
+        Button historyBtn = new Button("📜 History");
+        historyBtn.getStyleClass().add("action-button");
+        historyBtn.setOnAction(e -> showHistory());
+
         Button deleteBtn = new Button("🗑️ Delete");
         deleteBtn.getStyleClass().add("delete-button");
         deleteBtn.setOnAction(e -> deleteCurrentEntry());
 
-        topBar.getChildren().addAll(searchField, spacer, newEntryBtn, saveBtn, deleteBtn);
+        topBar.getChildren().addAll(searchField, spacer, newEntryBtn, saveBtn, historyBtn, deleteBtn);
         return topBar;
     }
 
+    private void runSearch(String query) {
+        long sequence = ++searchSequence;
+        if (query == null || query.isBlank()) {
+            filteredEntries.setPredicate(p -> true);
+            return;
+        }
+        // The index is queried on the search thread; only the newest result is applied, in one predicate swap
+        searchService.search(query).thenAccept(matches -> Platform.runLater(() -> {
+            if (matches != null && sequence == searchSequence) {
+                filteredEntries.setPredicate(matchingIds(matches));
+            }
+        }));
+    }
+
+    private void refreshSearch() {
+        String query = searchField.getText();
+        if (query != null && !query.isBlank()) {
+            runSearch(query);
+        }
+    }
+
     private VBox createEditorArea() {
         VBox editorArea = new VBox(15);
         
@@ -226,18 +335,70 @@ public class DiaryApplication extends Application {
         return editorArea;
     }
 
-    private void loadEntriesInBackground() {
+    /**
+     * Opens the store and loads the entry headers off the FX thread, then reconciles the Timeline with them:
+     * if the warm-start snapshot showed exactly what is stored, the list is left alone.
+     */
+    private void loadEntriesInBackground(ViewSnapshot snapshot) {
         Task<List<DiaryEntry>> loadTask = new Task<>() {
             @Override
             protected List<DiaryEntry> call() {
-                return fileManager.loadAllEntries();
+                fileManager = new FileManager(dataDirectory, cipher);
+                // Generate sample data if empty
+                SampleDataGenerator.generateSampleData(fileManager);
+                contentCache = new ContentCache(fileManager);
+                persistenceQueue = new PersistenceQueue(fileManager);
+                persistenceQueue.setDepthListener(DiaryApplication.this::showQueueDepth);
+                selectionLoader = new SelectionLoader(fileManager::resolveImages);
+                startup.mark("storage open");
+
+                List<DiaryEntry> loaded = fileManager.loadEntrySummaries();
+                // The Timeline keeps handles only; bodies come from the bounded cache
+                Map<String, DiaryEntry> byId = new HashMap<>(loaded.size() * 4 / 3 + 1);
+                for (DiaryEntry entry : loaded) {
+                    entry.releaseContent(contentCache);
+                    byId.put(entry.getId(), entry);
+                }
+                // The time index gives the Timeline order, so the list is never sorted on the FX thread
+                for (String id : timeIndex.newestFirst()) {
+                    if (!byId.containsKey(id)) {
+                        // Only the snapshot knew it
+                        timeIndex.remove(id);
+                    }
+                }
+                timeIndex.putAll(loaded);
+                List<DiaryEntry> ordered = new ArrayList<>(loaded.size());
+                for (String id : timeIndex.newestFirst()) {
+                    DiaryEntry entry = byId.get(id);
+                    if (entry != null) {
+                        ordered.add(entry);
+                    }
+                }
+                startup.mark("entries loaded");
+                return ordered;
             }
         };
 
         loadTask.setOnSucceeded(e -> {
-            entries.setAll(loadTask.getValue());
-            entries.sort(Comparator.comparing(DiaryEntry::getCreatedDate).reversed());
+            List<DiaryEntry> loaded = loadTask.getValue();
+            if (snapshot == null || !snapshot.matches(loaded)) {
+                showLoadedEntries(loaded);
+            }
+            storageReady = true;
+            mainContent.setDisable(false);
             statusLabel.setText("Entries loaded.");
+            startup.mark("reconciled");
+            if (PRINT_STATS) {
+                System.out.println("Startup: " + startup);
+            }
+
+            searchService.indexAll(fileManager);
+            watchDataDirectory();
+            DiaryEntry selected = entryListView.getSelectionModel().getSelectedItem();
+            if (selected != null) {
+                // Picked from the snapshot while the store was still opening
+                selectEntry(selected);
+            }
         });
 
         loadTask.setOnFailed(e -> {
@@ -248,15 +409,119 @@ public class DiaryApplication extends Application {
         new Thread(loadTask).start();
     }
 
-    private void loadEntry(DiaryEntry entry) {
-        currentEntry = entry;
+    /**
+     * Replaces what the snapshot painted with the stored entries, keeping the selection where it still exists.
+     */
+    private void showLoadedEntries(List<DiaryEntry> loaded) {
+        DiaryEntry selected = entryListView.getSelectionModel().getSelectedItem();
+        entries.setAll(loaded);
+        entryListView.getSelectionModel().clearSelection();
+        if (selected != null) {
+            for (DiaryEntry entry : loaded) {
+                if (entry.getId().equals(selected.getId())) {
+                    entryListView.getSelectionModel().select(entry);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Body loader of the entries painted from the snapshot; they are only opened once the store is ready.
+     */
+    private String loadContent(String id) throws IOException {
+        return contentCache.load(id);
+    }
+
+    /**
+     * Writes a new snapshot of the Timeline shortly, so the next launch paints what is shown now.
+     */
+    private void scheduleSnapshot() {
+        if (snapshotScheduled) {
+            return;
+        }
+        snapshotScheduled = true;
+        snapshotWriter.schedule(() -> Platform.runLater(() -> {
+            snapshotScheduled = false;
+            ViewSnapshot snapshot = ViewSnapshot.capture(entries);
+            snapshotWriter.execute(() -> writeSnapshot(snapshot));
+        }), SNAPSHOT_DELAY_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private void writeSnapshot(ViewSnapshot snapshot) {
+        try {
+            snapshot.write(dataDirectory.resolve(SNAPSHOT_FILE), cipher);
+        } catch (IOException e) {
+            // Not fatal: the next launch just paints an older Timeline, or none
+            System.err.println("Could not write the view snapshot: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Loads the selected entry in the background and shows it once it is ready, unless the selection has
+     * moved on by then. The entries next to it are prefetched meanwhile.
+     */
+    private void selectEntry(DiaryEntry entry) {
+        long selectedAt = System.nanoTime();
+        selectionLoader.load(entry).whenComplete((html, ex) -> Platform.runLater(() -> {
+            if (ex != null) {
+                statusLabel.setText("Could not load: " + entry.getTitle());
+                ex.printStackTrace();
+            } else if (html != null && entryListView.getSelectionModel().getSelectedItem() == entry) {
+                loadEntry(entry, html);
+                selectionLoader.recordLatency(System.nanoTime() - selectedAt);
+            }
+        }));
+        selectionLoader.prefetch(neighboursOf(entryListView.getSelectionModel().getSelectedIndex()));
+    }
+
+    private List<DiaryEntry> neighboursOf(int index) {
+        List<DiaryEntry> items = entryListView.getItems();
+        List<DiaryEntry> neighbours = new ArrayList<>(2 * PREFETCH_NEIGHBOURS);
+        for (int distance = 1; distance <= PREFETCH_NEIGHBOURS; distance++) {
+            if (index + distance < items.size()) {
+                neighbours.add(items.get(index + distance));
+            }
+            if (index - distance >= 0) {
+                neighbours.add(items.get(index - distance));
+            }
+        }
+        return neighbours;
+    }
+
+    private void loadEntry(DiaryEntry entry, String html) {
+        setCurrentEntry(entry);
         titleField.setText(entry.getTitle());
-        contentEditor.setHtmlText(entry.getContent());
+        contentEditor.setHtmlText(html);
         statusLabel.setText("Loaded: " + entry.getTitle());
     }
 
+    /**
+     * Switches the entry open in the editor. Its body stays pinned in the cache while it is open; the previous
+     * entry drops back to a handle.
+     */
+    private void setCurrentEntry(DiaryEntry entry) {
+        if (currentEntry != null) {
+            if (currentEntryPinned) {
+                contentCache.unpin(currentEntry.getId());
+            }
+            // Anything saved is in the cache, pinned until its write commits, so the body can go
+            currentEntry.releaseContent(contentCache);
+        }
+        currentEntry = entry;
+        currentEntryPinned = false;
+        if (entry != null) {
+            try {
+                contentCache.pin(entry.getId());
+                currentEntryPinned = true;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
     private void clearEditor() {
-        currentEntry = null;
+        setCurrentEntry(null);
         titleField.clear();
         contentEditor.setHtmlText("");
         entryListView.getSelectionModel().clearSelection();
@@ -272,62 +537,204 @@ public class DiaryApplication extends Application {
             return;
         }
 
-        statusLabel.setText("Saving...");
+        boolean isNew = currentEntry == null;
+        DiaryEntry entry = isNew ? new DiaryEntry(title, content) : currentEntry;
+        if (!isNew) {
+            entry.setTitle(title);
+            entry.setContent(content);
+        }
 
-        Task<Void> saveTask = new Task<>() {
-            @Override
-            protected Void call() throws Exception {
-                if (currentEntry == null) {
-                    DiaryEntry newEntry = new DiaryEntry(title, content);
-                    fileManager.saveEntry(newEntry);
-                    Platform.runLater(() -> {
-                        entries.add(0, newEntry);
-                        currentEntry = newEntry;
-                    });
-                } else {
-                    currentEntry.setTitle(title);
-                    currentEntry.setContent(content);
-                    fileManager.saveEntry(currentEntry);
-                    Platform.runLater(() -> entryListView.refresh());
-                }
-                return null;
+        CompletableFuture<Void> saved;
+        // The writer gets its own copy, so further edits can't change what is being written. It also moves
+        // pasted images to the blob store, leaving references in the copy.
+        DiaryEntry written = entry.copy();
+        try {
+            saved = persistenceQueue.save(written);
+        } catch (RejectedExecutionException e) {
+            statusLabel.setText("Storage is busy, please save again in a moment.");
+            return;
+        }
+        // Until the write commits the store still has the old body, so the new one must not be evicted
+        String id = entry.getId();
+        String inline = content;
+        contentCache.putPinned(id, inline);
+        saved.whenComplete((v, ex) -> {
+            if (ex != null) {
+                contentCache.invalidate(id);
+            } else {
+                // The stored form carries image references instead of the inline data
+                contentCache.replace(id, inline, written.getContent());
             }
-        };
-
-        saveTask.setOnSucceeded(e -> statusLabel.setText("Saved: " + title));
-        saveTask.setOnFailed(e -> {
-            statusLabel.setText("Error saving entry.");
-            showAlert("Error", "Could not save entry: " + saveTask.getException().getMessage());
+            contentCache.unpin(id);
         });
 
-        new Thread(saveTask).start();
+        if (isNew) {
+            entries.add(0, entry);
+            setCurrentEntry(entry);
+        } else {
+            entryListView.refresh();
+        }
+        searchService.update(entry);
+        timeIndex.put(entry);
+        refreshSearch();
+
+        saved.whenComplete((v, ex) -> Platform.runLater(() -> {
+            if (ex == null) {
+                statusLabel.setText("Saved: " + title);
+                scheduleSnapshot();
+            } else {
+                statusLabel.setText("Error saving entry.");
+                showAlert("Error", "Could not save entry: " + ex.getMessage());
+            }
+        }));
+    }
+
+    private void showHistory() {
+        if (currentEntry == null) {
+            statusLabel.setText("Select an entry to see its history.");
+            return;
+        }
+        String id = currentEntry.getId();
+        List<RevisionStore.Revision> history;
+        RevisionStore revisions;
+        try {
+            revisions = fileManager.revisions();
+            history = revisions == null ? List.of() : revisions.list(id);
+        } catch (IOException e) {
+            showAlert("Error", "Could not read the history: " + e.getMessage());
+            return;
+        }
+        if (history.isEmpty()) {
+            statusLabel.setText("No earlier versions saved yet.");
+            return;
+        }
+
+        RevisionHistoryDialog dialog = new RevisionHistoryDialog(revisions, id, history, fileManager::resolveImages);
+        dialog.showAndWait().ifPresent(revision -> {
+            try {
+                // Restoring only fills the editor; saving it then records a new revision
+                contentEditor.setHtmlText(fileManager.resolveImages(revisions.content(id, revision.getNumber())));
+                titleField.setText(revision.getTitle());
+                statusLabel.setText("Restored version #" + revision.getNumber() + ". Save to keep it.");
+            } catch (IOException e) {
+                showAlert("Error", "Could not restore that version: " + e.getMessage());
+            }
+        });
     }
 
     private void deleteCurrentEntry() {
         if (currentEntry != null) {
             DiaryEntry entryToDelete = currentEntry;
+
+            CompletableFuture<Void> deleted;
+            try {
+                deleted = persistenceQueue.delete(entryToDelete.getId());
+            } catch (RejectedExecutionException e) {
+                statusLabel.setText("Storage is busy, please delete again in a moment.");
+                return;
+            }
             statusLabel.setText("Deleting...");
-            
-            Task<Void> deleteTask = new Task<>() {
-                @Override
-                protected Void call() throws Exception {
-                    fileManager.deleteEntry(entryToDelete);
-                    return null;
+
+            deleted.whenComplete((v, ex) -> Platform.runLater(() -> {
+                if (ex == null) {
+                    entries.remove(entryToDelete);
+                    searchService.remove(entryToDelete.getId());
+                    timeIndex.remove(entryToDelete.getId());
+                    if (currentEntry == entryToDelete) {
+                        clearEditor();
+                    }
+                    contentCache.invalidate(entryToDelete.getId());
+                    statusLabel.setText("Entry deleted.");
+                    scheduleSnapshot();
+                } else {
+                    statusLabel.setText("Error deleting entry.");
+                    showAlert("Error", "Could not delete entry: " + ex.getMessage());
                 }
-            };
+            }));
+        }
+    }
 
-            deleteTask.setOnSucceeded(e -> {
-                entries.remove(entryToDelete);
-                clearEditor();
-                statusLabel.setText("Entry deleted.");
-            });
+    /**
+     * Follows changes other processes make to the data directory from now on.
+     */
+    private void watchDataDirectory() {
+        try {
+            dataWatcher = new DataDirectoryWatcher(fileManager, this::prepareExternalChanges);
+            dataWatcher.start();
+        } catch (IOException e) {
+            // Not fatal: the app just won't notice outside changes until it is restarted
+            System.err.println("Could not watch the data directory: " + e.getMessage());
+        }
+    }
 
-            deleteTask.setOnFailed(e -> {
-                statusLabel.setText("Error deleting entry.");
-                showAlert("Error", "Could not delete entry: " + deleteTask.getException().getMessage());
-            });
+    /**
+     * Runs on the watcher thread: brings the cache and both indexes up to date, so the FX thread only has to
+     * swap the list once.
+     */
+    private void prepareExternalChanges(StoreChanges changes) {
+        for (String id : changes.getRemoved()) {
+            contentCache.invalidate(id);
+            searchService.remove(id);
+            timeIndex.remove(id);
+        }
+        for (DiaryEntry entry : changes.getUpdated()) {
+            contentCache.replace(entry.getId(), entry.getContent());
+            entry.releaseContent(contentCache);
+            searchService.update(entry);
+            timeIndex.put(entry);
+        }
+        Platform.runLater(() -> applyExternalChanges(changes));
+    }
 
-            new Thread(deleteTask).start();
+    private void applyExternalChanges(StoreChanges changes) {
+        Map<String, DiaryEntry> byId = new HashMap<>(entries.size() * 4 / 3 + 1);
+        for (DiaryEntry entry : entries) {
+            byId.put(entry.getId(), entry);
+        }
+        for (String id : changes.getRemoved()) {
+            byId.remove(id);
+        }
+        for (DiaryEntry entry : changes.getUpdated()) {
+            byId.put(entry.getId(), entry);
+        }
+        List<DiaryEntry> ordered = new ArrayList<>(byId.size());
+        for (String id : timeIndex.newestFirst()) {
+            DiaryEntry entry = byId.get(id);
+            if (entry != null) {
+                ordered.add(entry);
+            }
+        }
+
+        // The editor keeps what the user typed; only the entry behind it is swapped
+        String currentId = currentEntry == null ? null : currentEntry.getId();
+        DiaryEntry replacement = currentId == null ? null : byId.get(currentId);
+        applyingExternalChanges = true;
+        try {
+            entries.setAll(ordered);
+            entryListView.getSelectionModel().clearSelection();
+            if (currentId != null && replacement == null) {
+                setCurrentEntry(null);
+                statusLabel.setText("This entry was deleted outside the app. Save to keep it as a new entry.");
+            } else if (replacement != null && replacement != currentEntry) {
+                setCurrentEntry(replacement);
+                statusLabel.setText("This entry was changed outside the app. Open it from the Timeline to see the changes, or Save to keep yours.");
+            } else {
+                if (currentEntry != null) {
+                    entryListView.getSelectionModel().select(currentEntry);
+                }
+                statusLabel.setText("Changes from outside the app: " + changes);
+            }
+        } finally {
+            applyingExternalChanges = false;
+        }
+        refreshSearch();
+        scheduleSnapshot();
+    }
+
+    private void showQueueDepth(int depth) {
+        // Called from the writer thread; only worth showing when writes are actually piling up
+        if (depth > 1) {
+            Platform.runLater(() -> statusLabel.setText("Saving... (" + depth + " changes waiting)"));
         }
     }
 
@@ -335,11 +742,40 @@ public class DiaryApplication extends Application {
         if (date == null) {
             filteredEntries.setPredicate(p -> true);
         } else {
-            filteredEntries.setPredicate(entry -> 
-                entry.getCreatedDate().toLocalDate().equals(date));
+            filteredEntries.setPredicate(matchingIds(timeIndex.idsOn(date)));
         }
     }
 
+    /**
+     * Calendar day shaded by how many entries were written that day.
+     */
+    private class DensityDateCell extends DateCell {
+        private static final String HEAT_PREFIX = "heat-";
+
+        @Override
+        public void updateItem(LocalDate date, boolean empty) {
+            super.updateItem(date, empty);
+            getStyleClass().removeIf(c -> c.startsWith(HEAT_PREFIX));
+            setTooltip(null);
+            if (empty || date == null) {
+                return;
+            }
+            int count = timeIndex.countOn(date);
+            if (count > 0) {
+                int level = count == 1 ? 1 : count == 2 ? 2 : count <= 4 ? 3 : 4;
+                getStyleClass().add(HEAT_PREFIX + level);
+                setTooltip(new Tooltip(count == 1 ? "1 entry" : count + " entries"));
+            }
+        }
+    }
+
+    /**
+     * Timeline filter for a search result. Public so the benchmarks can measure exactly what the view applies.
+     */
+    public static Predicate<DiaryEntry> matchingIds(Set<String> ids) {
+        return entry -> ids.contains(entry.getId());
+    }
+
     private void toggleTheme() {
         isDarkMode = !isDarkMode;
         if (isDarkMode) {
@@ -349,6 +785,42 @@ public class DiaryApplication extends Application {
         }
     }
 
+    @Override
+    public void stop() {
+        snapshotWriter.shutdownNow();
+        if (storageReady) {
+            writeSnapshot(ViewSnapshot.capture(entries));
+        }
+        if (dataWatcher != null) {
+            dataWatcher.close();
+            if (PRINT_STATS) {
+                System.out.println("Data watcher: " + dataWatcher.getStats());
+            }
+        }
+        if (persistenceQueue != null) {
+            // Flushes everything still waiting before the store is closed
+            persistenceQueue.close();
+            if (PRINT_STATS) {
+                System.out.println("Persistence: " + persistenceQueue.getStats());
+            }
+        }
+        if (selectionLoader != null) {
+            selectionLoader.close();
+            if (PRINT_STATS) {
+                System.out.println("Selection: " + selectionLoader.getStats());
+            }
+        }
+        if (PRINT_STATS && contentCache != null) {
+            System.out.println("Content cache: " + contentCache.getStats());
+        }
+        if (searchService != null) {
+            searchService.close();
+        }
+        if (fileManager != null) {
+            fileManager.close();
+        }
+    }
+
     private void showAlert(String title, String content) {
         Alert alert = new Alert(Alert.AlertType.INFORMATION);
         alert.setTitle(title);
@@ -0,0 +1,53 @@
+package com.diary;
+
+import javafx.geometry.Insets;
+import javafx.scene.Node;
+import javafx.scene.control.*;
+import javafx.scene.layout.VBox;
+
+/**
+ * Asks for the passphrase of an encrypted diary, or for a new one (typed twice) when the diary is about to be
+ * encrypted for the first time. The result is the passphrase, or {@code null} if the dialog was cancelled.
+ */
+public class PassphraseDialog extends Dialog<char[]> {
+
+    /**
+     * @param choosing whether a new passphrase is being chosen
+     * @param error    shown above the field, e.g. after a wrong passphrase; may be {@code null}
+     */
+    public PassphraseDialog(boolean choosing, String error) {
+        setTitle("My Diary");
+        setHeaderText(choosing ? "Choose a passphrase to encrypt your diary." : "This diary is encrypted.");
+
+        PasswordField passphrase = new PasswordField();
+        passphrase.setPromptText("Passphrase");
+        PasswordField repeat = new PasswordField();
+        repeat.setPromptText("Repeat passphrase");
+        repeat.setVisible(choosing);
+        repeat.setManaged(choosing);
+
+        VBox content = new VBox(10);
+        content.setPadding(new Insets(10));
+        if (error != null) {
+            Label message = new Label(error);
+            message.setStyle("-fx-text-fill: #D32F2F;");
+            content.getChildren().add(message);
+        }
+        content.getChildren().addAll(passphrase, repeat);
+        getDialogPane().setContent(content);
+        getDialogPane().getButtonTypes().addAll(ButtonType.OK, ButtonType.CANCEL);
+
+        Node ok = getDialogPane().lookupButton(ButtonType.OK);
+        ok.setDisable(true);
+        passphrase.textProperty().addListener((obs, oldVal, newVal) -> ok.setDisable(!acceptable(choosing, passphrase, repeat)));
+        repeat.textProperty().addListener((obs, oldVal, newVal) -> ok.setDisable(!acceptable(choosing, passphrase, repeat)));
+
+        setResultConverter(button -> button == ButtonType.OK ? passphrase.getText().toCharArray() : null);
+        passphrase.requestFocus();
+    }
+
+    private static boolean acceptable(boolean choosing, PasswordField passphrase, PasswordField repeat) {
+        String text = passphrase.getText();
+        return !text.isEmpty() && (!choosing || text.equals(repeat.getText()));
+    }
+}
@@ -0,0 +1,80 @@
+package com.diary;
+
+import com.diary.storage.RevisionStore;
+import javafx.collections.FXCollections;
+import javafx.geometry.Insets;
+import javafx.scene.control.*;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+import javafx.scene.web.WebView;
+
+import java.io.IOException;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+/**
+ * Lists the saved revisions of one entry, newest first, with a preview of the selected one. The result is the
+ * revision to restore, or {@code null}.
+ */
+public class RevisionHistoryDialog extends Dialog<RevisionStore.Revision> {
+    private static final DateTimeFormatter SAVED_AT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    /**
+     * @param resolver turns the stored HTML into HTML the preview can show, e.g. resolving image references
+     */
+    public RevisionHistoryDialog(RevisionStore revisions, String entryId, List<RevisionStore.Revision> history,
+                                 UnaryOperator<String> resolver) {
+        setTitle("Revision History");
+        setHeaderText(history.size() + (history.size() == 1 ? " saved version" : " saved versions"));
+
+        List<RevisionStore.Revision> newestFirst = new ArrayList<>(history);
+        Collections.reverse(newestFirst);
+        ListView<RevisionStore.Revision> list = new ListView<>(FXCollections.observableArrayList(newestFirst));
+        list.setPrefWidth(320);
+        list.setCellFactory(param -> new ListCell<>() {
+            @Override
+            protected void updateItem(RevisionStore.Revision item, boolean empty) {
+                super.updateItem(item, empty);
+                if (empty || item == null) {
+                    setText(null);
+                } else {
+                    setText(String.format("#%d  %s%n%s  (%s, %d bytes)", item.getNumber(),
+                            item.getSavedAt().format(SAVED_AT), item.getTitle(),
+                            item.isSnapshot() ? "full copy" : "changes", item.getStoredBytes()));
+                }
+            }
+        });
+
+        WebView preview = new WebView();
+        preview.setPrefSize(520, 420);
+        list.getSelectionModel().selectedItemProperty().addListener((obs, oldVal, newVal) -> {
+            if (newVal == null) {
+                preview.getEngine().loadContent("");
+                return;
+            }
+            try {
+                preview.getEngine().loadContent(resolver.apply(revisions.content(entryId, newVal.getNumber())));
+            } catch (IOException e) {
+                preview.getEngine().loadContent("<p>Could not read this revision: " + e.getMessage() + "</p>");
+            }
+        });
+
+        VBox listBox = new VBox(list);
+        VBox.setVgrow(list, Priority.ALWAYS);
+        SplitPane content = new SplitPane(listBox, preview);
+        content.setDividerPositions(0.38);
+        content.setPadding(new Insets(10));
+
+        ButtonType restore = new ButtonType("Restore", ButtonBar.ButtonData.OK_DONE);
+        getDialogPane().getButtonTypes().addAll(restore, ButtonType.CANCEL);
+        getDialogPane().setContent(content);
+        setResultConverter(button -> button == restore ? list.getSelectionModel().getSelectedItem() : null);
+
+        if (!newestFirst.isEmpty()) {
+            list.getSelectionModel().select(0);
+        }
+    }
+}
@@ -1,17 +1,30 @@
 package com.diary.model;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 
 public class DiaryEntry implements Serializable {
     private static final long serialVersionUID = 1L;
-    
+    private static final int PREVIEW_LENGTH = 60;
+
+    /**
+     * Fetches the body of an entry that was created from its header only.
+     */
+    public interface ContentLoader {
+        String load(String id) throws IOException;
+    }
+
     private String id;
     private String title;
     private String content;
     private LocalDateTime createdDate;
     private LocalDateTime lastModifiedDate;
+    private transient String preview;
+    private transient ContentLoader contentLoader;
 
     public DiaryEntry(String title, String content) {
         this.id = java.util.UUID.randomUUID().toString();
@@ -21,6 +34,52 @@ public class DiaryEntry implements Serializable {
         this.lastModifiedDate = LocalDateTime.now();
     }
 
+    private DiaryEntry() {
+    }
+
+    /**
+     * Creates an entry from index data only; the content is read through {@code loader} whenever it is needed.
+     */
+    public static DiaryEntry fromHeader(String id, String title, String preview, LocalDateTime createdDate,
+                                        LocalDateTime lastModifiedDate, ContentLoader loader) {
+        DiaryEntry entry = new DiaryEntry();
+        entry.id = id;
+        entry.title = title;
+        entry.preview = preview;
+        entry.createdDate = createdDate;
+        entry.lastModifiedDate = lastModifiedDate;
+        entry.contentLoader = loader;
+        return entry;
+    }
+
+    /**
+     * Recreates a stored entry exactly as it was saved, without touching its dates.
+     */
+    public static DiaryEntry restore(String id, String title, String content, LocalDateTime createdDate,
+                                     LocalDateTime lastModifiedDate) {
+        DiaryEntry entry = new DiaryEntry();
+        entry.id = id;
+        entry.title = title;
+        entry.content = content;
+        entry.createdDate = createdDate;
+        entry.lastModifiedDate = lastModifiedDate;
+        return entry;
+    }
+
+    /**
+     * Independent snapshot of this entry (same id), e.g. to hand to a background writer while editing goes on.
+     */
+    public DiaryEntry copy() {
+        DiaryEntry copy = new DiaryEntry();
+        copy.id = id;
+        copy.title = title;
+        copy.content = getContent();
+        copy.createdDate = createdDate;
+        copy.lastModifiedDate = lastModifiedDate;
+        copy.preview = preview;
+        return copy;
+    }
+
     public String getId() {
         return id;
     }
@@ -34,15 +93,70 @@ public class DiaryEntry implements Serializable {
         this.lastModifiedDate = LocalDateTime.now();
     }
 
+    /**
+     * The HTML body. For an entry backed by a {@link ContentLoader} the body is fetched on every call and not
+     * kept, unless it was changed with {@link #setContent}.
+     */
     public String getContent() {
+        if (content == null && contentLoader != null) {
+            try {
+                return contentLoader.load(id);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not load content of entry " + id, e);
+            }
+        }
         return content;
     }
 
     public void setContent(String content) {
         this.content = content;
+        this.preview = null;
         this.lastModifiedDate = LocalDateTime.now();
     }
 
+    /**
+     * Swaps the body for another form of the same content, e.g. with its images moved to the blob store. Unlike
+     * {@link #setContent} this keeps the modification date and the preview.
+     */
+    public void replaceContent(String content) {
+        this.content = content;
+    }
+
+    public boolean isContentLoaded() {
+        return content != null || contentLoader == null;
+    }
+
+    /**
+     * Turns this entry into a lightweight handle that reads its body through {@code loader}. Only call this
+     * once {@code loader} can return the current content, i.e. after it has been saved.
+     */
+    public void releaseContent(ContentLoader loader) {
+        if (content != null && preview == null) {
+            preview = createPreview(content);
+        }
+        content = null;
+        contentLoader = loader;
+    }
+
+    /**
+     * Plain-text start of the content, as shown in the Timeline.
+     */
+    public String getPreview() {
+        if (preview == null) {
+            preview = createPreview(getContent());
+        }
+        return preview;
+    }
+
+    public static String createPreview(String html) {
+        if (html == null) {
+            return "";
+        }
+        String text = html.replaceAll("<[^>]*>", "").trim();
+        if (text.length() > PREVIEW_LENGTH) text = text.substring(0, PREVIEW_LENGTH) + "...";
+        return text;
+    }
+
     public LocalDateTime getCreatedDate() {
         return createdDate;
     }
@@ -59,6 +173,17 @@ public class DiaryEntry implements Serializable {
         return createdDate.format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm"));
     }
 
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        // Make sure a header-only entry never gets written without its body, without keeping the body afterwards
+        String held = content;
+        content = getContent();
+        try {
+            out.defaultWriteObject();
+        } finally {
+            content = held;
+        }
+    }
+
     @Override
     public String toString() {
         return title + " (" + getFormattedDate() + ")";
@@ -0,0 +1,292 @@
+package com.diary.search;
+
+import java.util.*;
+
+/**
+ * In-memory inverted index over entry titles and contents.
+ *
+ * <p>Every indexed entry gets an int document number; each term maps to a posting list of document numbers
+ * with the word positions inside each document, all kept in primitive arrays. Re-indexing an entry gives it a
+ * new document number and marks the old one dead, so posting lists stay append-only and sorted; dead documents
+ * are purged once they outnumber the live ones.
+ *
+ * <p>Query syntax: words are ANDed and each matches as a prefix ({@code gra} finds "grateful"),
+ * {@code "quoted words"} must appear consecutively, and {@code OR} between groups unions them, e.g.
+ * {@code coffee morning OR "sunset walk"}.
+ *
+ * <p>Not thread-safe; {@link SearchService} confines it to one thread.
+ */
+public class SearchIndex {
+    // Keeps phrases from matching across the end of the title and the start of the content
+    private static final int TITLE_GAP = 1000;
+    private static final int MIN_PURGE_DOCS = 1024;
+
+    private final TreeMap<String, Postings> terms = new TreeMap<>();
+    private final Map<String, Integer> docsByEntry = new HashMap<>();
+    private final List<String> entriesByDoc = new ArrayList<>();
+    private final BitSet live = new BitSet();
+    private int deadDocs;
+
+    public void put(String entryId, String title, String content) {
+        remove(entryId);
+        int doc = entriesByDoc.size();
+        entriesByDoc.add(entryId);
+        docsByEntry.put(entryId, doc);
+        live.set(doc);
+        TextTokenizer.TokenSink sink = (term, position) ->
+                terms.computeIfAbsent(term, t -> new Postings()).add(doc, position);
+        int next = TextTokenizer.tokenize(title, 0, sink);
+        TextTokenizer.tokenize(content, next + TITLE_GAP, sink);
+    }
+
+    public void remove(String entryId) {
+        Integer doc = docsByEntry.remove(entryId);
+        if (doc == null) {
+            return;
+        }
+        live.clear(doc);
+        entriesByDoc.set(doc, null);
+        deadDocs++;
+        if (deadDocs >= MIN_PURGE_DOCS && deadDocs > docsByEntry.size()) {
+            purgeDeadDocs();
+        }
+    }
+
+    public int size() {
+        return docsByEntry.size();
+    }
+
+    /**
+     * Returns the ids of all entries matching {@code query}; an empty set if nothing matches.
+     */
+    public Set<String> search(String query) {
+        BitSet result = new BitSet();
+        for (List<Clause> group : parse(query)) {
+            BitSet groupResult = null;
+            for (Clause clause : group) {
+                BitSet docs = clause.evaluate();
+                if (groupResult == null) {
+                    groupResult = docs;
+                } else {
+                    groupResult.and(docs);
+                }
+                if (groupResult.isEmpty()) {
+                    break;
+                }
+            }
+            if (groupResult != null) {
+                result.or(groupResult);
+            }
+        }
+        result.and(live);
+
+        Set<String> ids = new HashSet<>(Math.max(16, result.cardinality() * 2));
+        for (int doc = result.nextSetBit(0); doc >= 0; doc = result.nextSetBit(doc + 1)) {
+            ids.add(entriesByDoc.get(doc));
+        }
+        return ids;
+    }
+
+    /**
+     * Splits the query into OR-separated groups of ANDed clauses.
+     */
+    private List<List<Clause>> parse(String query) {
+        List<List<Clause>> groups = new ArrayList<>();
+        List<Clause> group = new ArrayList<>();
+        int i = 0;
+        int length = query.length();
+        while (i < length) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            int end;
+            String text;
+            boolean quoted = c == '"';
+            if (quoted) {
+                end = query.indexOf('"', i + 1);
+                if (end < 0) end = length;
+                text = query.substring(i + 1, end);
+                end++;
+            } else {
+                end = i;
+                while (end < length && !Character.isWhitespace(query.charAt(end))) end++;
+                text = query.substring(i, end);
+            }
+            i = end;
+
+            if (!quoted && (text.equals("OR") || text.equals("|"))) {
+                if (!group.isEmpty()) {
+                    groups.add(group);
+                    group = new ArrayList<>();
+                }
+                continue;
+            }
+            List<String> words = new ArrayList<>();
+            TextTokenizer.tokenize(text, 0, (term, position) -> words.add(term));
+            if (words.isEmpty()) {
+                continue;
+            }
+            // A bare word that the tokenizer splits up ("don't") behaves like a phrase
+            group.add(!quoted && words.size() == 1 ? new PrefixClause(words.get(0)) : new PhraseClause(words));
+        }
+        if (!group.isEmpty()) {
+            groups.add(group);
+        }
+        return groups;
+    }
+
+    private void purgeDeadDocs() {
+        int[] remap = new int[entriesByDoc.size()];
+        List<String> compacted = new ArrayList<>(docsByEntry.size());
+        for (int doc = 0; doc < remap.length; doc++) {
+            String entryId = entriesByDoc.get(doc);
+            if (entryId == null) {
+                remap[doc] = -1;
+            } else {
+                remap[doc] = compacted.size();
+                docsByEntry.put(entryId, compacted.size());
+                compacted.add(entryId);
+            }
+        }
+        terms.values().removeIf(postings -> postings.remap(remap) == 0);
+        entriesByDoc.clear();
+        entriesByDoc.addAll(compacted);
+        live.clear();
+        live.set(0, compacted.size());
+        deadDocs = 0;
+    }
+
+    private interface Clause {
+        BitSet evaluate();
+    }
+
+    private final class PrefixClause implements Clause {
+        private final String prefix;
+
+        PrefixClause(String prefix) {
+            this.prefix = prefix;
+        }
+
+        @Override
+        public BitSet evaluate() {
+            BitSet docs = new BitSet();
+            for (Postings postings : terms.subMap(prefix, true, prefix + Character.MAX_VALUE, true).values()) {
+                for (int i = 0; i < postings.docCount; i++) {
+                    docs.set(postings.docs[i]);
+                }
+            }
+            return docs;
+        }
+    }
+
+    private final class PhraseClause implements Clause {
+        private final List<String> words;
+
+        PhraseClause(List<String> words) {
+            this.words = words;
+        }
+
+        @Override
+        public BitSet evaluate() {
+            BitSet docs = new BitSet();
+            Postings[] lists = new Postings[words.size()];
+            for (int k = 0; k < lists.length; k++) {
+                lists[k] = terms.get(words.get(k));
+                if (lists[k] == null) {
+                    return docs;
+                }
+            }
+            Postings first = lists[0];
+            for (int i = 0; i < first.docCount; i++) {
+                int doc = first.docs[i];
+                if (live.get(doc) && containsPhrase(lists, doc, i)) {
+                    docs.set(doc);
+                }
+            }
+            return docs;
+        }
+
+        private boolean containsPhrase(Postings[] lists, int doc, int firstIndex) {
+            int[] slots = new int[lists.length];
+            slots[0] = firstIndex;
+            for (int k = 1; k < lists.length; k++) {
+                slots[k] = Arrays.binarySearch(lists[k].docs, 0, lists[k].docCount, doc);
+                if (slots[k] < 0) {
+                    return false;
+                }
+            }
+            Postings first = lists[0];
+            for (int p = first.positionStart[firstIndex]; p < first.positionStart[firstIndex + 1]; p++) {
+                int start = first.positions[p];
+                boolean match = true;
+                for (int k = 1; k < lists.length && match; k++) {
+                    match = lists[k].hasPosition(slots[k], start + k);
+                }
+                if (match) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Posting list for one term: sorted document numbers, and for document {@code i} its word positions in
+     * {@code positions[positionStart[i] .. positionStart[i + 1])}.
+     */
+    private static final class Postings {
+        int[] docs = new int[2];
+        int[] positionStart = new int[3];
+        int[] positions = new int[2];
+        int docCount;
+        int positionCount;
+
+        void add(int doc, int position) {
+            if (docCount == 0 || docs[docCount - 1] != doc) {
+                if (docCount == docs.length) {
+                    docs = Arrays.copyOf(docs, docCount * 2);
+                    positionStart = Arrays.copyOf(positionStart, docCount * 2 + 1);
+                }
+                docs[docCount++] = doc;
+            }
+            if (positionCount == positions.length) {
+                positions = Arrays.copyOf(positions, positionCount * 2);
+            }
+            positions[positionCount++] = position;
+            positionStart[docCount] = positionCount;
+        }
+
+        boolean hasPosition(int slot, int position) {
+            int from = positionStart[slot];
+            int to = positionStart[slot + 1];
+            return Arrays.binarySearch(positions, from, to, position) >= 0;
+        }
+
+        /**
+         * Rewrites document numbers through {@code remap}, dropping dead ones (-1). Returns the remaining count.
+         */
+        int remap(int[] remap) {
+            int outDocs = 0;
+            int outPositions = 0;
+            for (int i = 0; i < docCount; i++) {
+                int doc = remap[docs[i]];
+                int from = positionStart[i];
+                int to = positionStart[i + 1];
+                if (doc < 0) {
+                    continue;
+                }
+                docs[outDocs] = doc;
+                positionStart[outDocs] = outPositions;
+                System.arraycopy(positions, from, positions, outPositions, to - from);
+                outPositions += to - from;
+                outDocs++;
+            }
+            positionStart[outDocs] = outPositions;
+            docCount = outDocs;
+            positionCount = outPositions;
+            return docCount;
+        }
+    }
+}
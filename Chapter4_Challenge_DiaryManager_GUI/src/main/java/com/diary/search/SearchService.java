@@ -0,0 +1,59 @@
+package com.diary.search;
+
+import com.diary.model.DiaryEntry;
+import com.diary.util.FileManager;
+import java.io.Closeable;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Owns the {@link SearchIndex} and runs every update and query on one background thread, so the index needs
+ * no locking and the FX thread never tokenizes or scans anything.
+ */
+public class SearchService implements Closeable {
+    private final SearchIndex index = new SearchIndex();
+    private final AtomicLong latestQuery = new AtomicLong();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "diary-search");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Indexes every stored entry. Queries submitted meanwhile queue up behind the build.
+     */
+    public CompletableFuture<Integer> indexAll(FileManager fileManager) {
+        return CompletableFuture.supplyAsync(() -> {
+            fileManager.forEachEntry(entry -> index.put(entry.getId(), entry.getTitle(), entry.getContent()));
+            return index.size();
+        }, executor);
+    }
+
+    public void update(DiaryEntry entry) {
+        String id = entry.getId();
+        String title = entry.getTitle();
+        String content = entry.getContent();
+        executor.execute(() -> index.put(id, title, content));
+    }
+
+    public void remove(String entryId) {
+        executor.execute(() -> index.remove(entryId));
+    }
+
+    /**
+     * Completes with the ids of the matching entries, or with {@code null} if a newer query was submitted
+     * before this one got to run.
+     */
+    public CompletableFuture<Set<String>> search(String query) {
+        long sequence = latestQuery.incrementAndGet();
+        return CompletableFuture.supplyAsync(() -> sequence == latestQuery.get() ? index.search(query) : null, executor);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,91 @@
+package com.diary.search;
+
+/**
+ * Splits entry HTML into lower-case word tokens. Tags are skipped and the common character entities decoded
+ * in a single pass, without building a stripped copy of the text first.
+ */
+public final class TextTokenizer {
+
+    public interface TokenSink {
+        void token(String term, int position);
+    }
+
+    private TextTokenizer() {
+    }
+
+    /**
+     * Feeds every token of {@code html} to {@code sink}, numbering positions from {@code firstPosition}.
+     * Returns the position after the last token.
+     */
+    public static int tokenize(String html, int firstPosition, TokenSink sink) {
+        if (html == null) {
+            return firstPosition;
+        }
+        int position = firstPosition;
+        StringBuilder term = new StringBuilder(16);
+        int length = html.length();
+        int i = 0;
+        while (i < length) {
+            char c = html.charAt(i);
+            if (c == '<') {
+                int end = html.indexOf('>', i + 1);
+                i = end < 0 ? length : end + 1;
+                // A tag always separates words (<p>one</p><p>two</p>)
+                position = flush(term, position, sink);
+                continue;
+            }
+            if (c == '&') {
+                int end = html.indexOf(';', i + 1);
+                if (end > 0 && end - i <= 8) {
+                    c = decodeEntity(html, i + 1, end);
+                    i = end;
+                }
+            }
+            if (Character.isLetterOrDigit(c)) {
+                term.append(Character.toLowerCase(c));
+            } else {
+                position = flush(term, position, sink);
+            }
+            i++;
+        }
+        return flush(term, position, sink);
+    }
+
+    private static int flush(StringBuilder term, int position, TokenSink sink) {
+        if (term.length() == 0) {
+            return position;
+        }
+        sink.token(term.toString(), position);
+        term.setLength(0);
+        return position + 1;
+    }
+
+    private static char decodeEntity(String html, int start, int end) {
+        String name = html.substring(start, end);
+        switch (name) {
+            case "amp":
+                return '&';
+            case "lt":
+                return '<';
+            case "gt":
+                return '>';
+            case "quot":
+                return '"';
+            case "apos":
+            case "#39":
+                return '\'';
+            default:
+                if (name.length() > 1 && name.charAt(0) == '#') {
+                    try {
+                        boolean hex = name.charAt(1) == 'x' || name.charAt(1) == 'X';
+                        int code = hex ? Integer.parseInt(name.substring(2), 16) : Integer.parseInt(name.substring(1));
+                        return code <= Character.MAX_VALUE ? (char) code : ' ';
+                    } catch (NumberFormatException e) {
+                        return ' ';
+                    }
+                }
+                // &nbsp; and anything we don't know just separates words
+                return ' ';
+        }
+    }
+}
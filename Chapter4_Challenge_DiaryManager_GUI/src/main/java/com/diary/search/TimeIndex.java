@@ -0,0 +1,142 @@
+package com.diary.search;
+
+import com.diary.model.DiaryEntry;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Entries ordered by creation time, for the Timeline order, the date filter and the calendar heatmap.
+ *
+ * <p>Entries are kept in a sorted set keyed by (created epoch millis, id), so a day or a date range is a
+ * sub-set lookup: O(log n + k) for k results. Per-day counts are maintained alongside so the calendar can
+ * colour a whole month without touching the entries. Millis are taken from the entry's local date-time at
+ * UTC, the same convention as the entry index on disk, so day boundaries match
+ * {@code getCreatedDate().toLocalDate()}. All methods are thread-safe.
+ */
+public class TimeIndex {
+    private final NavigableSet<Key> byTime = new TreeSet<>();
+    private final Map<String, Key> keys = new HashMap<>();
+    private final TreeMap<Long, Integer> dayCounts = new TreeMap<>();
+
+    private static final class Key implements Comparable<Key> {
+        final long millis;
+        final String id;
+
+        Key(long millis, String id) {
+            this.millis = millis;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int c = Long.compare(millis, other.millis);
+            return c != 0 ? c : id.compareTo(other.id);
+        }
+    }
+
+    /**
+     * Adds the entry, or moves it if its creation date changed.
+     */
+    public synchronized void put(DiaryEntry entry) {
+        Key key = new Key(toMillis(entry.getCreatedDate()), entry.getId());
+        Key previous = keys.put(key.id, key);
+        if (previous != null) {
+            if (previous.millis == key.millis) {
+                return;
+            }
+            byTime.remove(previous);
+            countDay(previous.millis, -1);
+        }
+        byTime.add(key);
+        countDay(key.millis, 1);
+    }
+
+    public synchronized void putAll(Iterable<DiaryEntry> entries) {
+        for (DiaryEntry entry : entries) {
+            put(entry);
+        }
+    }
+
+    public synchronized void remove(String id) {
+        Key key = keys.remove(id);
+        if (key != null) {
+            byTime.remove(key);
+            countDay(key.millis, -1);
+        }
+    }
+
+    public synchronized int size() {
+        return keys.size();
+    }
+
+    /**
+     * Ids of the entries created on {@code date}.
+     */
+    public Set<String> idsOn(LocalDate date) {
+        return idsBetween(date, date);
+    }
+
+    /**
+     * Ids of the entries created from {@code from} to {@code to}, both days included.
+     */
+    public synchronized Set<String> idsBetween(LocalDate from, LocalDate to) {
+        NavigableSet<Key> range = range(from, to);
+        Set<String> ids = new HashSet<>(range.size() * 4 / 3 + 1);
+        for (Key key : range) {
+            ids.add(key.id);
+        }
+        return ids;
+    }
+
+    /**
+     * All ids, newest first.
+     */
+    public synchronized List<String> newestFirst() {
+        List<String> ids = new ArrayList<>(byTime.size());
+        for (Key key : byTime.descendingSet()) {
+            ids.add(key.id);
+        }
+        return ids;
+    }
+
+    public synchronized int countOn(LocalDate date) {
+        return dayCounts.getOrDefault(date.toEpochDay(), 0);
+    }
+
+    /**
+     * Entry count per day from {@code from} to {@code to} (inclusive); days without entries are left out.
+     */
+    public synchronized Map<LocalDate, Integer> countsBetween(LocalDate from, LocalDate to) {
+        Map<LocalDate, Integer> counts = new TreeMap<>();
+        for (Map.Entry<Long, Integer> e : dayCounts.subMap(from.toEpochDay(), true, to.toEpochDay(), true).entrySet()) {
+            counts.put(LocalDate.ofEpochDay(e.getKey()), e.getValue());
+        }
+        return counts;
+    }
+
+    private NavigableSet<Key> range(LocalDate from, LocalDate to) {
+        long start = toMillis(from.atStartOfDay());
+        long end = toMillis(to.plusDays(1).atStartOfDay());
+        // "" sorts before every id, so (end, "") excludes everything created at or after midnight of the next day
+        return byTime.subSet(new Key(start, ""), true, new Key(end, ""), false);
+    }
+
+    private void countDay(long millis, int delta) {
+        long day = Math.floorDiv(millis, 86_400_000L);
+        dayCounts.merge(day, delta, (a, b) -> a + b == 0 ? null : a + b);
+    }
+
+    private static long toMillis(LocalDateTime dateTime) {
+        return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+}
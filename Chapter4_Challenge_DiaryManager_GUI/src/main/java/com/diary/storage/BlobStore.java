@@ -0,0 +1,360 @@
+package com.diary.storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Content-addressed store for images pasted into entries.
+ *
+ * <p>{@link #extract} moves every inline {@code data:} image of an entry's HTML into a file named after the
+ * SHA-256 of its bytes ({@code ab/abcdef...png}) and leaves a short {@code diary-blob:} reference in its place,
+ * so a picture is stored once however often the entry is saved and however many entries use it.
+ * {@link #resolve} turns the references into {@code file:} URLs, which the editor loads by itself.
+ *
+ * <p>With an {@link EntryCipher}, blob files are sealed with it and named after the cipher's keyed
+ * {@link EntryCipher#fingerprint} instead of a plain hash, so neither the pictures nor which known pictures the
+ * diary holds can be read from disk. {@link #resolve} then decrypts them back into {@code data:} URLs.
+ *
+ * <p>The blobs each entry refers to are recorded in {@code refs.log} (one line per change, the newest line for
+ * an entry wins). Older revisions may still show an image the entry no longer does, so an entry's references
+ * only grow while it exists; {@link #release} drops them when the entry is deleted and removes every blob no
+ * other entry refers to. Blob files nothing refers to, e.g. left behind by a crash between writing the blob and
+ * saving the entry, are removed on open, unless the store is opened read-only next to another instance that
+ * writes the diary: the writer may have just stored a blob it has not referenced yet.
+ */
+public class BlobStore implements Closeable {
+    public static final String SCHEME = "diary-blob:";
+
+    private static final String REFS_FILE = "refs.log";
+    private static final String TEMP_SUFFIX = ".tmp";
+    // src="data:image/png;base64,...." with either quote style
+    private static final Pattern INLINE = Pattern.compile("(src=([\"']))data:([\\w.+-]+/[\\w.+-]+);base64,([A-Za-z0-9+/=\\s]*)\\2");
+    private static final Pattern NAME = Pattern.compile("[0-9a-f]{64}\\.[a-z0-9]+");
+    private static final Pattern REFERENCE = Pattern.compile(Pattern.quote(SCHEME) + "(" + NAME.pattern() + ")");
+
+    private final Path directory;
+    private final EntryCipher cipher;
+    private final String directoryUri;
+    private final Pattern resolved;
+    private final Map<String, Set<String>> references = new HashMap<>();
+    private final Map<String, Integer> counts = new HashMap<>();
+    // Extracted but not yet retained by a save; never collected until then
+    private final Set<String> pending = new HashSet<>();
+    private final FileChannel refsLog;
+
+    public BlobStore(Path directory) throws IOException {
+        this(directory, null);
+    }
+
+    public BlobStore(Path directory, EntryCipher cipher) throws IOException {
+        this(directory, cipher, false);
+    }
+
+    /**
+     * @param cipher encrypts the blob files, or {@code null} to store them as plain image files
+     * @param readOnly another instance writes the diary, so neither the reference log is rewritten nor garbage
+     *                 removed
+     */
+    public BlobStore(Path directory, EntryCipher cipher, boolean readOnly) throws IOException {
+        this.directory = directory;
+        this.cipher = cipher;
+        Files.createDirectories(directory);
+        this.directoryUri = directory.toAbsolutePath().toUri().toString();
+        this.resolved = Pattern.compile(Pattern.quote(directoryUri) + "[0-9a-f]{2}/(" + NAME.pattern() + ")");
+
+        Path refsPath = directory.resolve(REFS_FILE);
+        int lines = readReferences(refsPath);
+        // The writer owns the reference log and may hold blobs it has not referenced yet
+        if (!readOnly && lines > 2 * references.size() + 16) {
+            rewriteReferences(refsPath);
+        }
+        if (!readOnly && Files.exists(refsPath)) {
+            // Without the reference log there is no telling what is garbage, so nothing is removed
+            removeUnreferenced();
+        }
+        refsLog = FileChannel.open(refsPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Whether {@code html} still has images inlined as {@code data:} URLs.
+     */
+    public static boolean hasInlineImages(String html) {
+        return html != null && html.contains("data:") && INLINE.matcher(html).find();
+    }
+
+    /**
+     * Stores the inline images of {@code html} and returns it with references in their place. {@code file:} URLs
+     * produced by {@link #resolve} are turned back into references too. Returns {@code html} itself when there
+     * was nothing to replace.
+     */
+    public String extract(String html) throws IOException {
+        if (html == null) {
+            return null;
+        }
+        String result = html;
+        if (result.contains(directoryUri)) {
+            result = resolved.matcher(result).replaceAll(Matcher.quoteReplacement(SCHEME) + "$1");
+        }
+        if (!result.contains("data:")) {
+            return result;
+        }
+        Matcher m = INLINE.matcher(result);
+        StringBuilder sb = new StringBuilder(Math.min(result.length(), 4096));
+        boolean replaced = false;
+        while (m.find()) {
+            byte[] bytes;
+            try {
+                bytes = Base64.getMimeDecoder().decode(m.group(4));
+            } catch (IllegalArgumentException e) {
+                // Not valid base64 after all; leave it inline
+                continue;
+            }
+            String name = put(bytes, m.group(3));
+            m.appendReplacement(sb, Matcher.quoteReplacement(m.group(1) + SCHEME + name + m.group(2)));
+            replaced = true;
+        }
+        if (!replaced) {
+            return result;
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+
+    /**
+     * Replaces the references in {@code html} with {@code file:} URLs of the blobs, or with {@code data:} URLs of
+     * the decrypted images when the blobs are encrypted. A blob that cannot be decrypted keeps its reference.
+     */
+    public String resolve(String html) {
+        if (html == null || !html.contains(SCHEME)) {
+            return html;
+        }
+        Matcher m = REFERENCE.matcher(html);
+        StringBuilder sb = new StringBuilder(html.length() + 256);
+        while (m.find()) {
+            String name = m.group(1);
+            String url;
+            if (cipher == null) {
+                url = directoryUri + name.substring(0, 2) + "/" + name;
+            } else {
+                try {
+                    url = dataUrl(name);
+                } catch (IOException e) {
+                    System.err.println("Could not read image " + name + ": " + e.getMessage());
+                    continue;
+                }
+            }
+            m.appendReplacement(sb, Matcher.quoteReplacement(url));
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+
+    /**
+     * Records that entry {@code entryId} refers to the blobs referenced in {@code html}. Call this before the
+     * entry itself is saved, so a crash in between can only leave an unused reference behind.
+     */
+    public synchronized void retain(String entryId, String html) throws IOException {
+        if (html == null || !html.contains(SCHEME)) {
+            return;
+        }
+        Set<String> names = references.computeIfAbsent(entryId, k -> new HashSet<>());
+        boolean added = false;
+        Matcher m = REFERENCE.matcher(html);
+        while (m.find()) {
+            pending.remove(m.group(1));
+            if (names.add(m.group(1))) {
+                counts.merge(m.group(1), 1, Integer::sum);
+                added = true;
+            }
+        }
+        if (added) {
+            appendLine(entryId, names);
+        } else if (names.isEmpty()) {
+            references.remove(entryId);
+        }
+    }
+
+    /**
+     * Drops every reference of a deleted entry and removes the blobs that are no longer used.
+     */
+    public synchronized void release(String entryId) throws IOException {
+        Set<String> names = references.remove(entryId);
+        if (names == null) {
+            return;
+        }
+        appendLine(entryId, Collections.emptySet());
+        for (String name : names) {
+            if (counts.merge(name, -1, Integer::sum) <= 0) {
+                counts.remove(name);
+                if (!pending.contains(name)) {
+                    Files.deleteIfExists(blobPath(name));
+                }
+            }
+        }
+    }
+
+    public synchronized int blobCount() {
+        return counts.size();
+    }
+
+    public synchronized void sync() throws IOException {
+        refsLog.force(false);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (refsLog.isOpen()) {
+            refsLog.force(true);
+            refsLog.close();
+        }
+    }
+
+    private synchronized String put(byte[] bytes, String mimeType) throws IOException {
+        String name = hex(cipher == null ? sha256(bytes) : cipher.fingerprint(bytes)) + "." + extension(mimeType);
+        pending.add(name);
+        Path path = blobPath(name);
+        if (!Files.exists(path)) {
+            Files.createDirectories(path.getParent());
+            Path temp = path.resolveSibling(name + TEMP_SUFFIX);
+            if (cipher == null) {
+                Files.write(temp, bytes);
+            } else {
+                ByteBuffer sealed = cipher.seal(ByteBuffer.wrap(bytes));
+                Files.write(temp, Arrays.copyOfRange(sealed.array(), sealed.position(), sealed.limit()));
+            }
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return name;
+    }
+
+    private String dataUrl(String name) throws IOException {
+        ByteBuffer image = cipher.open(ByteBuffer.wrap(Files.readAllBytes(blobPath(name))));
+        byte[] bytes = Arrays.copyOfRange(image.array(), image.position(), image.limit());
+        return "data:" + mimeType(name.substring(name.indexOf('.') + 1)) + ";base64," + Base64.getEncoder().encodeToString(bytes);
+    }
+
+    private Path blobPath(String name) {
+        return directory.resolve(name.substring(0, 2)).resolve(name);
+    }
+
+    private void appendLine(String entryId, Set<String> names) throws IOException {
+        StringBuilder line = new StringBuilder(entryId);
+        for (String name : names) {
+            line.append('\t').append(name);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(line.append('\n').toString().getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            refsLog.write(buffer);
+        }
+    }
+
+    private int readReferences(Path refsPath) throws IOException {
+        if (!Files.exists(refsPath)) {
+            return 0;
+        }
+        int lines = 0;
+        try (BufferedReader reader = Files.newBufferedReader(refsPath, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                String[] fields = line.split("\t");
+                Set<String> names = new HashSet<>();
+                for (int i = 1; i < fields.length; i++) {
+                    // A torn last line can end in half a name
+                    if (NAME.matcher(fields[i]).matches()) {
+                        names.add(fields[i]);
+                    }
+                }
+                if (names.isEmpty()) {
+                    references.remove(fields[0]);
+                } else {
+                    references.put(fields[0], names);
+                }
+            }
+        }
+        for (Set<String> names : references.values()) {
+            for (String name : names) {
+                counts.merge(name, 1, Integer::sum);
+            }
+        }
+        return lines;
+    }
+
+    private void rewriteReferences(Path refsPath) throws IOException {
+        Path temp = refsPath.resolveSibling(REFS_FILE + TEMP_SUFFIX);
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Set<String>> e : references.entrySet()) {
+                writer.write(e.getKey());
+                for (String name : e.getValue()) {
+                    writer.write('\t');
+                    writer.write(name);
+                }
+                writer.write('\n');
+            }
+        }
+        Files.move(temp, refsPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void removeUnreferenced() throws IOException {
+        List<Path> garbage = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(directory, 2)) {
+            files.filter(Files::isRegularFile)
+                 .filter(p -> !p.getParent().equals(directory))
+                 .filter(p -> !counts.containsKey(p.getFileName().toString()))
+                 .forEach(garbage::add);
+        }
+        for (Path p : garbage) {
+            Files.deleteIfExists(p);
+        }
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String hex(byte[] digest) {
+        StringBuilder hex = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    private static String mimeType(String extension) {
+        switch (extension) {
+            case "jpg":
+                return "image/jpeg";
+            case "svg":
+                return "image/svg+xml";
+            case "bin":
+                return "application/octet-stream";
+            default:
+                return "image/" + extension;
+        }
+    }
+
+    private static String extension(String mimeType) {
+        switch (mimeType.toLowerCase(Locale.ROOT)) {
+            case "image/jpeg":
+                return "jpg";
+            case "image/svg+xml":
+                return "svg";
+            default:
+                String subtype = mimeType.substring(mimeType.indexOf('/') + 1).toLowerCase(Locale.ROOT);
+                return subtype.matches("[a-z0-9]+") ? subtype : "bin";
+        }
+    }
+}
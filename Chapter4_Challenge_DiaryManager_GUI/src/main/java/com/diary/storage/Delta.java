@@ -0,0 +1,195 @@
+package com.diary.storage;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Binary delta between two byte arrays, as a list of "copy this range of the base" and "insert these bytes"
+ * instructions.
+ *
+ * <p>Every 16-byte window of the base is hashed into a table; the target is scanned with a rolling hash, and each
+ * hit is verified and then extended in both directions, so edits anywhere in the text (and moved paragraphs)
+ * cost little more than the changed bytes.
+ *
+ * <p>Encoding: varint target length, then instructions. Each starts with a varint {@code length << 1 | op}; a copy
+ * ({@code op} 0) is followed by a varint base offset, an insert ({@code op} 1) by {@code length} literal bytes.
+ */
+final class Delta {
+    private static final int BLOCK = 16;
+    private static final int PRIME = 31;
+    private static final int OP_COPY = 0;
+    private static final int OP_INSERT = 1;
+
+    private Delta() {
+    }
+
+    static byte[] create(byte[] base, byte[] target) {
+        Output out = new Output(64 + target.length / 8);
+        out.putVarLong(target.length);
+
+        int[] table = null;
+        int shift = 0;
+        if (base.length >= BLOCK && target.length >= BLOCK) {
+            int bits = Math.max(6, 33 - Integer.numberOfLeadingZeros(base.length));
+            table = new int[1 << bits];
+            shift = 32 - bits;
+            for (int i = 0; i + BLOCK <= base.length; i++) {
+                table[bucket(hash(base, i), shift)] = i + 1;
+            }
+        }
+
+        int literalStart = 0;
+        int i = 0;
+        int power = pow(PRIME, BLOCK - 1);
+        int h = table != null ? hash(target, 0) : 0;
+        while (table != null && i + BLOCK <= target.length) {
+            int candidate = table[bucket(h, shift)] - 1;
+            if (candidate >= 0 && equal(base, candidate, target, i, BLOCK)) {
+                int start = i;
+                int from = candidate;
+                while (start > literalStart && from > 0 && base[from - 1] == target[start - 1]) {
+                    start--;
+                    from--;
+                }
+                int end = i + BLOCK;
+                int baseEnd = candidate + BLOCK;
+                while (end < target.length && baseEnd < base.length && base[baseEnd] == target[end]) {
+                    end++;
+                    baseEnd++;
+                }
+                if (start > literalStart) {
+                    out.insert(target, literalStart, start - literalStart);
+                }
+                out.copy(from, end - start);
+                literalStart = end;
+                i = end;
+                if (i + BLOCK <= target.length) {
+                    h = hash(target, i);
+                }
+                continue;
+            }
+            if (i + BLOCK < target.length) {
+                h = (h - target[i] * power) * PRIME + target[i + BLOCK];
+            }
+            i++;
+        }
+        if (literalStart < target.length) {
+            out.insert(target, literalStart, target.length - literalStart);
+        }
+        return out.toByteArray();
+    }
+
+    static byte[] apply(byte[] base, byte[] delta) throws IOException {
+        Input in = new Input(delta);
+        byte[] target = new byte[Math.toIntExact(in.getVarLong())];
+        int position = 0;
+        try {
+            while (in.position < delta.length) {
+                long header = in.getVarLong();
+                int length = Math.toIntExact(header >>> 1);
+                if ((header & 1) == OP_COPY) {
+                    int offset = Math.toIntExact(in.getVarLong());
+                    System.arraycopy(base, offset, target, position, length);
+                } else {
+                    System.arraycopy(delta, in.position, target, position, length);
+                    in.position += length;
+                }
+                position += length;
+            }
+        } catch (IndexOutOfBoundsException | ArithmeticException e) {
+            throw new IOException("Corrupt delta", e);
+        }
+        if (position != target.length) {
+            throw new IOException("Corrupt delta: produced " + position + " of " + target.length + " bytes");
+        }
+        return target;
+    }
+
+    private static int hash(byte[] bytes, int offset) {
+        int h = 0;
+        for (int k = 0; k < BLOCK; k++) {
+            h = h * PRIME + bytes[offset + k];
+        }
+        return h;
+    }
+
+    private static int bucket(int hash, int shift) {
+        return (hash * 0x9E3779B1) >>> shift;
+    }
+
+    private static int pow(int base, int exponent) {
+        int result = 1;
+        for (int k = 0; k < exponent; k++) {
+            result *= base;
+        }
+        return result;
+    }
+
+    private static boolean equal(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+        return Arrays.equals(a, aOffset, aOffset + length, b, bOffset, bOffset + length);
+    }
+
+    private static final class Output {
+        private byte[] bytes;
+        private int length;
+
+        Output(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        void copy(int offset, int count) {
+            putVarLong((long) count << 1 | OP_COPY);
+            putVarLong(offset);
+        }
+
+        void insert(byte[] source, int offset, int count) {
+            putVarLong((long) count << 1 | OP_INSERT);
+            ensure(count);
+            System.arraycopy(source, offset, bytes, length, count);
+            length += count;
+        }
+
+        void putVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(length + extra, bytes.length * 2));
+            }
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, length);
+        }
+    }
+
+    private static final class Input {
+        private final byte[] bytes;
+        private int position;
+
+        Input(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        long getVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= bytes.length) {
+                    throw new IOException("Corrupt delta: truncated varint");
+                }
+                byte b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Corrupt delta: malformed varint");
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.diary.storage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * AES-256-GCM encryption of stored records, in independently authenticated chunks.
+ *
+ * <p>A sealed value is {@code [byte marker][byte version][int plainLength][int chunkSize][8-byte nonce prefix]}
+ * followed by one GCM ciphertext per chunk of the plaintext ({@value #CHUNK_SIZE} bytes when sealing), each with
+ * its own 16-byte tag. Chunk {@code i} uses the nonce prefix followed by {@code i} as its 12-byte nonce and the 18
+ * header bytes as additional data, so chunks cannot be swapped, dropped or moved to another value. Because every
+ * chunk stands alone, values of more than one chunk are sealed and opened on several cores.
+ *
+ * <p>The key is derived from the passphrase once, by {@link #unlock}, with PBKDF2-HMAC-SHA256 and a random salt
+ * kept in a small parameters file, and is held by the instance for the rest of the session. A second key for
+ * {@link #fingerprint} is derived from it with HMAC-SHA256. Instances are thread-safe.
+ */
+public final class EntryCipher {
+    public static final int CHUNK_SIZE = 64 * 1024;
+
+    private static final byte MARKER = (byte) 0xE5;
+    private static final byte VERSION = 1;
+    private static final int HEADER_BYTES = 18;
+    private static final int NONCE_PREFIX_BYTES = 8;
+    private static final int NONCE_BYTES = 12;
+    private static final int TAG_BYTES = 16;
+    private static final int KEY_BITS = 256;
+    private static final int SALT_BYTES = 16;
+    private static final int ITERATIONS = 310_000;
+    private static final int PARAMS_MAGIC = 0x44435250; // "DCRP"
+    private static final int PARAMS_VERSION = 1;
+    // Sealed with the derived key and stored with the salt, so a wrong passphrase is caught on unlock
+    private static final byte[] CHECK = "diary key check".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FINGERPRINT_LABEL = "diary fingerprint".getBytes(StandardCharsets.US_ASCII);
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final ThreadLocal<Cipher> CIPHERS = ThreadLocal.withInitial(() -> {
+        try {
+            return Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES/GCM is not available", e);
+        }
+    });
+
+    private final SecretKey key;
+    private final SecretKey fingerprintKey;
+
+    EntryCipher(SecretKey key) {
+        this.key = key;
+        this.fingerprintKey = new SecretKeySpec(hmac(new SecretKeySpec(key.getEncoded(), "HmacSHA256"), FINGERPRINT_LABEL), "HmacSHA256");
+    }
+
+    /**
+     * Derives the key for {@code passphrase}. If {@code paramsFile} does not exist yet, a new salt is chosen and
+     * written there, which makes {@code passphrase} the passphrase of the data from now on.
+     *
+     * @throws IOException if the passphrase is wrong or the parameters file cannot be read or written
+     */
+    public static EntryCipher unlock(Path paramsFile, char[] passphrase) throws IOException {
+        if (!Files.exists(paramsFile)) {
+            byte[] salt = new byte[SALT_BYTES];
+            RANDOM.nextBytes(salt);
+            EntryCipher cipher = new EntryCipher(deriveKey(passphrase, salt, ITERATIONS));
+            writeParams(paramsFile, salt, ITERATIONS, cipher.seal(ByteBuffer.wrap(CHECK)));
+            return cipher;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(paramsFile)))) {
+            if (in.readInt() != PARAMS_MAGIC || in.readInt() != PARAMS_VERSION) {
+                throw new IOException("Unknown encryption parameters in " + paramsFile);
+            }
+            int iterations = in.readInt();
+            byte[] salt = new byte[SALT_BYTES];
+            in.readFully(salt);
+            byte[] check = new byte[in.readInt()];
+            in.readFully(check);
+
+            EntryCipher cipher = new EntryCipher(deriveKey(passphrase, salt, iterations));
+            ByteBuffer opened;
+            try {
+                opened = cipher.open(ByteBuffer.wrap(check));
+            } catch (IOException e) {
+                throw new IOException("Wrong passphrase", e);
+            }
+            if (!Arrays.equals(Arrays.copyOfRange(opened.array(), opened.position(), opened.limit()), CHECK)) {
+                throw new IOException("Wrong passphrase");
+            }
+            return cipher;
+        } catch (EOFException e) {
+            throw new IOException("Truncated encryption parameters in " + paramsFile, e);
+        }
+    }
+
+    /**
+     * Whether {@code value} (from its position on) was written by {@link #seal}.
+     */
+    public static boolean isSealed(ByteBuffer value) {
+        return value.remaining() >= HEADER_BYTES && value.get(value.position()) == MARKER;
+    }
+
+    /**
+     * Encrypts the remaining bytes of {@code plain} into a new heap buffer, ready for reading.
+     */
+    public ByteBuffer seal(ByteBuffer plain) {
+        int length = plain.remaining();
+        int chunks = chunkCount(length, CHUNK_SIZE);
+        byte[] nonce = new byte[NONCE_PREFIX_BYTES];
+        RANDOM.nextBytes(nonce);
+
+        byte[] out = new byte[HEADER_BYTES + length + chunks * TAG_BYTES];
+        ByteBuffer.wrap(out).put(MARKER).put(VERSION).putInt(length).putInt(CHUNK_SIZE).put(nonce);
+        ByteBuffer source = plain.duplicate();
+        forEachChunk(chunks, i -> {
+            int offset = i * CHUNK_SIZE;
+            int size = Math.min(CHUNK_SIZE, length - offset);
+            ByteBuffer in = source.duplicate();
+            in.position(in.position() + offset).limit(in.position() + size);
+            ByteBuffer target = ByteBuffer.wrap(out, HEADER_BYTES + offset + i * TAG_BYTES, size + TAG_BYTES);
+            crypt(Cipher.ENCRYPT_MODE, out, i, in, target);
+        });
+        plain.position(plain.limit());
+        return ByteBuffer.wrap(out);
+    }
+
+    /**
+     * Decrypts a value written by {@link #seal} into a new heap buffer, ready for reading.
+     *
+     * @throws IOException if the value is not sealed, or fails authentication because it was written with
+     *                     another key or has been changed
+     */
+    public ByteBuffer open(ByteBuffer sealed) throws IOException {
+        if (!isSealed(sealed) || sealed.get(sealed.position() + 1) != VERSION) {
+            throw new IOException("Record is not encrypted");
+        }
+        byte[] header = new byte[HEADER_BYTES];
+        sealed.duplicate().get(header);
+        ByteBuffer fields = ByteBuffer.wrap(header, 2, 8);
+        int length = fields.getInt();
+        int chunkSize = fields.getInt();
+        if (length < 0 || chunkSize <= 0) {
+            throw new IOException("Corrupt encrypted record");
+        }
+        int chunks = chunkCount(length, chunkSize);
+        if (sealed.remaining() != HEADER_BYTES + (long) length + (long) chunks * TAG_BYTES) {
+            throw new IOException("Truncated encrypted record");
+        }
+
+        byte[] out = new byte[length];
+        ByteBuffer source = sealed.duplicate();
+        int base = source.position() + HEADER_BYTES;
+        try {
+            forEachChunk(chunks, i -> {
+                int offset = i * chunkSize;
+                int size = Math.min(chunkSize, length - offset);
+                ByteBuffer in = source.duplicate();
+                in.position(base + offset + i * TAG_BYTES).limit(base + offset + i * TAG_BYTES + size + TAG_BYTES);
+                crypt(Cipher.DECRYPT_MODE, header, i, in, ByteBuffer.wrap(out, offset, size));
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        sealed.position(sealed.limit());
+        return ByteBuffer.wrap(out);
+    }
+
+    /**
+     * A keyed SHA-256 digest of {@code data}. Equal data has equal fingerprints, so they can name stored content,
+     * but without the key a fingerprint cannot be matched to known content the way a plain hash can.
+     */
+    byte[] fingerprint(byte[] data) {
+        return hmac(fingerprintKey, data);
+    }
+
+    /**
+     * Bytes {@link #seal} adds to a value of {@code plainLength} bytes.
+     */
+    public static int overhead(int plainLength) {
+        return HEADER_BYTES + chunkCount(plainLength, CHUNK_SIZE) * TAG_BYTES;
+    }
+
+    private interface ChunkTask {
+        void run(int chunk);
+    }
+
+    private static void forEachChunk(int chunks, ChunkTask task) {
+        if (chunks == 1) {
+            task.run(0);
+        } else {
+            IntStream.range(0, chunks).parallel().forEach(task::run);
+        }
+    }
+
+    private void crypt(int mode, byte[] header, int chunk, ByteBuffer in, ByteBuffer out) {
+        byte[] nonce = new byte[NONCE_BYTES];
+        System.arraycopy(header, HEADER_BYTES - NONCE_PREFIX_BYTES, nonce, 0, NONCE_PREFIX_BYTES);
+        ByteBuffer.wrap(nonce, NONCE_PREFIX_BYTES, 4).putInt(chunk);
+        Cipher cipher = CIPHERS.get();
+        try {
+            cipher.init(mode, key, new GCMParameterSpec(TAG_BYTES * 8, nonce));
+            cipher.updateAAD(header, 0, HEADER_BYTES);
+            cipher.doFinal(in, out);
+        } catch (AEADBadTagException e) {
+            throw new UncheckedIOException(new IOException("Encrypted record failed authentication (wrong key or changed data)", e));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("AES/GCM failed", e);
+        }
+    }
+
+    private static byte[] hmac(SecretKey key, byte[] data) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(key);
+            return mac.doFinal(data);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    private static int chunkCount(int length, int chunkSize) {
+        return Math.max(1, (int) (((long) length + chunkSize - 1) / chunkSize));
+    }
+
+    private static SecretKey deriveKey(char[] passphrase, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(passphrase, salt, iterations, KEY_BITS);
+        try {
+            byte[] bits = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+            return new SecretKeySpec(bits, "AES");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("PBKDF2WithHmacSHA256 is not available", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    private static void writeParams(Path paramsFile, byte[] salt, int iterations, ByteBuffer check) throws IOException {
+        Files.createDirectories(paramsFile.toAbsolutePath().getParent());
+        Path temp = paramsFile.resolveSibling(paramsFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(PARAMS_MAGIC);
+            out.writeInt(PARAMS_VERSION);
+            out.writeInt(iterations);
+            out.write(salt);
+            out.writeInt(check.remaining());
+            out.write(check.array(), check.arrayOffset() + check.position(), check.remaining());
+        }
+        Files.move(temp, paramsFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+}
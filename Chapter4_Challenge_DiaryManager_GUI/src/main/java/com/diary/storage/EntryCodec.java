@@ -0,0 +1,225 @@
+package com.diary.storage;
+
+import com.diary.model.DiaryEntry;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Hand-written binary format for {@link DiaryEntry}, used for log records instead of Java serialization.
+ *
+ * <p>Version 1 layout:
+ * <pre>
+ *   byte    format (1)
+ *   string  id
+ *   string  title
+ *   varlong created epoch second (zig-zag), varint created nano-of-second
+ *   varlong modified epoch second (zig-zag), varint modified nano-of-second
+ *   string  content
+ * </pre>
+ * A string is a varint of its UTF-8 byte length plus one (0 for {@code null}) followed by the bytes. Date-times are taken at UTC, so the values round-trip
+ * exactly whatever the machine's time zone. Content comes last so the header fields can be read without
+ * touching it.
+ *
+ * <p>{@link #decode} also accepts records written with Java serialization, which start with the
+ * serialization stream magic {@code 0xACED} and can never be mistaken for a format byte.
+ *
+ * <p>An instance reuses its encode buffer and is not thread-safe; decoding is static.
+ */
+public final class EntryCodec {
+    public static final byte FORMAT_V1 = 1;
+    private static final int JAVA_SERIALIZATION_MAGIC = 0xAC;
+
+    private ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+    /**
+     * Encodes {@code entry} into this codec's buffer and returns it ready for reading. The buffer is reused
+     * by the next call.
+     */
+    public ByteBuffer encode(DiaryEntry entry) {
+        String id = entry.getId();
+        String title = entry.getTitle();
+        String content = entry.getContent();
+        int idBytes = utf8Length(id);
+        int titleBytes = utf8Length(title);
+        int contentBytes = utf8Length(content);
+        ensureCapacity(1 + 3 * 5 + idBytes + titleBytes + contentBytes + 4 * 10);
+
+        buffer.clear();
+        buffer.put(FORMAT_V1);
+        putString(id, idBytes);
+        putString(title, titleBytes);
+        putDateTime(entry.getCreatedDate());
+        putDateTime(entry.getLastModifiedDate());
+        putString(content, contentBytes);
+        buffer.flip();
+        return buffer;
+    }
+
+    public byte[] encodeToArray(DiaryEntry entry) {
+        ByteBuffer encoded = encode(entry);
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Decodes one entry from the remaining bytes of a heap buffer, in either format.
+     */
+    public static DiaryEntry decode(ByteBuffer in) throws IOException {
+        if (!in.hasRemaining()) {
+            throw new IOException("Empty entry record");
+        }
+        int format = in.get(in.position()) & 0xFF;
+        if (format == JAVA_SERIALIZATION_MAGIC) {
+            return decodeSerialized(in);
+        }
+        if (format != FORMAT_V1) {
+            throw new IOException("Unknown entry format " + format);
+        }
+        try {
+            in.get();
+            String id = getString(in);
+            String title = getString(in);
+            LocalDateTime created = getDateTime(in);
+            LocalDateTime modified = getDateTime(in);
+            String content = getString(in);
+            return DiaryEntry.restore(id, title, content, created, modified);
+        } catch (BufferUnderflowException | IllegalArgumentException | ArithmeticException | DateTimeException e) {
+            throw new IOException("Corrupt entry record", e);
+        }
+    }
+
+    public static DiaryEntry decode(byte[] bytes) throws IOException {
+        return decode(ByteBuffer.wrap(bytes));
+    }
+
+    private static DiaryEntry decodeSerialized(ByteBuffer in) throws IOException {
+        ByteArrayInputStream bytes = new ByteArrayInputStream(in.array(), in.arrayOffset() + in.position(), in.remaining());
+        try (ObjectInputStream ois = new ObjectInputStream(bytes)) {
+            return (DiaryEntry) ois.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Unreadable serialized entry record", e);
+        } finally {
+            in.position(in.limit());
+        }
+    }
+
+    private void ensureCapacity(int size) {
+        if (buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate(Math.max(size, buffer.capacity() * 2));
+        }
+    }
+
+    private void putDateTime(LocalDateTime dateTime) {
+        putVarLong(zigZag(dateTime.toEpochSecond(ZoneOffset.UTC)));
+        putVarLong(dateTime.getNano());
+    }
+
+    private static LocalDateTime getDateTime(ByteBuffer in) {
+        long seconds = unZigZag(getVarLong(in));
+        int nanos = (int) getVarLong(in);
+        return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+    }
+
+    private void putString(String s, int utf8Length) {
+        if (s == null) {
+            buffer.put((byte) 0);
+            return;
+        }
+        putVarLong(utf8Length + 1L);
+        // Encode straight into the buffer instead of going through String.getBytes()
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                buffer.put((byte) (0xF0 | (cp >> 18)));
+                buffer.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (cp & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?'); // unpaired surrogate, same as String.getBytes
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    private static String getString(ByteBuffer in) {
+        long prefix = getVarLong(in);
+        if (prefix == 0) {
+            return null;
+        }
+        int length = Math.toIntExact(prefix - 1);
+        if (length > in.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String s = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return s;
+    }
+
+    static int utf8Length(String s) {
+        if (s == null) {
+            return 0;
+        }
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                length++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private void putVarLong(long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long getVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
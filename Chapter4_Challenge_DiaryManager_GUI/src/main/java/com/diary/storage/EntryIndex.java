@@ -0,0 +1,188 @@
+package com.diary.storage;
+
+import com.diary.model.DiaryEntry;
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Compact on-disk copy of the key directory plus each entry's header (id, title, preview, dates), so the
+ * Timeline can be filled without decoding a single entry body.
+ *
+ * <p>The file records the log position it was written at ("mark"); anything appended after that is replayed
+ * from the segments on open. Dates are stored as epoch millis of the local date-time taken at UTC, which keeps
+ * them independent of the machine's time zone. With an {@link EntryCipher} the whole file is encrypted as one
+ * value.
+ */
+final class EntryIndex {
+    private static final int MAGIC = 0x44494458; // "DIDX"
+    private static final int VERSION = 1;
+
+    /**
+     * Everything the Timeline needs to show an entry.
+     */
+    static final class Header {
+        final String id;
+        final String title;
+        final String preview;
+        final long createdMillis;
+        final long modifiedMillis;
+
+        Header(String id, String title, String preview, long createdMillis, long modifiedMillis) {
+            this.id = id;
+            this.title = title;
+            this.preview = preview;
+            this.createdMillis = createdMillis;
+            this.modifiedMillis = modifiedMillis;
+        }
+
+        static Header of(DiaryEntry entry) {
+            return new Header(entry.getId(), entry.getTitle(), entry.getPreview(),
+                    toMillis(entry.getCreatedDate()), toMillis(entry.getLastModifiedDate()));
+        }
+
+        DiaryEntry toEntry(DiaryEntry.ContentLoader loader) {
+            return DiaryEntry.fromHeader(id, title, preview, fromMillis(createdMillis), fromMillis(modifiedMillis), loader);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Header)) {
+                return false;
+            }
+            Header other = (Header) o;
+            return createdMillis == other.createdMillis && modifiedMillis == other.modifiedMillis
+                    && id.equals(other.id) && Objects.equals(title, other.title) && Objects.equals(preview, other.preview);
+        }
+
+        @Override
+        public int hashCode() {
+            return id.hashCode() * 31 + Long.hashCode(modifiedMillis);
+        }
+    }
+
+    final long markSegment;
+    final long markOffset;
+    final Map<String, Header> headers;
+    final Map<String, RecordPointer> pointers;
+
+    private EntryIndex(long markSegment, long markOffset, Map<String, Header> headers, Map<String, RecordPointer> pointers) {
+        this.markSegment = markSegment;
+        this.markOffset = markOffset;
+        this.headers = headers;
+        this.pointers = pointers;
+    }
+
+    /**
+     * Reads the whole index into memory with one channel read, decrypting it first if {@code cipher} is given.
+     * The file is closed before this returns, so it can be replaced right away. Returns {@code null} if the file
+     * is missing or unusable, in which case the caller rebuilds from the segments.
+     */
+    static EntryIndex read(Path path, EntryCipher cipher) {
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(channel.size()));
+            SegmentLogStore.readFully(channel, buffer, 0);
+            buffer.flip();
+            if (cipher != null) {
+                buffer = cipher.open(buffer);
+            }
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            long markSegment = buffer.getLong();
+            long markOffset = buffer.getLong();
+            int count = buffer.getInt();
+            Map<String, Header> headers = new HashMap<>(count * 2);
+            Map<String, RecordPointer> pointers = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                String id = readString(buffer);
+                String title = readString(buffer);
+                String preview = readString(buffer);
+                long created = buffer.getLong();
+                long modified = buffer.getLong();
+                RecordPointer pointer = new RecordPointer(buffer.getLong(), buffer.getLong(), buffer.getInt());
+                headers.put(id, new Header(id, title, preview, created, modified));
+                pointers.put(id, pointer);
+            }
+            return new EntryIndex(markSegment, markOffset, headers, pointers);
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException
+                 | ArithmeticException e) {
+            System.err.println("Ignoring unreadable entry index " + path + ": " + e);
+            return null;
+        }
+    }
+
+    static void write(Path path, long markSegment, long markOffset, Map<String, RecordPointer> pointers,
+                      Map<String, Header> headers, EntryCipher cipher) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(temp.toFile())) {
+            if (cipher == null) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos, 64 * 1024));
+                writeTo(out, markSegment, markOffset, pointers, headers);
+                out.flush();
+            } else {
+                // The plain index only ever exists in memory
+                ByteArrayOutputStream plain = new ByteArrayOutputStream(64 * 1024);
+                DataOutputStream out = new DataOutputStream(plain);
+                writeTo(out, markSegment, markOffset, pointers, headers);
+                out.flush();
+                ByteBuffer sealed = cipher.seal(ByteBuffer.wrap(plain.toByteArray()));
+                fos.write(sealed.array(), sealed.arrayOffset() + sealed.position(), sealed.remaining());
+            }
+            fos.getFD().sync();
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeTo(DataOutputStream out, long markSegment, long markOffset,
+                                Map<String, RecordPointer> pointers, Map<String, Header> headers) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(markSegment);
+        out.writeLong(markOffset);
+        out.writeInt(pointers.size());
+        for (Map.Entry<String, RecordPointer> e : pointers.entrySet()) {
+            Header h = headers.get(e.getKey());
+            RecordPointer p = e.getValue();
+            writeString(out, h.id);
+            writeString(out, h.title);
+            writeString(out, h.preview);
+            out.writeLong(h.createdMillis);
+            out.writeLong(h.modifiedMillis);
+            out.writeLong(p.segmentId);
+            out.writeLong(p.offset);
+            out.writeInt(p.length);
+        }
+    }
+
+    static long toMillis(LocalDateTime dateTime) {
+        return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    static LocalDateTime fromMillis(long millis) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000L), (int) Math.floorMod(millis, 1000L) * 1_000_000, ZoneOffset.UTC);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = (s == null ? "" : s).getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,81 @@
+package com.diary.storage;
+
+import com.diary.model.DiaryEntry;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Storage backend used by {@link com.diary.util.FileManager}.
+ */
+public interface EntryStore extends Closeable {
+
+    void save(DiaryEntry entry) throws IOException;
+
+    void delete(String id) throws IOException;
+
+    List<DiaryEntry> loadAll() throws IOException;
+
+    /**
+     * Entries with only their header filled in; the content is read from the store on first access.
+     * Stores without a header index simply return fully loaded entries.
+     */
+    default List<DiaryEntry> loadSummaries() throws IOException {
+        return loadAll();
+    }
+
+    /**
+     * Passes every stored entry to {@code consumer} one at a time, without keeping them all in memory.
+     */
+    default void scan(Consumer<DiaryEntry> consumer) throws IOException {
+        loadAll().forEach(consumer);
+    }
+
+    /**
+     * Whether the store holds no entries. Implementations answer this without reading any entry.
+     */
+    default boolean isEmpty() throws IOException {
+        return loadAll().isEmpty();
+    }
+
+    /**
+     * Returns the entry with the given id, or {@code null} if there is none.
+     */
+    DiaryEntry load(String id) throws IOException;
+
+    /**
+     * Whether another process writes this store's files, so this one only reads them.
+     */
+    default boolean isReadOnly() {
+        return false;
+    }
+
+    /**
+     * Directories holding this store's files, watched for changes made by other processes.
+     */
+    default List<Path> directories() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * Catches up with changes other processes made to the store's files and returns the entries they affected,
+     * reading only those. {@code changed} lists the files reported as changed, or is {@code null} when that is
+     * not known (e.g. the watcher lost events) and the store should compare its directory with what it knows.
+     * Changes this store made itself are not reported.
+     */
+    default StoreChanges refresh(Collection<Path> changed) throws IOException {
+        return StoreChanges.NONE;
+    }
+
+    /**
+     * Forces everything written so far to the storage device.
+     */
+    void sync() throws IOException;
+
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,34 @@
+package com.diary.storage;
+
+/**
+ * Location of one record inside a log segment: segment id, byte offset and total record length.
+ */
+final class RecordPointer {
+    final long segmentId;
+    final long offset;
+    final int length;
+
+    RecordPointer(long segmentId, long offset, int length) {
+        this.segmentId = segmentId;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof RecordPointer)) return false;
+        RecordPointer other = (RecordPointer) o;
+        return segmentId == other.segmentId && offset == other.offset && length == other.length;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(segmentId) * 31 + Long.hashCode(offset);
+    }
+
+    static int compare(RecordPointer a, RecordPointer b) {
+        int bySegment = Long.compare(a.segmentId, b.segmentId);
+        return bySegment != 0 ? bySegment : Long.compare(a.offset, b.offset);
+    }
+}
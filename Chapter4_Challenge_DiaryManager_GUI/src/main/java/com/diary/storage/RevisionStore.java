@@ -0,0 +1,435 @@
+package com.diary.storage;
+
+import com.diary.model.DiaryEntry;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Revision history of every entry, kept in one append-only file ({@code revisions.log}).
+ *
+ * <p>An entry's history is a chain of records: a full snapshot followed by {@link Delta}s, each against the
+ * version before it. A new snapshot is written once the chain since the last one has {@link #MAX_CHAIN}
+ * deltas or its deltas add up to more than the snapshot itself, so rebuilding any version reads at most one
+ * snapshot and a bounded number of small deltas.
+ *
+ * <p>Record layout: {@code [int crc32][int length][byte kind][short keyLength][key][long savedMillis]
+ * [int titleLength][title][payload]}. {@code length} and the CRC cover everything after the length field. Only
+ * the record positions are kept in memory. On open the log is cut off at the first torn or corrupt record.
+ *
+ * <p>Dropping an entry's history only appends a marker, so the file is compacted: the records of live chains
+ * are copied to a new file that replaces the old one. This happens on open whenever anything was dropped, and
+ * while running once dropped records make up half of the file, so a deleted entry's text does not stay on disk.
+ *
+ * <p>With an {@link EntryCipher}, the title moves into the payload ({@code [int titleLength][title][payload]})
+ * and that is encrypted, so only the entry id, kind and time of each revision stay readable.
+ */
+public class RevisionStore implements Closeable {
+    public static final int MAX_CHAIN = 16;
+
+    static final byte KIND_SNAPSHOT = 1;
+    static final byte KIND_DELTA = 2;
+    static final byte KIND_DROP = 3;
+
+    private static final String FILE_NAME = "revisions.log";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int LENGTH_PREFIX_BYTES = 8;
+
+    private final Path file;
+    private final EntryCipher cipher;
+    private final Map<String, List<Pointer>> history = new HashMap<>();
+    private FileChannel channel;
+    private long size;
+    // Bytes of the records in history; the rest of the file is dropped chains and drop markers
+    private long liveBytes;
+
+    private static final class Pointer {
+        final long offset;
+        final int length;
+        final byte kind;
+
+        Pointer(long offset, int length, byte kind) {
+            this.offset = offset;
+            this.length = length;
+            this.kind = kind;
+        }
+    }
+
+    private static final class Record {
+        byte kind;
+        long savedMillis;
+        String title;
+        byte[] payload;
+    }
+
+    /**
+     * One saved version of an entry, as listed by {@link #list}. Revision numbers start at 1.
+     */
+    public static class Revision {
+        private final String entryId;
+        private final int number;
+        private final LocalDateTime savedAt;
+        private final String title;
+        private final boolean snapshot;
+        private final int storedBytes;
+
+        Revision(String entryId, int number, LocalDateTime savedAt, String title, boolean snapshot, int storedBytes) {
+            this.entryId = entryId;
+            this.number = number;
+            this.savedAt = savedAt;
+            this.title = title;
+            this.snapshot = snapshot;
+            this.storedBytes = storedBytes;
+        }
+
+        public String getEntryId() {
+            return entryId;
+        }
+
+        public int getNumber() {
+            return number;
+        }
+
+        public LocalDateTime getSavedAt() {
+            return savedAt;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public boolean isSnapshot() {
+            return snapshot;
+        }
+
+        /**
+         * Bytes this revision takes on disk, record header included.
+         */
+        public int getStoredBytes() {
+            return storedBytes;
+        }
+    }
+
+    public RevisionStore(Path directory) throws IOException {
+        this(directory, null);
+    }
+
+    /**
+     * @param cipher encrypts titles and contents, or {@code null} to store them as plain bytes
+     */
+    public RevisionStore(Path directory, EntryCipher cipher) throws IOException {
+        this.cipher = cipher;
+        Files.createDirectories(directory);
+        this.file = directory.resolve(FILE_NAME);
+        Files.deleteIfExists(file.resolveSibling(FILE_NAME + TEMP_SUFFIX));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        size = replay();
+        if (liveBytes < size) {
+            compact();
+        }
+    }
+
+    /**
+     * Appends {@code entry} as the newest revision of its history. Saving the same title and content as the
+     * newest revision records nothing. If the chain cannot be read back, the revision is stored as a snapshot.
+     */
+    public synchronized void append(DiaryEntry entry) throws IOException {
+        String id = entry.getId();
+        byte[] content = utf8(entry.getContent());
+        List<Pointer> chain = history.get(id);
+        byte kind = KIND_SNAPSHOT;
+        byte[] payload = content;
+        if (chain != null && !chain.isEmpty()) {
+            Record newest = null;
+            byte[] previous = null;
+            try {
+                newest = read(chain.get(chain.size() - 1));
+                previous = reconstruct(chain, chain.size() - 1, newest);
+            } catch (IOException e) {
+                // A delta against a version that cannot be rebuilt would be lost too; start over with a snapshot
+                System.err.println("Revision history of entry " + id + " is damaged: " + e.getMessage());
+            }
+            if (previous != null) {
+                if (Arrays.equals(previous, content) && Objects.equals(newest.title, entry.getTitle())) {
+                    return;
+                }
+                byte[] delta = Delta.create(previous, content);
+                if (!needsSnapshot(chain, delta.length)) {
+                    kind = KIND_DELTA;
+                    payload = delta;
+                }
+            }
+        }
+        Pointer pointer = write(kind, id, System.currentTimeMillis(), entry.getTitle(), payload);
+        history.computeIfAbsent(id, k -> new ArrayList<>()).add(pointer);
+        liveBytes += LENGTH_PREFIX_BYTES + pointer.length;
+    }
+
+    public synchronized boolean hasHistory(String id) {
+        return history.containsKey(id);
+    }
+
+    /**
+     * Forgets an entry's history, e.g. after the entry was deleted. Its bytes are removed by the next compaction.
+     */
+    public synchronized void drop(String id) throws IOException {
+        List<Pointer> chain = history.remove(id);
+        if (chain == null) {
+            return;
+        }
+        for (Pointer p : chain) {
+            liveBytes -= LENGTH_PREFIX_BYTES + p.length;
+        }
+        write(KIND_DROP, id, System.currentTimeMillis(), "", new byte[0]);
+        if ((size - liveBytes) * 2 >= size) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the file with only the records of histories that were not dropped. Records are copied as they
+     * are, so this works without decrypting them.
+     */
+    public synchronized void compact() throws IOException {
+        List<Map.Entry<Pointer, String>> live = new ArrayList<>();
+        for (Map.Entry<String, List<Pointer>> e : history.entrySet()) {
+            for (Pointer p : e.getValue()) {
+                live.add(new AbstractMap.SimpleImmutableEntry<>(p, e.getKey()));
+            }
+        }
+        // Copy in file order so the read stays sequential and each chain keeps its order
+        live.sort(Comparator.comparingLong(e -> e.getKey().offset));
+
+        Path temp = file.resolveSibling(FILE_NAME + TEMP_SUFFIX);
+        Map<String, List<Pointer>> moved = new HashMap<>();
+        long position = 0;
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (Map.Entry<Pointer, String> e : live) {
+                Pointer p = e.getKey();
+                ByteBuffer record = ByteBuffer.allocate(LENGTH_PREFIX_BYTES + p.length);
+                SegmentLogStore.readFully(channel, record, p.offset);
+                record.flip();
+                SegmentLogStore.writeFully(out, record, position);
+                moved.computeIfAbsent(e.getValue(), k -> new ArrayList<>()).add(new Pointer(position, p.length, p.kind));
+                position += LENGTH_PREFIX_BYTES + p.length;
+            }
+            out.force(true);
+        }
+        channel.close();
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        history.clear();
+        history.putAll(moved);
+        size = position;
+        liveBytes = position;
+    }
+
+    /**
+     * All revisions of an entry, oldest first.
+     */
+    public synchronized List<Revision> list(String id) throws IOException {
+        List<Pointer> chain = history.getOrDefault(id, Collections.emptyList());
+        List<Revision> revisions = new ArrayList<>(chain.size());
+        for (int i = 0; i < chain.size(); i++) {
+            Pointer p = chain.get(i);
+            Record record = read(p);
+            revisions.add(new Revision(id, i + 1, toDateTime(record.savedMillis), record.title,
+                    p.kind == KIND_SNAPSHOT, LENGTH_PREFIX_BYTES + p.length));
+        }
+        return revisions;
+    }
+
+    /**
+     * Rebuilds the content of revision {@code number} (1-based) of an entry.
+     */
+    public synchronized String content(String id, int number) throws IOException {
+        List<Pointer> chain = history.get(id);
+        if (chain == null || number < 1 || number > chain.size()) {
+            throw new IOException("Entry " + id + " has no revision " + number);
+        }
+        return new String(reconstruct(chain, number - 1), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Size of the history file in bytes.
+     */
+    public synchronized long sizeOnDisk() {
+        return size;
+    }
+
+    public synchronized void sync() throws IOException {
+        channel.force(false);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel.isOpen()) {
+            channel.force(true);
+            channel.close();
+        }
+    }
+
+    private boolean needsSnapshot(List<Pointer> chain, int deltaLength) {
+        int snapshotIndex = lastSnapshot(chain, chain.size() - 1);
+        int deltas = chain.size() - 1 - snapshotIndex;
+        if (deltas >= MAX_CHAIN) {
+            return true;
+        }
+        long deltaBytes = deltaLength;
+        for (int i = snapshotIndex + 1; i < chain.size(); i++) {
+            deltaBytes += chain.get(i).length;
+        }
+        return deltaBytes > chain.get(snapshotIndex).length;
+    }
+
+    private byte[] reconstruct(List<Pointer> chain, int index) throws IOException {
+        return reconstruct(chain, index, read(chain.get(index)));
+    }
+
+    /**
+     * Rebuilds revision {@code index} when its record {@code last} has already been read.
+     */
+    private byte[] reconstruct(List<Pointer> chain, int index, Record last) throws IOException {
+        int snapshotIndex = lastSnapshot(chain, index);
+        byte[] content = snapshotIndex == index ? last.payload : read(chain.get(snapshotIndex)).payload;
+        for (int i = snapshotIndex + 1; i <= index; i++) {
+            content = Delta.apply(content, i == index ? last.payload : read(chain.get(i)).payload);
+        }
+        return content;
+    }
+
+    private static int lastSnapshot(List<Pointer> chain, int index) {
+        for (int i = index; i >= 0; i--) {
+            if (chain.get(i).kind == KIND_SNAPSHOT) {
+                return i;
+            }
+        }
+        throw new IllegalStateException("Revision chain without a snapshot");
+    }
+
+    private Pointer write(byte kind, String id, long savedMillis, String title, byte[] payload) throws IOException {
+        byte[] key = utf8(id);
+        byte[] titleBytes = utf8(title);
+        if (cipher != null) {
+            ByteBuffer plain = ByteBuffer.allocate(4 + titleBytes.length + payload.length);
+            plain.putInt(titleBytes.length).put(titleBytes).put(payload).flip();
+            ByteBuffer sealed = cipher.seal(plain);
+            payload = Arrays.copyOfRange(sealed.array(), sealed.position(), sealed.limit());
+            titleBytes = new byte[0];
+        }
+        int length = 1 + 2 + key.length + 8 + 4 + titleBytes.length + payload.length;
+        ByteBuffer record = ByteBuffer.allocate(LENGTH_PREFIX_BYTES + length);
+        record.putInt(0).putInt(length).put(kind).putShort((short) key.length).put(key)
+              .putLong(savedMillis).putInt(titleBytes.length).put(titleBytes).put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), LENGTH_PREFIX_BYTES, length);
+        record.putInt(0, (int) crc.getValue());
+        record.flip();
+
+        long offset = size;
+        SegmentLogStore.writeFully(channel, record, offset);
+        size += record.limit();
+        return new Pointer(offset, length, kind);
+    }
+
+    private Record read(Pointer pointer) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(LENGTH_PREFIX_BYTES + pointer.length);
+        SegmentLogStore.readFully(channel, buffer, pointer.offset);
+        buffer.flip();
+        int expectedCrc = buffer.getInt();
+        buffer.getInt();
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), LENGTH_PREFIX_BYTES, pointer.length);
+        if ((int) crc.getValue() != expectedCrc) {
+            throw new IOException("Corrupt revision record at offset " + pointer.offset);
+        }
+        Record record = new Record();
+        record.kind = buffer.get();
+        int keyLength = Short.toUnsignedInt(buffer.getShort());
+        buffer.position(buffer.position() + keyLength);
+        record.savedMillis = buffer.getLong();
+        byte[] title = new byte[buffer.getInt()];
+        buffer.get(title);
+        record.title = new String(title, StandardCharsets.UTF_8);
+        if (cipher != null) {
+            buffer = cipher.open(buffer);
+            title = new byte[buffer.getInt()];
+            buffer.get(title);
+            record.title = new String(title, StandardCharsets.UTF_8);
+        }
+        record.payload = new byte[buffer.remaining()];
+        buffer.get(record.payload);
+        return record;
+    }
+
+    /**
+     * Rebuilds the in-memory chains, checking every record's CRC. Replay stops at the first record that is torn
+     * or does not match its CRC, and the file is cut off there, since nothing after it can be trusted.
+     */
+    private long replay() throws IOException {
+        long fileSize = channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(LENGTH_PREFIX_BYTES);
+        ByteBuffer body = ByteBuffer.allocate(4096);
+        CRC32 crc = new CRC32();
+        while (position + LENGTH_PREFIX_BYTES <= fileSize) {
+            header.clear();
+            SegmentLogStore.readFully(channel, header, position);
+            int expectedCrc = header.getInt(0);
+            int length = header.getInt(4);
+            if (length < 3 + 12 || position + LENGTH_PREFIX_BYTES + length > fileSize) {
+                break;
+            }
+            if (body.capacity() < length) {
+                body = ByteBuffer.allocate(Math.max(length, body.capacity() * 2));
+            }
+            body.clear().limit(length);
+            SegmentLogStore.readFully(channel, body, position + LENGTH_PREFIX_BYTES);
+            crc.reset();
+            crc.update(body.array(), 0, length);
+            if ((int) crc.getValue() != expectedCrc) {
+                break;
+            }
+            body.flip();
+            byte kind = body.get();
+            int keyLength = Short.toUnsignedInt(body.getShort());
+            if (kind < KIND_SNAPSHOT || kind > KIND_DROP || length < 3 + keyLength + 12) {
+                break;
+            }
+            String id = new String(body.array(), 3, keyLength, StandardCharsets.UTF_8);
+            if (kind == KIND_DROP) {
+                List<Pointer> dropped = history.remove(id);
+                if (dropped != null) {
+                    for (Pointer p : dropped) {
+                        liveBytes -= LENGTH_PREFIX_BYTES + p.length;
+                    }
+                }
+            } else {
+                history.computeIfAbsent(id, k -> new ArrayList<>()).add(new Pointer(position, length, kind));
+                liveBytes += LENGTH_PREFIX_BYTES + length;
+            }
+            position += LENGTH_PREFIX_BYTES + length;
+        }
+        if (position < fileSize) {
+            System.err.println("Discarding " + (fileSize - position) + " unreadable bytes at the end of the revision log");
+            channel.truncate(position);
+        }
+        return position;
+    }
+
+    private static byte[] utf8(String s) {
+        return s == null ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static LocalDateTime toDateTime(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+}
@@ -0,0 +1,773 @@
+package com.diary.storage;
+
+import com.diary.model.DiaryEntry;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Log-structured entry store. Every save or delete appends one record to the active segment file
+ * ({@code segment-<n>.log}); once a segment reaches its size limit it is sealed and a new one is started.
+ * An in-memory key directory maps each entry id to its latest record, and a background task rewrites the
+ * sealed segments without their dead records. The key directory and entry headers are saved to an
+ * {@link EntryIndex} on close and every {@value #INDEX_INTERVAL_RECORDS} records, so the next start, even after a
+ * crash, only has to replay what was appended since.
+ *
+ * <p>Record layout: {@code [int crc32][int length][byte type][short keyLength][key bytes][value bytes]}, where
+ * {@code length} counts everything after the type byte and the CRC covers the type byte and the payload.
+ * Values are written with {@link EntryCodec}; values from older versions that used Java serialization are
+ * still read and are rewritten in the new format the next time the entry is saved.
+ *
+ * <p>With an {@link EntryCipher}, every value and the index file are encrypted; values that are not are
+ * rejected. Record headers and entry ids stay readable, so replay and compaction work without the key.
+ *
+ * <p>Only one store may write a log directory: opening takes an exclusive lock on {@code store.lock}. A store
+ * opened while another process (or another store in this one) holds the lock is read-only; it never writes,
+ * truncates or compacts the segments and follows the writer through {@link #refresh}.
+ */
+public class SegmentLogStore implements EntryStore {
+    public static final long DEFAULT_MAX_SEGMENT_BYTES = 8L * 1024 * 1024;
+
+    static final byte TYPE_PUT = 1;
+    static final byte TYPE_TOMBSTONE = 2;
+    static final int RECORD_HEADER_BYTES = 9;
+    static final int INDEX_INTERVAL_RECORDS = 1000;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String COMPACT_SUFFIX = ".compact";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String INDEX_FILE = "entries.idx";
+    private static final String LOCK_FILE = "store.lock";
+    private static final long COMPACTION_INTERVAL_SECONDS = 60;
+    private static final long MIN_DEAD_BYTES = 1024 * 1024;
+
+    private final Path directory;
+    private final Path indexPath;
+    private final long maxSegmentBytes;
+    private final TreeMap<Long, FileChannel> segments = new TreeMap<>();
+    private final Map<Long, Long> liveBytes = new HashMap<>();
+    private final Map<String, RecordPointer> keyDir = new HashMap<>();
+    private final Map<String, EntryIndex.Header> headers = new HashMap<>();
+    private final ScheduledExecutorService compactor;
+    private final EntryCodec codec = new EntryCodec();
+    private final EntryCipher cipher;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private ByteBuffer readBuffer = ByteBuffer.allocate(4096);
+    private long activeId;
+    private FileChannel active;
+    private long activeSize;
+    // Records appended since the index was last written
+    private int unindexedRecords;
+    private boolean closed;
+
+    public SegmentLogStore(Path directory) throws IOException {
+        this(directory, DEFAULT_MAX_SEGMENT_BYTES, true, null);
+    }
+
+    public SegmentLogStore(Path directory, EntryCipher cipher) throws IOException {
+        this(directory, DEFAULT_MAX_SEGMENT_BYTES, true, cipher);
+    }
+
+    public SegmentLogStore(Path directory, long maxSegmentBytes, boolean backgroundCompaction) throws IOException {
+        this(directory, maxSegmentBytes, backgroundCompaction, null);
+    }
+
+    /**
+     * @param cipher encrypts values and the index, or {@code null} to store them as plain bytes
+     */
+    public SegmentLogStore(Path directory, long maxSegmentBytes, boolean backgroundCompaction, EntryCipher cipher) throws IOException {
+        this.directory = directory;
+        this.cipher = cipher;
+        this.indexPath = directory.resolve(INDEX_FILE);
+        this.maxSegmentBytes = maxSegmentBytes;
+        Files.createDirectories(directory);
+        this.lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.lock = tryLock(lockChannel);
+        if (lock == null) {
+            System.err.println(directory + " is in use by another diary; opening it read-only");
+        } else {
+            recoverInterruptedCompaction();
+        }
+
+        List<Long> ids = listSegmentIds();
+        EntryIndex index = EntryIndex.read(indexPath, cipher);
+        if (index != null && !matchesSegments(index, ids)) {
+            index = null;
+        }
+        for (long id : ids) {
+            segments.put(id, openSegment(id));
+        }
+        if (index != null) {
+            keyDir.putAll(index.pointers);
+            headers.putAll(index.headers);
+            for (RecordPointer p : index.pointers.values()) {
+                liveBytes.merge(p.segmentId, (long) p.length, Long::sum);
+            }
+            for (long id : segments.tailMap(index.markSegment, true).keySet()) {
+                replay(id, segments.get(id), id == index.markSegment ? index.markOffset : 0);
+            }
+        } else {
+            for (Map.Entry<Long, FileChannel> e : segments.entrySet()) {
+                replay(e.getKey(), e.getValue(), 0);
+            }
+        }
+        loadMissingHeaders();
+        if (segments.isEmpty()) {
+            if (!isReadOnly()) {
+                openActive(1);
+            }
+        } else {
+            activeId = segments.lastKey();
+            active = segments.get(activeId);
+            activeSize = active.size();
+        }
+
+        if (backgroundCompaction && !isReadOnly()) {
+            compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "diary-log-compactor");
+                t.setDaemon(true);
+                return t;
+            });
+            compactor.scheduleWithFixedDelay(this::compactIfNeeded,
+                    COMPACTION_INTERVAL_SECONDS, COMPACTION_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        } else {
+            compactor = null;
+        }
+    }
+
+    /**
+     * Whether another store held the directory's lock when this one opened, so this one can only read.
+     */
+    @Override
+    public boolean isReadOnly() {
+        return lock == null;
+    }
+
+    @Override
+    public synchronized void save(DiaryEntry entry) throws IOException {
+        ensureWritable();
+        // The codec's buffer is shared, so encoding happens under the store lock
+        ByteBuffer value = codec.encode(entry);
+        append(TYPE_PUT, entry.getId(), cipher == null ? value : cipher.seal(value), EntryIndex.Header.of(entry));
+    }
+
+    @Override
+    public void delete(String id) throws IOException {
+        synchronized (this) {
+            if (!keyDir.containsKey(id)) {
+                return;
+            }
+        }
+        append(TYPE_TOMBSTONE, id, ByteBuffer.allocate(0), null);
+    }
+
+    @Override
+    public synchronized List<DiaryEntry> loadAll() throws IOException {
+        ensureOpen();
+        // Read in file order so the scan stays sequential on disk
+        List<RecordPointer> pointers = new ArrayList<>(keyDir.values());
+        pointers.sort(RecordPointer::compare);
+        if (cipher != null) {
+            return decryptAll(pointers);
+        }
+        List<DiaryEntry> entries = new ArrayList<>(pointers.size());
+        for (RecordPointer pointer : pointers) {
+            try {
+                entries.add(decode(readValue(pointer)));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Reads the encrypted values in file order, then decrypts and decodes them on all cores.
+     */
+    private List<DiaryEntry> decryptAll(List<RecordPointer> pointers) throws IOException {
+        List<ByteBuffer> values = new ArrayList<>(pointers.size());
+        for (RecordPointer pointer : pointers) {
+            ByteBuffer value = readValue(pointer);
+            values.add(ByteBuffer.wrap(Arrays.copyOfRange(value.array(), value.position(), value.limit())));
+        }
+        return values.parallelStream().map(value -> {
+            try {
+                return decode(value);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    @Override
+    public synchronized List<DiaryEntry> loadSummaries() throws IOException {
+        ensureOpen();
+        List<DiaryEntry> entries = new ArrayList<>(headers.size());
+        for (EntryIndex.Header header : headers.values()) {
+            entries.add(header.toEntry(this::loadContent));
+        }
+        return entries;
+    }
+
+    /**
+     * Decodes one record at a time and only holds the store lock while reading it, so saves are not blocked
+     * for the length of the scan.
+     */
+    @Override
+    public void scan(Consumer<DiaryEntry> consumer) throws IOException {
+        List<String> ids;
+        synchronized (this) {
+            ensureOpen();
+            List<Map.Entry<String, RecordPointer>> snapshot = new ArrayList<>(keyDir.entrySet());
+            snapshot.sort((a, b) -> RecordPointer.compare(a.getValue(), b.getValue()));
+            ids = new ArrayList<>(snapshot.size());
+            for (Map.Entry<String, RecordPointer> e : snapshot) {
+                ids.add(e.getKey());
+            }
+        }
+        for (String id : ids) {
+            DiaryEntry entry = load(id);
+            if (entry != null) {
+                consumer.accept(entry);
+            }
+        }
+    }
+
+    @Override
+    public synchronized DiaryEntry load(String id) throws IOException {
+        ensureOpen();
+        RecordPointer pointer = keyDir.get(id);
+        return pointer == null ? null : decode(readValue(pointer));
+    }
+
+    @Override
+    public List<Path> directories() {
+        return Collections.singletonList(directory);
+    }
+
+    /**
+     * Picks up records another process appended to the log. The segment files are compared with what this store
+     * knows, so {@code changed} is not needed: records past the known end of the active segment and in newer
+     * segments are replayed, and only the entries they touch are decoded. If a known segment was replaced or
+     * removed (the other process compacted), the key directory is rebuilt from all segments and compared
+     * header by header.
+     */
+    @Override
+    public synchronized StoreChanges refresh(Collection<Path> changed) throws IOException {
+        ensureOpen();
+        List<Long> ids = listSegmentIds();
+        for (Map.Entry<Long, FileChannel> e : segments.entrySet()) {
+            Path path = segmentPath(e.getKey());
+            if (!ids.contains(e.getKey()) || Files.size(path) != e.getValue().size()) {
+                return rebuild(ids);
+            }
+        }
+
+        Set<String> touched = new HashSet<>();
+        if (active != null) {
+            activeSize = readRecords(activeId, active, activeSize, touched::add);
+        }
+        for (long id : ids) {
+            if (id > activeId) {
+                active = openSegment(id);
+                segments.put(id, active);
+                activeId = id;
+                activeSize = readRecords(id, active, 0, touched::add);
+            }
+        }
+        if (touched.isEmpty()) {
+            return StoreChanges.NONE;
+        }
+        loadMissingHeaders();
+
+        List<DiaryEntry> updated = new ArrayList<>();
+        Set<String> removed = new HashSet<>();
+        for (String id : touched) {
+            EntryIndex.Header header = headers.get(id);
+            if (header != null) {
+                updated.add(header.toEntry(this::loadContent));
+            } else {
+                removed.add(id);
+            }
+        }
+        return new StoreChanges(updated, removed);
+    }
+
+    private StoreChanges rebuild(List<Long> ids) throws IOException {
+        Map<String, EntryIndex.Header> previous = new HashMap<>(headers);
+        for (FileChannel channel : segments.values()) {
+            channel.close();
+        }
+        segments.clear();
+        keyDir.clear();
+        headers.clear();
+        liveBytes.clear();
+        for (long id : ids) {
+            FileChannel channel = openSegment(id);
+            segments.put(id, channel);
+            long end = readRecords(id, channel, 0, null);
+            if (id == ids.get(ids.size() - 1)) {
+                activeId = id;
+                active = channel;
+                activeSize = end;
+            }
+        }
+        if (segments.isEmpty()) {
+            if (isReadOnly()) {
+                activeId = 0;
+                active = null;
+                activeSize = 0;
+            } else {
+                openActive(1);
+            }
+        }
+        loadMissingHeaders();
+
+        List<DiaryEntry> updated = new ArrayList<>();
+        for (Map.Entry<String, EntryIndex.Header> e : headers.entrySet()) {
+            if (!e.getValue().equals(previous.remove(e.getKey()))) {
+                updated.add(e.getValue().toEntry(this::loadContent));
+            }
+        }
+        return new StoreChanges(updated, previous.keySet());
+    }
+
+    @Override
+    public synchronized void sync() throws IOException {
+        ensureOpen();
+        if (!isReadOnly()) {
+            active.force(false);
+        }
+    }
+
+    public synchronized int size() {
+        return keyDir.size();
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return keyDir.isEmpty();
+    }
+
+    /**
+     * Rewrites all sealed segments into a single segment that holds only their live records. Records are
+     * copied without holding the store lock; only the final swap blocks writers.
+     */
+    public void compact() throws IOException {
+        List<Long> sealed;
+        Map<Long, FileChannel> sources;
+        List<Map.Entry<String, RecordPointer>> live = new ArrayList<>();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            ensureWritable();
+            sources = new HashMap<>(segments.headMap(activeId, false));
+            if (sources.isEmpty()) {
+                return;
+            }
+            sealed = new ArrayList<>(new TreeSet<>(sources.keySet()));
+            for (Map.Entry<String, RecordPointer> e : keyDir.entrySet()) {
+                if (sources.containsKey(e.getValue().segmentId)) {
+                    live.add(new AbstractMap.SimpleImmutableEntry<>(e));
+                }
+            }
+        }
+        live.sort((a, b) -> RecordPointer.compare(a.getValue(), b.getValue()));
+
+        long targetId = sealed.get(sealed.size() - 1);
+        Path temp = directory.resolve(SEGMENT_PREFIX + targetId + TEMP_SUFFIX);
+        List<RecordPointer> moved = new ArrayList<>(live.size());
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long position = 0;
+            for (Map.Entry<String, RecordPointer> e : live) {
+                RecordPointer p = e.getValue();
+                ByteBuffer record = ByteBuffer.allocate(p.length);
+                readFully(sources.get(p.segmentId), record, p.offset);
+                record.flip();
+                writeFully(out, record, position);
+                moved.add(new RecordPointer(targetId, position, p.length));
+                position += p.length;
+            }
+            out.force(true);
+        }
+
+        synchronized (this) {
+            if (closed) {
+                Files.deleteIfExists(temp);
+                return;
+            }
+            // The index points into the segments we are about to replace; drop it before the commit point
+            Files.deleteIfExists(indexPath);
+            // The .compact file is the commit point: once it exists the old segments it replaces are garbage
+            Path compacted = directory.resolve(SEGMENT_PREFIX + targetId + COMPACT_SUFFIX);
+            Files.move(temp, compacted, StandardCopyOption.ATOMIC_MOVE);
+            for (long id : sealed) {
+                segments.remove(id).close();
+                liveBytes.remove(id);
+                Files.delete(segmentPath(id));
+            }
+            Files.move(compacted, segmentPath(targetId), StandardCopyOption.ATOMIC_MOVE);
+            segments.put(targetId, FileChannel.open(segmentPath(targetId), StandardOpenOption.READ, StandardOpenOption.WRITE));
+
+            long liveTotal = 0;
+            for (int i = 0; i < live.size(); i++) {
+                Map.Entry<String, RecordPointer> e = live.get(i);
+                // Entries saved or deleted while we were copying keep pointing at their newer record
+                if (e.getValue().equals(keyDir.get(e.getKey()))) {
+                    keyDir.put(e.getKey(), moved.get(i));
+                    liveTotal += moved.get(i).length;
+                }
+            }
+            liveBytes.put(targetId, liveTotal);
+            writeIndex();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (compactor != null) {
+            compactor.shutdown();
+            try {
+                compactor.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (!isReadOnly()) {
+                active.force(true);
+                writeIndex();
+            }
+            for (FileChannel channel : segments.values()) {
+                channel.close();
+            }
+            segments.clear();
+            if (lock != null) {
+                lock.release();
+            }
+            lockChannel.close();
+        }
+    }
+
+    private void compactIfNeeded() {
+        try {
+            long dead = 0;
+            long total = 0;
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                for (Map.Entry<Long, FileChannel> e : segments.headMap(activeId, false).entrySet()) {
+                    long size = e.getValue().size();
+                    total += size;
+                    dead += size - liveBytes.getOrDefault(e.getKey(), 0L);
+                }
+            }
+            if (dead >= MIN_DEAD_BYTES && dead * 2 >= total) {
+                compact();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private synchronized RecordPointer append(byte type, String id, ByteBuffer value, EntryIndex.Header header) throws IOException {
+        ensureWritable();
+        byte[] key = id.getBytes(StandardCharsets.UTF_8);
+        if (key.length > 0xFFFF) {
+            throw new IOException("Entry id too long: " + id);
+        }
+        int length = 2 + key.length + value.remaining();
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + length);
+        record.putInt(0).putInt(length).put(type).putShort((short) key.length).put(key).put(value);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 8, 1 + length);
+        record.putInt(0, (int) crc.getValue());
+        record.flip();
+
+        if (activeSize > 0 && activeSize + record.remaining() > maxSegmentBytes) {
+            roll();
+        }
+        long position = activeSize;
+        writeFully(active, record, position);
+        activeSize += record.limit();
+
+        RecordPointer pointer = new RecordPointer(activeId, position, record.limit());
+        apply(type, id, pointer);
+        if (header != null) {
+            headers.put(id, header);
+        }
+        if (++unindexedRecords >= INDEX_INTERVAL_RECORDS) {
+            // The index must not point past what is on disk, or the next start discards it
+            active.force(false);
+            writeIndex();
+        }
+        return pointer;
+    }
+
+    private void apply(byte type, String id, RecordPointer pointer) {
+        // A replayed put leaves the header missing until loadMissingHeaders decodes the record
+        headers.remove(id);
+        RecordPointer previous = type == TYPE_PUT ? keyDir.put(id, pointer) : keyDir.remove(id);
+        if (previous != null) {
+            liveBytes.merge(previous.segmentId, (long) -previous.length, Long::sum);
+        }
+        if (type == TYPE_PUT) {
+            liveBytes.merge(pointer.segmentId, (long) pointer.length, Long::sum);
+        }
+    }
+
+    private void roll() throws IOException {
+        active.force(false);
+        openActive(activeId + 1);
+        if (compactor != null) {
+            compactor.execute(this::compactIfNeeded);
+        }
+    }
+
+    private void openActive(long id) throws IOException {
+        FileChannel channel = FileChannel.open(segmentPath(id), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segments.put(id, channel);
+        activeId = id;
+        active = channel;
+        activeSize = channel.size();
+    }
+
+    /**
+     * Rebuilds the key directory from one segment. A torn or corrupt tail (e.g. after a crash mid-write)
+     * is cut off so later appends start on a record boundary.
+     */
+    private long replay(long segmentId, FileChannel channel, long position) throws IOException {
+        long end = readRecords(segmentId, channel, position, null);
+        long size = channel.size();
+        // A reader may be looking at the writer's record in progress, which is not torn
+        if (end < size && !isReadOnly()) {
+            System.err.println("Discarding " + (size - end) + " unreadable bytes at the end of " + segmentPath(segmentId));
+            channel.truncate(end);
+        }
+        return end;
+    }
+
+    /**
+     * Applies the complete, valid records from {@code position} on to the key directory and returns where they
+     * end. {@code touched}, if given, receives the id of every record applied.
+     */
+    private long readRecords(long segmentId, FileChannel channel, long position, Consumer<String> touched) throws IOException {
+        long size = channel.size();
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+        ByteBuffer body = ByteBuffer.allocate(4096);
+        CRC32 crc = new CRC32();
+        while (position + RECORD_HEADER_BYTES <= size) {
+            header.clear();
+            readFully(channel, header, position);
+            int expectedCrc = header.getInt(0);
+            int length = header.getInt(4);
+            byte type = header.get(8);
+            if (length < 2 || position + RECORD_HEADER_BYTES + length > size
+                    || (type != TYPE_PUT && type != TYPE_TOMBSTONE)) {
+                break;
+            }
+            if (body.capacity() < length) {
+                body = ByteBuffer.allocate(Math.max(length, body.capacity() * 2));
+            }
+            body.clear().limit(length);
+            readFully(channel, body, position + RECORD_HEADER_BYTES);
+            crc.reset();
+            crc.update(type);
+            crc.update(body.array(), 0, length);
+            if ((int) crc.getValue() != expectedCrc) {
+                break;
+            }
+            body.flip();
+            String id = readKey(body);
+            RecordPointer pointer = new RecordPointer(segmentId, position, RECORD_HEADER_BYTES + length);
+            apply(type, id, pointer);
+            if (touched != null) {
+                touched.accept(id);
+            }
+            position += pointer.length;
+        }
+        return position;
+    }
+
+    private void loadMissingHeaders() throws IOException {
+        List<Map.Entry<String, RecordPointer>> missing = new ArrayList<>();
+        for (Map.Entry<String, RecordPointer> e : keyDir.entrySet()) {
+            if (!headers.containsKey(e.getKey())) {
+                missing.add(e);
+            }
+        }
+        missing.sort((a, b) -> RecordPointer.compare(a.getValue(), b.getValue()));
+        for (Map.Entry<String, RecordPointer> e : missing) {
+            headers.put(e.getKey(), EntryIndex.Header.of(decode(readValue(e.getValue()))));
+        }
+    }
+
+    private boolean matchesSegments(EntryIndex index, List<Long> ids) throws IOException {
+        if (!ids.contains(index.markSegment) || Files.size(segmentPath(index.markSegment)) < index.markOffset) {
+            return false;
+        }
+        for (RecordPointer p : index.pointers.values()) {
+            if (!ids.contains(p.segmentId)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writeIndex() {
+        try {
+            EntryIndex.write(indexPath, activeId, activeSize, keyDir, headers, cipher);
+            unindexedRecords = 0;
+        } catch (IOException e) {
+            // Not fatal: the next start rebuilds the index from the segments
+            System.err.println("Could not write entry index: " + e.getMessage());
+        }
+    }
+
+    private String loadContent(String id) throws IOException {
+        DiaryEntry entry = load(id);
+        if (entry == null) {
+            throw new IOException("Entry " + id + " no longer exists");
+        }
+        return entry.getContent();
+    }
+
+    private DiaryEntry decode(ByteBuffer value) throws IOException {
+        return EntryCodec.decode(cipher == null ? value : cipher.open(value));
+    }
+
+    /**
+     * Reads a record into the shared read buffer and returns it positioned at the value. Callers hold the
+     * store lock and must decode before the next read.
+     */
+    private ByteBuffer readValue(RecordPointer pointer) throws IOException {
+        if (readBuffer.capacity() < pointer.length) {
+            readBuffer = ByteBuffer.allocate(Math.max(pointer.length, readBuffer.capacity() * 2));
+        }
+        ByteBuffer record = readBuffer;
+        record.clear().limit(pointer.length);
+        readFully(segments.get(pointer.segmentId), record, pointer.offset);
+        record.flip();
+        record.position(RECORD_HEADER_BYTES);
+        readKey(record);
+        return record;
+    }
+
+    private void recoverInterruptedCompaction() throws IOException {
+        List<Path> leftovers = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(p -> p.toString().endsWith(TEMP_SUFFIX) || p.toString().endsWith(COMPACT_SUFFIX))
+                 .forEach(leftovers::add);
+        }
+        for (Path p : leftovers) {
+            String name = p.getFileName().toString();
+            if (name.endsWith(TEMP_SUFFIX)) {
+                Files.delete(p);
+            } else if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(COMPACT_SUFFIX)) {
+                long targetId = parseSegmentId(name, COMPACT_SUFFIX);
+                for (long id : listSegmentIds()) {
+                    if (id <= targetId) {
+                        Files.delete(segmentPath(id));
+                    }
+                }
+                Files.move(p, segmentPath(targetId), StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+    }
+
+    private List<Long> listSegmentIds() throws IOException {
+        List<Long> ids = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(p -> p.getFileName().toString())
+                 .filter(n -> n.startsWith(SEGMENT_PREFIX) && n.endsWith(SEGMENT_SUFFIX))
+                 .forEach(n -> ids.add(parseSegmentId(n, SEGMENT_SUFFIX)));
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    private Path segmentPath(long id) {
+        return directory.resolve(String.format("%s%06d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    private static long parseSegmentId(String name, String suffix) {
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - suffix.length()));
+    }
+
+    private FileChannel openSegment(long id) throws IOException {
+        return isReadOnly()
+                ? FileChannel.open(segmentPath(id), StandardOpenOption.READ)
+                : FileChannel.open(segmentPath(id), StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * The directory lock, or {@code null} if another store holds it.
+     */
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Held by another store in this JVM
+            return null;
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Store is closed");
+        }
+    }
+
+    private void ensureWritable() throws IOException {
+        ensureOpen();
+        if (isReadOnly()) {
+            throw new IOException(directory + " is open read-only; another diary is writing to it");
+        }
+    }
+
+    private static String readKey(ByteBuffer buffer) {
+        int keyLength = Short.toUnsignedInt(buffer.getShort());
+        String key = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), keyLength, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + keyLength);
+        return key;
+    }
+
+    static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = channel.read(buffer, position);
+            if (n < 0) {
+                throw new EOFException("Unexpected end of segment");
+            }
+            position += n;
+        }
+    }
+
+    static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.diary.storage;
+
+import com.diary.model.DiaryEntry;
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * The original layout: one {@code <id>.ser} file per entry written with default Java serialization.
+ */
+public class SerializedFileStore implements EntryStore {
+    static final String EXTENSION = ".ser";
+
+    private final Path directory;
+    // Last seen modification stamp of every entry file, to tell other processes' changes from our own
+    private final Map<String, Stamp> known = new ConcurrentHashMap<>();
+
+    private static final class Stamp {
+        final long modified;
+        final long size;
+
+        Stamp(BasicFileAttributes attributes) {
+            this.modified = attributes.lastModifiedTime().toMillis();
+            this.size = attributes.size();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Stamp && ((Stamp) o).modified == modified && ((Stamp) o).size == size;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(modified) * 31 + Long.hashCode(size);
+        }
+    }
+
+    public SerializedFileStore(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+    }
+
+    @Override
+    public void save(DiaryEntry entry) throws IOException {
+        Path path = directory.resolve(entry.getId() + EXTENSION);
+        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(path.toFile()))) {
+            oos.writeObject(entry);
+        }
+        remember(path);
+    }
+
+    @Override
+    public void delete(String id) throws IOException {
+        Files.deleteIfExists(directory.resolve(id + EXTENSION));
+        known.remove(id);
+    }
+
+    @Override
+    public List<DiaryEntry> loadAll() throws IOException {
+        List<DiaryEntry> entries = new ArrayList<>();
+        for (Path p : listEntryFiles(directory)) {
+            try {
+                entries.add(read(p));
+                remember(p);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        return entries;
+    }
+
+    @Override
+    public void scan(Consumer<DiaryEntry> consumer) throws IOException {
+        for (Path p : listEntryFiles(directory)) {
+            try {
+                consumer.accept(read(p));
+                remember(p);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    public DiaryEntry load(String id) throws IOException {
+        Path path = directory.resolve(id + EXTENSION);
+        return Files.exists(path) ? read(path) : null;
+    }
+
+    @Override
+    public boolean isEmpty() throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return true;
+        }
+        // Stop at the first entry file instead of listing the whole directory
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            return !files.iterator().hasNext();
+        }
+    }
+
+    @Override
+    public List<Path> directories() {
+        return Collections.singletonList(directory);
+    }
+
+    /**
+     * Re-reads the entry files whose modification time or size differ from what this store last wrote or read.
+     * Without a list of changed files the whole directory is listed and compared.
+     */
+    @Override
+    public StoreChanges refresh(Collection<Path> changed) throws IOException {
+        Set<String> candidates = new HashSet<>();
+        if (changed == null) {
+            candidates.addAll(known.keySet());
+            for (Path p : listEntryFiles(directory)) {
+                candidates.add(idOf(p));
+            }
+        } else {
+            for (Path p : changed) {
+                if (p.getFileName().toString().endsWith(EXTENSION)) {
+                    candidates.add(idOf(p));
+                }
+            }
+        }
+
+        List<DiaryEntry> updated = new ArrayList<>();
+        Set<String> removed = new HashSet<>();
+        for (String id : candidates) {
+            Path path = directory.resolve(id + EXTENSION);
+            Stamp stamp = stamp(path);
+            if (stamp == null) {
+                if (known.remove(id) != null) {
+                    removed.add(id);
+                }
+            } else if (!stamp.equals(known.get(id))) {
+                try {
+                    updated.add(read(path));
+                    known.put(id, stamp);
+                } catch (IOException e) {
+                    // Most likely still being written; the next event for it picks it up
+                    System.err.println("Skipping unreadable entry file " + path + ": " + e.getMessage());
+                }
+            }
+        }
+        return new StoreChanges(updated, removed);
+    }
+
+    @Override
+    public void sync() {
+        // Each save already closed its own file; there is no shared file to force
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private void remember(Path path) {
+        Stamp stamp = stamp(path);
+        if (stamp != null) {
+            known.put(idOf(path), stamp);
+        }
+    }
+
+    private static Stamp stamp(Path path) {
+        try {
+            return new Stamp(Files.readAttributes(path, BasicFileAttributes.class));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static String idOf(Path path) {
+        String name = path.getFileName().toString();
+        return name.substring(0, name.length() - EXTENSION.length());
+    }
+
+    static List<Path> listEntryFiles(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return files;
+        }
+        try (Stream<Path> paths = Files.list(directory)) {
+            paths.filter(p -> p.getFileName().toString().endsWith(EXTENSION))
+                 .filter(Files::isRegularFile)
+                 .forEach(files::add);
+        }
+        return files;
+    }
+
+    static DiaryEntry read(Path path) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            return (DiaryEntry) ois.readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Unreadable entry file " + path, e);
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.diary.storage;
+
+import com.diary.model.DiaryEntry;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * What {@link EntryStore#refresh} found changed on disk: entries that were added or rewritten, and ids that
+ * are gone. Updated entries are header-only where the store supports it.
+ */
+public class StoreChanges {
+    public static final StoreChanges NONE = new StoreChanges(Collections.emptyList(), Collections.emptySet());
+
+    private final List<DiaryEntry> updated;
+    private final Set<String> removed;
+
+    public StoreChanges(List<DiaryEntry> updated, Set<String> removed) {
+        this.updated = updated;
+        this.removed = removed;
+    }
+
+    public List<DiaryEntry> getUpdated() {
+        return updated;
+    }
+
+    public Set<String> getRemoved() {
+        return removed;
+    }
+
+    public boolean isEmpty() {
+        return updated.isEmpty() && removed.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return updated.size() + " updated, " + removed.size() + " removed";
+    }
+}
@@ -0,0 +1,259 @@
+package com.diary.util;
+
+import com.diary.model.DiaryEntry;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size-bounded cache of entry bodies, used as the {@link DiaryEntry.ContentLoader} of the Timeline's entry
+ * handles so that only recently used HTML stays on the heap.
+ *
+ * <p>Bodies are weighted by their approximate size in bytes and evicted least recently used first once the
+ * total goes over the limit. A miss reads the entry through {@link FileManager}. A pinned body is never
+ * evicted: the entry open in the editor is pinned, and so is every body whose save has not been committed
+ * yet, because until then the store still holds the older version.
+ */
+public class ContentCache implements DiaryEntry.ContentLoader {
+    public static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+    private static final long ENTRY_OVERHEAD_BYTES = 64;
+
+    private final FileManager fileManager;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Node> nodes = new LinkedHashMap<>(64, 0.75f, true);
+    // Ids being read from the store outside the lock; only kept while a read is in progress
+    private final Map<String, Loading> loading = new HashMap<>();
+    private long residentBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    private static class Node {
+        String body;
+        long weight;
+        int pins;
+    }
+
+    private static class Loading {
+        int readers;
+        // Bumped whenever the id's body changes, so a read that started before is not cached
+        long generation;
+    }
+
+    /**
+     * Snapshot of the cache counters; see {@link #getStats()}.
+     */
+    public static class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long residentBytes;
+        private final int residentEntries;
+
+        private Stats(long hits, long misses, long evictions, long residentBytes, int residentEntries) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.residentBytes = residentBytes;
+            this.residentEntries = residentEntries;
+        }
+
+        public long getHits() {
+            return hits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public long getResidentBytes() {
+            return residentBytes;
+        }
+
+        public int getResidentEntries() {
+            return residentEntries;
+        }
+
+        public double getHitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : (double) hits / requests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("hit rate=%.1f%% (%d/%d) evictions=%d resident=%d entries, %.1f KB",
+                    getHitRate() * 100, hits, hits + misses, evictions, residentEntries, residentBytes / 1024.0);
+        }
+    }
+
+    public ContentCache(FileManager fileManager) {
+        this(fileManager, Long.getLong("diary.cache.kb", DEFAULT_MAX_BYTES / 1024) * 1024);
+    }
+
+    public ContentCache(FileManager fileManager, long maxBytes) {
+        this.fileManager = fileManager;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public String load(String id) throws IOException {
+        return load(id, false);
+    }
+
+    /**
+     * Keeps {@code id}'s body resident until a matching {@link #unpin}, loading it if needed.
+     */
+    public void pin(String id) throws IOException {
+        load(id, true);
+    }
+
+    private String load(String id, boolean pin) throws IOException {
+        while (true) {
+            Loading read;
+            long generation;
+            synchronized (this) {
+                Node node = nodes.get(id);
+                if (node != null) {
+                    hits++;
+                    if (pin) {
+                        node.pins++;
+                    }
+                    return node.body;
+                }
+                misses++;
+                read = loading.computeIfAbsent(id, k -> new Loading());
+                read.readers++;
+                generation = read.generation;
+            }
+            // Read outside the lock so one slow load does not hold up hits on other entries
+            DiaryEntry stored;
+            try {
+                stored = fileManager.loadEntry(id);
+            } catch (IOException | RuntimeException e) {
+                finishLoading(id, read);
+                throw e;
+            }
+            synchronized (this) {
+                finishLoading(id, read);
+                Node node = nodes.get(id);
+                if (node != null) {
+                    // Someone put a newer body while we were reading
+                    if (pin) {
+                        node.pins++;
+                    }
+                    return node.body;
+                }
+                if (stored == null) {
+                    throw new IOException("Entry " + id + " no longer exists");
+                }
+                if (read.generation == generation) {
+                    // The pin is counted before store can evict anything
+                    store(id, stored.getContent(), pin ? 1 : 0);
+                    return stored.getContent();
+                }
+            }
+            // Invalidated while we were reading; what we read may be the old version
+        }
+    }
+
+    /**
+     * Records a body that is being saved and pins it until {@link #unpin} is called once the save has committed.
+     */
+    public synchronized void putPinned(String id, String body) {
+        changed(id);
+        Node node = nodes.get(id);
+        int pins = node == null ? 0 : node.pins;
+        store(id, body, pins + 1);
+    }
+
+    public synchronized void unpin(String id) {
+        Node node = nodes.get(id);
+        if (node != null && node.pins > 0) {
+            node.pins--;
+            evict();
+        }
+    }
+
+    /**
+     * Replaces {@code id}'s body after the stored entry was changed by someone else. Pins are kept.
+     */
+    public synchronized void replace(String id, String body) {
+        changed(id);
+        Node node = nodes.get(id);
+        store(id, body, node == null ? 0 : node.pins);
+    }
+
+    /**
+     * Replaces {@code id}'s body with {@code body} if it still is {@code expected}, e.g. with the form a body was
+     * stored in once its save has committed. Pins are kept.
+     */
+    public synchronized void replace(String id, String expected, String body) {
+        Node node = nodes.get(id);
+        if (node != null && node.body == expected && body != expected) {
+            store(id, body, node.pins);
+        }
+    }
+
+    public synchronized void invalidate(String id) {
+        changed(id);
+        Node node = nodes.remove(id);
+        if (node != null) {
+            residentBytes -= node.weight;
+        }
+    }
+
+    public synchronized Stats getStats() {
+        return new Stats(hits, misses, evictions, residentBytes, nodes.size());
+    }
+
+    private synchronized void finishLoading(String id, Loading read) {
+        if (--read.readers == 0) {
+            loading.remove(id);
+        }
+    }
+
+    private void changed(String id) {
+        Loading read = loading.get(id);
+        if (read != null) {
+            read.generation++;
+        }
+    }
+
+    private Node store(String id, String body, int pins) {
+        Node node = new Node();
+        node.body = body;
+        node.weight = weigh(body);
+        node.pins = pins;
+        Node previous = nodes.put(id, node);
+        if (previous != null) {
+            residentBytes -= previous.weight;
+        }
+        residentBytes += node.weight;
+        evict();
+        return node;
+    }
+
+    private void evict() {
+        // Oldest first; pinned bodies stay even if that leaves the cache over its limit
+        Iterator<Map.Entry<String, Node>> it = nodes.entrySet().iterator();
+        while (residentBytes > maxBytes && it.hasNext()) {
+            Node node = it.next().getValue();
+            if (node.pins == 0) {
+                it.remove();
+                residentBytes -= node.weight;
+                evictions++;
+            }
+        }
+    }
+
+    private static long weigh(String body) {
+        // Two bytes per char is an upper bound; Latin-1 strings use one
+        return ENTRY_OVERHEAD_BYTES + (body == null ? 0 : 2L * body.length());
+    }
+}
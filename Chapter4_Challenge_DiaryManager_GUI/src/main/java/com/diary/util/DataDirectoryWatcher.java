@@ -0,0 +1,196 @@
+package com.diary.util;
+
+import com.diary.storage.StoreChanges;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches the store's files for changes made by other processes (a second instance, a sync tool) and hands
+ * them to a listener in batches.
+ *
+ * <p>Events are collected until the directories have been quiet for {@value #QUIET_MILLIS} ms, or at most
+ * {@value #MAX_DELAY_MILLIS} ms after the first one, so a burst of writes becomes one
+ * {@link FileManager#refresh} that reads only the affected entries and one call to the listener. If the watch
+ * service drops events ({@code OVERFLOW}) the store is asked to compare its whole directory instead. The
+ * listener runs on the watcher thread.
+ */
+public class DataDirectoryWatcher implements Closeable {
+    private static final long QUIET_MILLIS = 200;
+    private static final long MAX_DELAY_MILLIS = 2000;
+
+    private final FileManager fileManager;
+    private final Consumer<StoreChanges> listener;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private final Stats stats = new Stats();
+    private Thread thread;
+
+    /**
+     * Watch counters; read through {@link #getStats()}.
+     */
+    public static class Stats {
+        private long events;
+        private long batches;
+        private long rescans;
+        private long changedEntries;
+
+        private Stats copy() {
+            Stats s = new Stats();
+            s.events = events;
+            s.batches = batches;
+            s.rescans = rescans;
+            s.changedEntries = changedEntries;
+            return s;
+        }
+
+        public long getEvents() {
+            return events;
+        }
+
+        public long getBatches() {
+            return batches;
+        }
+
+        public long getRescans() {
+            return rescans;
+        }
+
+        public long getChangedEntries() {
+            return changedEntries;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("events=%d batches=%d rescans=%d changed=%d", events, batches, rescans, changedEntries);
+        }
+    }
+
+    public DataDirectoryWatcher(FileManager fileManager, Consumer<StoreChanges> listener) throws IOException {
+        this.fileManager = fileManager;
+        this.listener = listener;
+        this.watchService = FileSystems.getDefault().newWatchService();
+    }
+
+    /**
+     * Registers the store's directories and starts watching. Anything that changed before this call and after
+     * the entries were loaded is picked up by an initial rescan.
+     */
+    public synchronized void start() throws IOException {
+        if (thread != null) {
+            return;
+        }
+        for (Path directory : fileManager.watchedDirectories()) {
+            directories.put(directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), directory);
+        }
+        if (directories.isEmpty()) {
+            return;
+        }
+        thread = new Thread(this::run, "diary-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public Stats getStats() {
+        synchronized (stats) {
+            return stats.copy();
+        }
+    }
+
+    private void run() {
+        refresh(null);
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                Set<Path> changed = new HashSet<>();
+                boolean overflow = collect(key, changed);
+                // Debounce: keep collecting while events keep coming, but not forever
+                long deadline = System.currentTimeMillis() + MAX_DELAY_MILLIS;
+                long wait;
+                while ((wait = Math.min(QUIET_MILLIS, deadline - System.currentTimeMillis())) > 0) {
+                    WatchKey next = watchService.poll(wait, TimeUnit.MILLISECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    overflow |= collect(next, changed);
+                }
+                refresh(overflow ? null : changed);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+
+    /**
+     * Adds the paths of {@code key}'s events to {@code changed}; returns whether events were lost.
+     */
+    private boolean collect(WatchKey key, Set<Path> changed) {
+        Path directory = directories.get(key);
+        boolean overflow = false;
+        int count = 0;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            count++;
+            if (event.kind() == OVERFLOW) {
+                overflow = true;
+            } else if (directory != null) {
+                changed.add(directory.resolve((Path) event.context()));
+            }
+        }
+        if (!key.reset()) {
+            // The directory itself is gone; only a full comparison can tell what that means
+            overflow = true;
+        }
+        synchronized (stats) {
+            stats.events += count;
+        }
+        return overflow;
+    }
+
+    private void refresh(Collection<Path> changed) {
+        try {
+            StoreChanges changes = fileManager.refresh(changed);
+            synchronized (stats) {
+                stats.batches++;
+                stats.rescans += changed == null ? 1 : 0;
+                stats.changedEntries += changes.getUpdated().size() + changes.getRemoved().size();
+            }
+            if (!changes.isEmpty()) {
+                listener.accept(changes);
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Stops watching and waits for a refresh that is still running, so the store can be closed afterwards.
+     */
+    @Override
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        Thread running;
+        synchronized (this) {
+            running = thread;
+        }
+        if (running != null) {
+            try {
+                running.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -1,57 +1,364 @@
 package com.diary.util;
 
 import com.diary.model.DiaryEntry;
+import com.diary.storage.BlobStore;
+import com.diary.storage.EntryCipher;
+import com.diary.storage.EntryStore;
+import com.diary.storage.RevisionStore;
+import com.diary.storage.SegmentLogStore;
+import com.diary.storage.SerializedFileStore;
+import com.diary.storage.StoreChanges;
 import java.io.*;
 import java.nio.file.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-public class FileManager {
+public class FileManager implements Closeable {
     private static final String DATA_DIR = "data";
+    private static final String LOG_DIR = "log";
+    private static final String MIGRATED_DIR = "migrated";
+    private static final String REVISIONS_DIR = "revisions";
+    private static final String BLOBS_DIR = "blobs";
+    private static final String ENCRYPTION_FILE = "encryption.params";
+
+    // -Ddiary.storage=ser keeps the old one-file-per-entry layout
+    private static final String STORAGE_PROPERTY = "diary.storage";
+    // -Ddiary.data=<dir> opens another data directory, e.g. a generated load-testing corpus
+    private static final String DATA_PROPERTY = "diary.data";
+    // -Ddiary.encrypt=true encrypts a new data directory
+    private static final String ENCRYPT_PROPERTY = "diary.encrypt";
+
+    private final EntryStore store;
+    private final Path revisionsDir;
+    private final Path blobsDir;
+    private final EntryCipher cipher;
+    private RevisionStore revisions;
+    private BlobStore blobs;
 
     public FileManager() {
-        createDataDirectory();
+        this(defaultDataDirectory());
+    }
+
+    public FileManager(Path dataDir) {
+        this(dataDir, null);
+    }
+
+    /**
+     * Opens {@code dataDir} with entries, the entry index and revisions encrypted by {@code cipher} (see
+     * {@link #unlock}), or unencrypted if it is {@code null}. Images are encrypted along with the entries.
+     */
+    public FileManager(Path dataDir, EntryCipher cipher) {
+        if (cipher == null && isEncrypted(dataDir)) {
+            throw new UncheckedIOException(new IOException(dataDir + " is encrypted and needs its passphrase"));
+        }
+        this.store = openStore(dataDir, cipher);
+        this.revisionsDir = dataDir.resolve(REVISIONS_DIR);
+        this.blobsDir = dataDir.resolve(BLOBS_DIR);
+        this.cipher = cipher;
+    }
+
+    /**
+     * Wraps an existing store; entries saved this way have no revision history and keep their images inline.
+     */
+    public FileManager(EntryStore store) {
+        this.store = store;
+        this.revisionsDir = null;
+        this.blobsDir = null;
+        this.cipher = null;
+    }
+
+    /**
+     * The data directory {@link #FileManager()} opens: {@code data}, or {@code -Ddiary.data}.
+     */
+    public static Path defaultDataDirectory() {
+        return Paths.get(System.getProperty(DATA_PROPERTY, DATA_DIR));
+    }
+
+    public static boolean isEncrypted(Path dataDir) {
+        return Files.exists(dataDir.resolve(ENCRYPTION_FILE));
+    }
+
+    /**
+     * Whether opening {@code dataDir} needs a passphrase: it is encrypted already, or {@code -Ddiary.encrypt=true}
+     * asks for it to be.
+     */
+    public static boolean needsPassphrase(Path dataDir) {
+        return isEncrypted(dataDir) || Boolean.getBoolean(ENCRYPT_PROPERTY);
+    }
+
+    /**
+     * Derives the key of {@code dataDir} from {@code passphrase}; this is slow on purpose and meant to run once
+     * per session. Encryption is only turned on for a data directory without entries, since entries written
+     * before would stay readable on disk.
+     *
+     * @throws IOException if the passphrase is wrong, or the directory already holds unencrypted entries
+     */
+    public static EntryCipher unlock(Path dataDir, char[] passphrase) throws IOException {
+        if (!isEncrypted(dataDir) && hasStoredEntries(dataDir)) {
+            throw new IOException(dataDir + " already holds unencrypted entries; encryption can only be turned on for a new data directory");
+        }
+        return EntryCipher.unlock(dataDir.resolve(ENCRYPTION_FILE), passphrase);
     }
 
-    private void createDataDirectory() {
+    private static boolean hasStoredEntries(Path dataDir) throws IOException {
+        if (!Files.isDirectory(dataDir)) {
+            return false;
+        }
+        try (Stream<Path> paths = Files.walk(dataDir, 2)) {
+            return paths.filter(Files::isRegularFile)
+                        .map(p -> p.getFileName().toString())
+                        .anyMatch(name -> name.endsWith(".ser") || name.endsWith(".log"));
+        }
+    }
+
+    private static EntryStore openStore(Path dataDir, EntryCipher cipher) {
         try {
-            Files.createDirectories(Paths.get(DATA_DIR));
+            if ("ser".equals(System.getProperty(STORAGE_PROPERTY))) {
+                if (cipher != null) {
+                    throw new IOException("The .ser layout cannot be encrypted");
+                }
+                return new SerializedFileStore(dataDir);
+            }
+            SegmentLogStore logStore = new SegmentLogStore(dataDir.resolve(LOG_DIR), cipher);
+            if (!logStore.isReadOnly()) {
+                migrateSerializedEntries(dataDir, logStore);
+            }
+            return logStore;
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException("Could not open diary storage in " + dataDir, e);
         }
     }
 
-    public void saveEntry(DiaryEntry entry) throws IOException {
-        String filename = entry.getId() + ".ser";
-        Path path = Paths.get(DATA_DIR, filename);
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(path.toFile()))) {
-            oos.writeObject(entry);
+    /**
+     * One-time import of the old {@code data/<id>.ser} files into the log. The originals are moved to
+     * {@code data/migrated} only after the log has been synced, so an interrupted run simply repeats.
+     */
+    private static void migrateSerializedEntries(Path dataDir, SegmentLogStore logStore) throws IOException {
+        List<Path> legacyFiles;
+        try (Stream<Path> paths = Files.list(dataDir)) {
+            legacyFiles = paths.filter(Files::isRegularFile)
+                               .filter(p -> p.toString().endsWith(".ser"))
+                               .collect(Collectors.toList());
         }
+        if (legacyFiles.isEmpty()) {
+            return;
+        }
+
+        List<Path> imported = new ArrayList<>();
+        for (Path p : legacyFiles) {
+            try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(p)))) {
+                logStore.save((DiaryEntry) ois.readObject());
+                imported.add(p);
+            } catch (IOException | ClassNotFoundException e) {
+                System.err.println("Skipping unreadable entry file " + p + ": " + e.getMessage());
+            }
+        }
+        logStore.sync();
+
+        Path migratedDir = Files.createDirectories(dataDir.resolve(MIGRATED_DIR));
+        for (Path p : imported) {
+            Files.move(p, migratedDir.resolve(p.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+        }
+        System.out.println("Migrated " + imported.size() + " entries into " + dataDir.resolve(LOG_DIR));
+    }
+
+    public void saveEntry(DiaryEntry entry) throws IOException {
+        retainImages(entry);
+        store.save(entry);
     }
 
     public void deleteEntry(DiaryEntry entry) throws IOException {
-        String filename = entry.getId() + ".ser";
-        Path path = Paths.get(DATA_DIR, filename);
-        Files.deleteIfExists(path);
+        deleteEntry(entry.getId());
+    }
+
+    /**
+     * Saves {@code entry} and appends it to its revision history. The first time an entry that predates the
+     * history is saved, the version being overwritten is recorded first so it can still be restored. A failure
+     * to record the revision is logged; the entry is saved all the same.
+     */
+    public void saveRevision(DiaryEntry entry) throws IOException {
+        RevisionStore history = null;
+        try {
+            history = revisions();
+            if (history != null && !history.hasHistory(entry.getId())) {
+                DiaryEntry previous = store.load(entry.getId());
+                if (previous != null) {
+                    history.append(previous);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // The history is a convenience; it must not stop the entry itself from being saved
+            System.err.println("Could not record the previous revision of entry " + entry.getId() + ": " + e.getMessage());
+        }
+        retainImages(entry);
+        store.save(entry);
+        if (history != null) {
+            try {
+                history.append(entry);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Could not record a revision of entry " + entry.getId() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public void deleteEntry(String id) throws IOException {
+        store.delete(id);
+        RevisionStore history = revisions();
+        if (history != null) {
+            history.drop(id);
+        }
+        BlobStore images = blobs();
+        if (images != null) {
+            images.release(id);
+        }
+    }
+
+    /**
+     * Moves the inline images of an entry's HTML into the blob store and returns the HTML with references in
+     * their place; see {@link BlobStore#extract}.
+     */
+    public String storeImages(String html) throws IOException {
+        BlobStore images = blobs();
+        return images == null ? html : images.extract(html);
+    }
+
+    /**
+     * HTML for the editor, with image references turned into URLs it can load: {@code file:} URLs, or
+     * {@code data:} URLs in an encrypted directory.
+     */
+    public String resolveImages(String html) {
+        if (html == null || !html.contains(BlobStore.SCHEME)) {
+            return html;
+        }
+        try {
+            BlobStore images = blobs();
+            return images == null ? html : images.resolve(html);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return html;
+        }
+    }
+
+    private void retainImages(DiaryEntry entry) throws IOException {
+        String content = entry.getContent();
+        if (content != null && content.contains(BlobStore.SCHEME)) {
+            BlobStore images = blobs();
+            if (images != null) {
+                images.retain(entry.getId(), content);
+            }
+        }
+    }
+
+    public void sync() throws IOException {
+        store.sync();
+        synchronized (this) {
+            if (revisions != null) {
+                revisions.sync();
+            }
+            if (blobs != null) {
+                blobs.sync();
+            }
+        }
+    }
+
+    /**
+     * Revision history, opened on first use; {@code null} when this manager wraps a bare store.
+     */
+    public synchronized RevisionStore revisions() throws IOException {
+        if (revisions == null && revisionsDir != null) {
+            revisions = new RevisionStore(revisionsDir, cipher);
+        }
+        return revisions;
+    }
+
+    /**
+     * Image blob store, opened on first use; {@code null} when this manager wraps a bare store.
+     */
+    public synchronized BlobStore blobs() throws IOException {
+        if (blobs == null && blobsDir != null) {
+            blobs = new BlobStore(blobsDir, cipher, store.isReadOnly());
+        }
+        return blobs;
     }
 
     public List<DiaryEntry> loadAllEntries() {
-        List<DiaryEntry> entries = new ArrayList<>();
-        try (Stream<Path> paths = Files.walk(Paths.get(DATA_DIR))) {
-            paths.filter(Files::isRegularFile)
-                 .filter(p -> p.toString().endsWith(".ser"))
-                 .forEach(p -> {
-                     try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(p.toFile()))) {
-                         entries.add((DiaryEntry) ois.readObject());
-                     } catch (IOException | ClassNotFoundException e) {
-                         e.printStackTrace();
-                     }
-                 });
+        try {
+            return store.loadAll();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Entries for the Timeline: title, dates and preview come from the header index and each body is
+     * only read when {@link DiaryEntry#getContent()} is first called.
+     */
+    public List<DiaryEntry> loadEntrySummaries() {
+        try {
+            return store.loadSummaries();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    public void forEachEntry(Consumer<DiaryEntry> consumer) {
+        try {
+            store.scan(consumer);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Cheap check for "is there anything stored", without loading entries.
+     */
+    public boolean hasEntries() {
+        try {
+            return !store.isEmpty();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return true;
+        }
+    }
+
+    public DiaryEntry loadEntry(String id) throws IOException {
+        return store.load(id);
+    }
+
+    /**
+     * Directories to watch for changes made outside this process.
+     */
+    public List<Path> watchedDirectories() {
+        return store.directories();
+    }
+
+    /**
+     * Reads what other processes changed in the store; see {@link EntryStore#refresh}.
+     */
+    public StoreChanges refresh(Collection<Path> changed) throws IOException {
+        return store.refresh(changed);
+    }
+
+    @Override
+    public void close() {
+        try {
+            synchronized (this) {
+                if (revisions != null) {
+                    revisions.close();
+                }
+                if (blobs != null) {
+                    blobs.close();
+                }
+            }
+            store.close();
         } catch (IOException e) {
             e.printStackTrace();
         }
-        return entries;
     }
 }
@@ -0,0 +1,289 @@
+package com.diary.util;
+
+import com.diary.model.DiaryEntry;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.IntConsumer;
+
+/**
+ * Single write-behind pipeline in front of {@link FileManager}.
+ *
+ * <p>Saves and deletes are queued per entry id; a newer operation for an id that is still waiting replaces the
+ * older one, so each id has at most one pending write and writes to the same id can never complete out of
+ * order. One writer thread takes everything that is waiting, writes it, and then syncs the store once for the
+ * whole batch (group commit). The queue is bounded: once {@code capacity} distinct ids are waiting, new ids
+ * are rejected until the writer catches up. Saves made here are also recorded in the entry's revision history.
+ *
+ * <p>The writer also moves images pasted into a saved entry to the blob store (see {@link FileManager#storeImages}),
+ * so hashing and writing them never runs on the caller's thread.
+ */
+public class PersistenceQueue implements Closeable {
+    public static final int DEFAULT_CAPACITY = 256;
+    private static final long LINGER_MILLIS = 5;
+
+    private final FileManager fileManager;
+    private final int capacity;
+    private final boolean fsync;
+    private final Map<String, Operation> pending = new LinkedHashMap<>();
+    private final Thread writer;
+    private final Stats stats = new Stats();
+    private volatile IntConsumer depthListener = depth -> { };
+    private volatile boolean closed;
+
+    /**
+     * Commit counters; read through {@link #getStats()}.
+     */
+    public static class Stats {
+        private long submitted;
+        private long coalesced;
+        private long committed;
+        private long batches;
+        private long failed;
+        private long totalCommitNanos;
+        private long maxCommitNanos;
+        private long lastCommitNanos;
+        private int depth;
+
+        private Stats copy() {
+            Stats s = new Stats();
+            s.submitted = submitted;
+            s.coalesced = coalesced;
+            s.committed = committed;
+            s.batches = batches;
+            s.failed = failed;
+            s.totalCommitNanos = totalCommitNanos;
+            s.maxCommitNanos = maxCommitNanos;
+            s.lastCommitNanos = lastCommitNanos;
+            s.depth = depth;
+            return s;
+        }
+
+        public long getSubmitted() {
+            return submitted;
+        }
+
+        public long getCoalesced() {
+            return coalesced;
+        }
+
+        public long getCommitted() {
+            return committed;
+        }
+
+        public long getBatches() {
+            return batches;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public int getQueueDepth() {
+            return depth;
+        }
+
+        public double getAverageCommitMillis() {
+            return batches == 0 ? 0 : totalCommitNanos / 1e6 / batches;
+        }
+
+        public double getMaxCommitMillis() {
+            return maxCommitNanos / 1e6;
+        }
+
+        public double getLastCommitMillis() {
+            return lastCommitNanos / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("depth=%d submitted=%d coalesced=%d committed=%d failed=%d batches=%d commit avg=%.1fms max=%.1fms",
+                    depth, submitted, coalesced, committed, failed, batches, getAverageCommitMillis(), getMaxCommitMillis());
+        }
+    }
+
+    private static class Operation {
+        final String id;
+        final DiaryEntry entry; // null for a delete
+        final List<CompletableFuture<Void>> waiters = new ArrayList<>(1);
+
+        Operation(String id, DiaryEntry entry) {
+            this.id = id;
+            this.entry = entry;
+        }
+    }
+
+    public PersistenceQueue(FileManager fileManager) {
+        this(fileManager, DEFAULT_CAPACITY, !"false".equals(System.getProperty("diary.fsync")));
+    }
+
+    public PersistenceQueue(FileManager fileManager, int capacity, boolean fsync) {
+        this.fileManager = fileManager;
+        this.capacity = capacity;
+        this.fsync = fsync;
+        this.writer = new Thread(this::runWriter, "diary-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queues a save of {@code entry}. The caller must not modify the entry afterwards; pass a copy if it is
+     * still being edited. The future completes once the entry is committed; by then its content holds image
+     * references in place of inline images.
+     *
+     * @throws RejectedExecutionException if the queue is full or closed
+     */
+    public CompletableFuture<Void> save(DiaryEntry entry) {
+        return submit(new Operation(entry.getId(), entry));
+    }
+
+    public CompletableFuture<Void> delete(String id) {
+        return submit(new Operation(id, null));
+    }
+
+    /**
+     * Called on the writer or submitting thread whenever the number of waiting ids changes.
+     */
+    public void setDepthListener(IntConsumer listener) {
+        this.depthListener = listener;
+    }
+
+    public Stats getStats() {
+        synchronized (pending) {
+            return stats.copy();
+        }
+    }
+
+    private CompletableFuture<Void> submit(Operation op) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        int depth;
+        synchronized (pending) {
+            if (closed) {
+                throw new RejectedExecutionException("Persistence queue is closed");
+            }
+            Operation previous = pending.get(op.id);
+            if (previous == null && pending.size() >= capacity) {
+                throw new RejectedExecutionException("Too many unsaved changes (" + pending.size() + " waiting)");
+            }
+            if (previous != null) {
+                // The newer state supersedes the waiting one; its callers are told when the newer one commits
+                op.waiters.addAll(previous.waiters);
+                pending.remove(op.id);
+                stats.coalesced++;
+            }
+            op.waiters.add(future);
+            pending.put(op.id, op);
+            stats.submitted++;
+            stats.depth = depth = pending.size();
+            pending.notifyAll();
+        }
+        depthListener.accept(depth);
+        return future;
+    }
+
+    private void runWriter() {
+        while (true) {
+            List<Operation> batch;
+            synchronized (pending) {
+                while (pending.isEmpty() && !closed) {
+                    try {
+                        pending.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (pending.isEmpty()) {
+                    return;
+                }
+            }
+            // Give saves that arrive in the same burst a chance to join this commit
+            if (!closed) {
+                try {
+                    Thread.sleep(LINGER_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            synchronized (pending) {
+                batch = new ArrayList<>(pending.values());
+                pending.clear();
+                stats.depth = 0;
+            }
+            depthListener.accept(0);
+            commit(batch);
+        }
+    }
+
+    private void commit(List<Operation> batch) {
+        long start = System.nanoTime();
+        List<Operation> written = new ArrayList<>(batch.size());
+        int failed = 0;
+        for (Operation op : batch) {
+            try {
+                if (op.entry != null) {
+                    String content = op.entry.getContent();
+                    String stored = fileManager.storeImages(content);
+                    if (stored != content) {
+                        op.entry.replaceContent(stored);
+                    }
+                    fileManager.saveRevision(op.entry);
+                } else {
+                    fileManager.deleteEntry(op.id);
+                }
+                written.add(op);
+            } catch (IOException | RuntimeException e) {
+                failed++;
+                op.waiters.forEach(f -> f.completeExceptionally(e));
+            }
+        }
+
+        Exception syncFailure = null;
+        if (fsync && !written.isEmpty()) {
+            try {
+                fileManager.sync();
+            } catch (IOException e) {
+                syncFailure = e;
+            }
+        }
+        for (Operation op : written) {
+            for (CompletableFuture<Void> f : op.waiters) {
+                if (syncFailure == null) {
+                    f.complete(null);
+                } else {
+                    f.completeExceptionally(syncFailure);
+                }
+            }
+        }
+
+        long elapsed = System.nanoTime() - start;
+        synchronized (pending) {
+            stats.batches++;
+            stats.committed += syncFailure == null ? written.size() : 0;
+            stats.failed += syncFailure == null ? failed : batch.size();
+            stats.totalCommitNanos += elapsed;
+            stats.lastCommitNanos = elapsed;
+            stats.maxCommitNanos = Math.max(stats.maxCommitNanos, elapsed);
+        }
+    }
+
+    /**
+     * Stops accepting work, writes everything still waiting and waits for the writer to finish.
+     */
+    @Override
+    public void close() {
+        synchronized (pending) {
+            closed = true;
+            pending.notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
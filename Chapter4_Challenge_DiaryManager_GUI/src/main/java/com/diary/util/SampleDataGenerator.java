@@ -2,13 +2,109 @@ package com.diary.util;
 
 import com.diary.model.DiaryEntry;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.LongStream;
 
 public class SampleDataGenerator {
 
+    // Most frequent words of a generated corpus, in rank order; the rest of the vocabulary is made up
+    private static final String[] COMMON_WORDS = {
+        "the", "day", "today", "and", "was", "felt", "morning", "coffee", "work", "friend",
+        "walked", "park", "evening", "dinner", "home", "rain", "sunny", "tired", "happy", "project",
+        "meeting", "deadline", "book", "music", "movie", "family", "city", "train", "garden", "weekend",
+        "lecture", "exam", "idea", "plan", "call", "tea", "run", "quiet", "late", "early",
+        "grateful", "calm", "busy", "cooked", "learned", "wrote", "slept", "visited", "laughed", "missed"
+    };
+    private static final String[] SYLLABLES = {
+        "ka", "lo", "mi", "ren", "ta", "vo", "sil", "an", "pe", "dor", "lu", "ne", "sha", "ri", "bel", "to"
+    };
+    private static final String[] INLINE_TAGS = {"b", "i", "u"};
+
+    /**
+     * Shape of a generated load-testing corpus. Everything is derived from {@link #seed}, so the same options
+     * always produce the same entries regardless of how many threads write them.
+     */
+    public static class CorpusOptions {
+        long seed = 42;
+        long entries = 1000;
+        int medianChars = 800;
+        double sizeSigma = 0.8;
+        int minChars = 40;
+        int maxChars = 50_000;
+        double htmlDensity = 0.1;
+        LocalDate startDate = LocalDate.of(2023, 1, 1);
+        int days = 3 * 365;
+        int vocabularySize = 5000;
+        double zipfExponent = 1.1;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        public CorpusOptions seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public CorpusOptions entries(long entries) {
+            this.entries = entries;
+            return this;
+        }
+
+        /**
+         * Content length follows a log-normal distribution with this median and sigma, clamped to
+         * [{@code min}, {@code max}] characters of HTML.
+         */
+        public CorpusOptions size(int medianChars, double sigma, int min, int max) {
+            this.medianChars = medianChars;
+            this.sizeSigma = sigma;
+            this.minChars = min;
+            this.maxChars = max;
+            return this;
+        }
+
+        /**
+         * Chance (0..1) that a word is wrapped in an inline tag or that a paragraph becomes a list.
+         */
+        public CorpusOptions htmlDensity(double htmlDensity) {
+            this.htmlDensity = htmlDensity;
+            return this;
+        }
+
+        /**
+         * Created dates are spread uniformly over {@code days} days from {@code start}.
+         */
+        public CorpusOptions dates(LocalDate start, int days) {
+            this.startDate = start;
+            this.days = days;
+            return this;
+        }
+
+        /**
+         * Words are drawn from {@code size} distinct words with Zipf-distributed frequencies.
+         */
+        public CorpusOptions vocabulary(int size, double zipfExponent) {
+            this.vocabularySize = size;
+            this.zipfExponent = zipfExponent;
+            return this;
+        }
+
+        public CorpusOptions threads(int threads) {
+            this.threads = threads;
+            return this;
+        }
+    }
+
     public static void generateSampleData(FileManager fileManager) {
-        if (!fileManager.loadAllEntries().isEmpty()) {
+        if (fileManager.hasEntries()) {
             return;
         }
 
@@ -48,4 +144,156 @@ public class SampleDataGenerator {
             e.printStackTrace();
         }
     }
+
+    /**
+     * Writes a synthetic corpus through {@code fileManager} on {@code options.threads} threads and syncs it.
+     * Returns the number of entries written.
+     */
+    public static long generateCorpus(FileManager fileManager, CorpusOptions options) throws IOException, InterruptedException {
+        CorpusWriter writer = new CorpusWriter(options);
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, options.threads));
+        try {
+            pool.submit(() -> LongStream.range(0, options.entries).parallel().forEach(i -> {
+                try {
+                    fileManager.saveEntry(writer.entry(i));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            })).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            throw new IOException(cause);
+        } finally {
+            pool.shutdown();
+        }
+        fileManager.sync();
+        return options.entries;
+    }
+
+    /**
+     * Builds entry {@code i} of a corpus from a random generator seeded by the corpus seed and {@code i} alone.
+     */
+    private static class CorpusWriter {
+        private final CorpusOptions options;
+        private final String[] vocabulary;
+        private final double[] cumulative;
+
+        CorpusWriter(CorpusOptions options) {
+            this.options = options;
+            this.vocabulary = new String[Math.max(1, options.vocabularySize)];
+            SplittableRandom random = new SplittableRandom(options.seed);
+            for (int rank = 0; rank < vocabulary.length; rank++) {
+                vocabulary[rank] = rank < COMMON_WORDS.length ? COMMON_WORDS[rank] : inventWord(random, rank);
+            }
+            this.cumulative = new double[vocabulary.length];
+            double total = 0;
+            for (int rank = 0; rank < vocabulary.length; rank++) {
+                total += 1 / Math.pow(rank + 1, options.zipfExponent);
+                cumulative[rank] = total;
+            }
+        }
+
+        DiaryEntry entry(long i) {
+            SplittableRandom random = new SplittableRandom(options.seed * 0x9E3779B97F4A7C15L + i);
+            String id = new UUID(random.nextLong(), random.nextLong()).toString();
+
+            StringBuilder title = new StringBuilder();
+            int titleWords = 2 + random.nextInt(4);
+            for (int w = 0; w < titleWords; w++) {
+                String word = word(random);
+                title.append(w == 0 ? Character.toUpperCase(word.charAt(0)) + word.substring(1) : " " + word);
+            }
+
+            double size = options.medianChars * Math.exp(options.sizeSigma * random.nextGaussian());
+            int targetChars = (int) Math.max(options.minChars, Math.min(options.maxChars, size));
+            LocalDateTime created = options.startDate.atStartOfDay()
+                    .plusDays(random.nextInt(Math.max(1, options.days)))
+                    .plusMinutes(random.nextInt(24 * 60));
+            LocalDateTime modified = created.plusMinutes(random.nextInt(180));
+            return DiaryEntry.restore(id, title.toString(), content(random, targetChars), created, modified);
+        }
+
+        private String content(SplittableRandom random, int targetChars) {
+            StringBuilder html = new StringBuilder(targetChars + 64);
+            while (html.length() < targetChars) {
+                boolean list = random.nextDouble() < options.htmlDensity;
+                html.append(list ? "<ul>" : "<p>");
+                int sentences = 2 + random.nextInt(4);
+                for (int s = 0; s < sentences && html.length() < targetChars; s++) {
+                    html.append(list ? "<li>" : s > 0 ? " " : "");
+                    int words = 4 + random.nextInt(12);
+                    for (int w = 0; w < words; w++) {
+                        if (w > 0) {
+                            html.append(' ');
+                        }
+                        String word = word(random);
+                        if (random.nextDouble() < options.htmlDensity) {
+                            String tag = INLINE_TAGS[random.nextInt(INLINE_TAGS.length)];
+                            html.append('<').append(tag).append('>').append(word).append("</").append(tag).append('>');
+                        } else {
+                            html.append(word);
+                        }
+                    }
+                    html.append(list ? "</li>" : ".");
+                }
+                html.append(list ? "</ul>" : "</p>");
+            }
+            return html.toString();
+        }
+
+        private String word(SplittableRandom random) {
+            int index = Arrays.binarySearch(cumulative, random.nextDouble() * cumulative[cumulative.length - 1]);
+            return vocabulary[Math.min(index < 0 ? -index - 1 : index, vocabulary.length - 1)];
+        }
+
+        private static String inventWord(SplittableRandom random, int rank) {
+            StringBuilder sb = new StringBuilder();
+            int syllables = 2 + random.nextInt(3);
+            for (int s = 0; s < syllables; s++) {
+                sb.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+            // The rank keeps made-up words distinct
+            return sb.append(Integer.toString(rank, 36)).toString();
+        }
+    }
+
+    /**
+     * Generates a load-testing corpus without starting the UI, e.g.
+     * {@code java -cp target/classes com.diary.util.SampleDataGenerator --data data-load --entries 1000000}.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        CorpusOptions options = new CorpusOptions();
+        Path dataDir = Paths.get("data");
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i].toLowerCase(Locale.ROOT)) {
+                case "--data": dataDir = Paths.get(value); break;
+                case "--entries": options.entries(Long.parseLong(value)); break;
+                case "--seed": options.seed(Long.parseLong(value)); break;
+                case "--median-chars": options.medianChars = Integer.parseInt(value); break;
+                case "--size-sigma": options.sizeSigma = Double.parseDouble(value); break;
+                case "--max-chars": options.maxChars = Integer.parseInt(value); break;
+                case "--html-density": options.htmlDensity(Double.parseDouble(value)); break;
+                case "--start": options.startDate = LocalDate.parse(value); break;
+                case "--days": options.days = Integer.parseInt(value); break;
+                case "--vocabulary": options.vocabularySize = Integer.parseInt(value); break;
+                case "--zipf": options.zipfExponent = Double.parseDouble(value); break;
+                case "--threads": options.threads(Integer.parseInt(value)); break;
+                default:
+                    System.err.println("Unknown option " + args[i]);
+                    return;
+            }
+        }
+
+        long start = System.nanoTime();
+        try (FileManager fileManager = new FileManager(dataDir)) {
+            long written = generateCorpus(fileManager, options);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Generated %d entries in %s in %.1f s (%.0f entries/s)%n",
+                    written, dataDir, seconds, written / seconds);
+        }
+    }
 }
@@ -0,0 +1,179 @@
+package com.diary.util;
+
+import com.diary.model.DiaryEntry;
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/**
+ * Loads and prepares the body of the entry selected in the Timeline on a background thread.
+ *
+ * <p>Every {@link #load} supersedes the ones before it: a load that has not started yet is skipped, and one
+ * that finishes after a newer selection completes with {@code null}, so only the newest selection is ever
+ * shown. (A read already in progress is left to finish; interrupting it would close the store's file
+ * channels.) {@link #prefetch} reads the neighbours of the selection into the content cache on the same thread,
+ * behind the load, and is dropped as soon as the selection moves on.
+ *
+ * <p>The time from a selection to its body being shown is reported by the caller through
+ * {@link #recordLatency} and summarised in {@link #getStats()}.
+ */
+public class SelectionLoader implements Closeable {
+    private static final int LATENCY_SAMPLES = 256;
+
+    private final UnaryOperator<String> preparer;
+    private final AtomicLong latest = new AtomicLong();
+    private final Stats stats = new Stats();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "diary-selection");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Selection counters and selection-to-display latency over the last {@value #LATENCY_SAMPLES} selections.
+     */
+    public static class Stats {
+        private long requested;
+        private long superseded;
+        private long prefetched;
+        private long shown;
+        private long maxNanos;
+        private final long[] samples = new long[LATENCY_SAMPLES];
+
+        private Stats copy() {
+            Stats s = new Stats();
+            s.requested = requested;
+            s.superseded = superseded;
+            s.prefetched = prefetched;
+            s.shown = shown;
+            s.maxNanos = maxNanos;
+            System.arraycopy(samples, 0, s.samples, 0, LATENCY_SAMPLES);
+            return s;
+        }
+
+        public long getRequested() {
+            return requested;
+        }
+
+        public long getSuperseded() {
+            return superseded;
+        }
+
+        public long getPrefetched() {
+            return prefetched;
+        }
+
+        public long getShown() {
+            return shown;
+        }
+
+        public double getMaxMillis() {
+            return maxNanos / 1e6;
+        }
+
+        /**
+         * Latency percentile ({@code 0 < p <= 100}) over the recent selections, in milliseconds.
+         */
+        public double getPercentileMillis(double p) {
+            int n = (int) Math.min(shown, LATENCY_SAMPLES);
+            if (n == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(samples, n);
+            Arrays.sort(sorted);
+            return sorted[Math.max(0, (int) Math.ceil(p / 100 * n) - 1)] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("requested=%d shown=%d superseded=%d prefetched=%d latency p50=%.1fms p95=%.1fms max=%.1fms",
+                    requested, shown, superseded, prefetched, getPercentileMillis(50), getPercentileMillis(95), getMaxMillis());
+        }
+    }
+
+    /**
+     * @param preparer turns a stored body into the HTML the editor gets, e.g. resolving image references
+     */
+    public SelectionLoader(UnaryOperator<String> preparer) {
+        this.preparer = preparer;
+    }
+
+    /**
+     * Completes with the prepared body of {@code entry}, or with {@code null} if another entry was selected
+     * before it was ready.
+     */
+    public CompletableFuture<String> load(DiaryEntry entry) {
+        long sequence = latest.incrementAndGet();
+        synchronized (stats) {
+            stats.requested++;
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            if (sequence != latest.get()) {
+                countSuperseded();
+                return null;
+            }
+            String html = preparer.apply(entry.getContent());
+            if (sequence != latest.get()) {
+                countSuperseded();
+                return null;
+            }
+            return html;
+        }, executor);
+    }
+
+    /**
+     * Reads the bodies of {@code neighbours} (nearest first) after the current load, unless the selection
+     * changes first.
+     */
+    public void prefetch(List<DiaryEntry> neighbours) {
+        long sequence = latest.get();
+        for (DiaryEntry entry : neighbours) {
+            executor.execute(() -> {
+                if (sequence != latest.get() || entry.isContentLoaded()) {
+                    return;
+                }
+                try {
+                    entry.getContent();
+                    synchronized (stats) {
+                        stats.prefetched++;
+                    }
+                } catch (RuntimeException e) {
+                    // Only a guess; the entry may have been deleted meanwhile
+                }
+            });
+        }
+    }
+
+    /**
+     * Records how long it took from a selection until its body was in the editor.
+     */
+    public void recordLatency(long nanos) {
+        synchronized (stats) {
+            stats.samples[(int) (stats.shown % LATENCY_SAMPLES)] = nanos;
+            stats.shown++;
+            stats.maxNanos = Math.max(stats.maxNanos, nanos);
+        }
+    }
+
+    public Stats getStats() {
+        synchronized (stats) {
+            return stats.copy();
+        }
+    }
+
+    private void countSuperseded() {
+        synchronized (stats) {
+            stats.superseded++;
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,46 @@
+package com.diary.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records when each startup milestone was reached, in milliseconds since the JVM started, to track time to
+ * first paint. Milestones may be marked from any thread; each is kept with its first time.
+ */
+public class StartupTimer {
+    private final long jvmStartMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private final Map<String, Long> milestones = new LinkedHashMap<>();
+
+    public StartupTimer() {
+        mark("launch");
+    }
+
+    public synchronized void mark(String milestone) {
+        milestones.putIfAbsent(milestone, Math.max(0, System.currentTimeMillis() - jvmStartMillis));
+    }
+
+    /**
+     * Milliseconds from JVM start until {@code milestone}, or -1 if it has not been reached.
+     */
+    public synchronized long getMillis(String milestone) {
+        return milestones.getOrDefault(milestone, -1L);
+    }
+
+    /**
+     * Milestones in the order they were reached, each with its time and the time since the one before.
+     */
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        long previous = 0;
+        for (Map.Entry<String, Long> e : milestones.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(e.getKey()).append(" @").append(e.getValue()).append("ms (+").append(e.getValue() - previous).append(')');
+            previous = e.getValue();
+        }
+        return sb.toString();
+    }
+}
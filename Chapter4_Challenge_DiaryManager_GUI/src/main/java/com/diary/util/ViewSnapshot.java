@@ -0,0 +1,190 @@
+package com.diary.util;
+
+import com.diary.model.DiaryEntry;
+import com.diary.storage.EntryCipher;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * What the Timeline showed last time: each entry's id, title, preview and dates, in display order. Written on
+ * exit and shortly after saves, and read at launch so the Timeline can be painted before the store is open.
+ * It is only a hint; the store is always reconciled against it afterwards.
+ *
+ * <p>File layout: {@code [int magic][int version][int count]} then per entry {@code [UTF id][UTF title]
+ * [UTF preview][long createdMillis][long modifiedMillis]}. Dates are epoch millis of the local date-time taken
+ * at UTC, the same convention as the entry index. For an encrypted diary the whole file is sealed with the
+ * diary's {@link EntryCipher}.
+ */
+public final class ViewSnapshot {
+    private static final int MAGIC = 0x44565753; // "DVWS"
+    private static final int VERSION = 1;
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final String[] ids;
+    private final String[] titles;
+    private final String[] previews;
+    private final long[] created;
+    private final long[] modified;
+
+    private ViewSnapshot(int size) {
+        ids = new String[size];
+        titles = new String[size];
+        previews = new String[size];
+        created = new long[size];
+        modified = new long[size];
+    }
+
+    /**
+     * Copies the header of every entry, in list order. Cheap enough to call on the FX thread; the entries are
+     * not touched afterwards, so the snapshot can be written from another thread.
+     */
+    public static ViewSnapshot capture(List<DiaryEntry> entries) {
+        ViewSnapshot snapshot = new ViewSnapshot(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            DiaryEntry entry = entries.get(i);
+            snapshot.ids[i] = entry.getId();
+            snapshot.titles[i] = nonNull(entry.getTitle());
+            snapshot.previews[i] = nonNull(entry.getPreview());
+            snapshot.created[i] = toMillis(entry.getCreatedDate());
+            snapshot.modified[i] = toMillis(entry.getLastModifiedDate());
+        }
+        return snapshot;
+    }
+
+    public static ViewSnapshot read(Path file) {
+        return read(file, null);
+    }
+
+    /**
+     * Reads a snapshot, decrypting it with {@code cipher} if given, or returns {@code null} if there is none or
+     * it cannot be used.
+     */
+    public static ViewSnapshot read(Path file, EntryCipher cipher) {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(open(file, cipher))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            int count = in.readInt();
+            if (count < 0) {
+                return null;
+            }
+            ViewSnapshot snapshot = new ViewSnapshot(count);
+            for (int i = 0; i < count; i++) {
+                snapshot.ids[i] = in.readUTF();
+                snapshot.titles[i] = in.readUTF();
+                snapshot.previews[i] = in.readUTF();
+                snapshot.created[i] = in.readLong();
+                snapshot.modified[i] = in.readLong();
+            }
+            return snapshot;
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable view snapshot " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static InputStream open(Path file, EntryCipher cipher) throws IOException {
+        if (cipher == null) {
+            return new BufferedInputStream(Files.newInputStream(file), 64 * 1024);
+        }
+        ByteBuffer plain = cipher.open(ByteBuffer.wrap(Files.readAllBytes(file)));
+        return new ByteArrayInputStream(plain.array(), plain.position(), plain.remaining());
+    }
+
+    public void write(Path file) throws IOException {
+        write(file, null);
+    }
+
+    /**
+     * Writes the snapshot, encrypted with {@code cipher} if given, to a temporary file and moves it over
+     * {@code file}, so a crash never leaves half a snapshot behind.
+     */
+    public void write(Path file, EntryCipher cipher) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + TEMP_SUFFIX);
+        if (cipher == null) {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024))) {
+                writeTo(out);
+            }
+        } else {
+            ByteArrayOutputStream plain = new ByteArrayOutputStream(64 * 1024);
+            try (DataOutputStream out = new DataOutputStream(plain)) {
+                writeTo(out);
+            }
+            ByteBuffer sealed = cipher.seal(ByteBuffer.wrap(plain.toByteArray()));
+            Files.write(temp, Arrays.copyOfRange(sealed.array(), sealed.position(), sealed.limit()));
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            out.writeUTF(ids[i]);
+            out.writeUTF(titles[i]);
+            out.writeUTF(previews[i]);
+            out.writeLong(created[i]);
+            out.writeLong(modified[i]);
+        }
+    }
+
+    /**
+     * Header-only entries in snapshot order, reading their bodies through {@code loader}.
+     */
+    public List<DiaryEntry> toEntries(DiaryEntry.ContentLoader loader) {
+        List<DiaryEntry> entries = new ArrayList<>(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            entries.add(DiaryEntry.fromHeader(ids[i], titles[i], previews[i], fromMillis(created[i]),
+                    fromMillis(modified[i]), loader));
+        }
+        return entries;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    /**
+     * Whether {@code entries} would be shown exactly as this snapshot: same entries, order, titles, previews
+     * and dates.
+     */
+    public boolean matches(List<DiaryEntry> entries) {
+        if (entries.size() != ids.length) {
+            return false;
+        }
+        for (int i = 0; i < ids.length; i++) {
+            DiaryEntry entry = entries.get(i);
+            if (!ids[i].equals(entry.getId()) || !titles[i].equals(nonNull(entry.getTitle()))
+                    || created[i] != toMillis(entry.getCreatedDate())
+                    || modified[i] != toMillis(entry.getLastModifiedDate())
+                    || !Objects.equals(previews[i], nonNull(entry.getPreview()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String nonNull(String s) {
+        return s == null ? "" : s;
+    }
+
+    private static long toMillis(LocalDateTime dateTime) {
+        return dateTime.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static LocalDateTime fromMillis(long millis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneOffset.UTC);
+    }
+}
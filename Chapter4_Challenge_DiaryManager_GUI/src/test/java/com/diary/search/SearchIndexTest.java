@@ -0,0 +1,76 @@
+package com.diary.search;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Set;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class SearchIndexTest {
+    private SearchIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new SearchIndex();
+        index.put("coffee", "Morning coffee", "<p>A quiet morning with strong coffee.</p>");
+        index.put("walk", "Sunset walk", "<p>We walked by the river at sunset.</p>");
+        index.put("grateful", "Grateful", "<p>Three things I&#39;m grateful for: coffee, friends, <b>rain</b>.</p>");
+    }
+
+    @Test
+    void matchesWordsAsPrefixes() {
+        assertEquals(Set.of("grateful"), index.search("gra"));
+        assertEquals(Set.of("coffee", "grateful"), index.search("COFFEE"));
+        assertEquals(Set.of(), index.search("tea"));
+    }
+
+    @Test
+    void requiresEveryWordOfAGroup() {
+        assertEquals(Set.of("coffee"), index.search("coffee morning"));
+        assertEquals(Set.of(), index.search("coffee sunset"));
+    }
+
+    @Test
+    void unionsGroupsSeparatedByOr() {
+        assertEquals(Set.of("coffee", "walk"), index.search("morning OR \"sunset walk\""));
+        assertEquals(Set.of("walk", "grateful"), index.search("river | rain"));
+    }
+
+    @Test
+    void matchesQuotedWordsOnlyWhenConsecutive() {
+        assertEquals(Set.of("coffee"), index.search("\"strong coffee\""));
+        assertEquals(Set.of(), index.search("\"coffee strong\""));
+        // The title ends in "coffee" and the content starts with "a", but they are not one phrase
+        assertEquals(Set.of(), index.search("\"coffee a\""));
+    }
+
+    @Test
+    void readsTextRatherThanMarkup() {
+        assertEquals(Set.of("grateful"), index.search("\"for coffee friends rain\""));
+        assertEquals(Set.of("grateful"), index.search("i'm"));
+        assertEquals(Set.of(), index.search("\"b rain\""));
+    }
+
+    @Test
+    void forgetsReplacedAndRemovedEntries() {
+        index.put("coffee", "Evening tea", "<p>No coffee after six.</p>");
+        assertEquals(Set.of(), index.search("morning"));
+        assertEquals(Set.of("coffee"), index.search("tea"));
+
+        index.remove("walk");
+        assertEquals(Set.of(), index.search("sunset"));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    void keepsAnsweringAfterPurgingDeadDocuments() {
+        for (int i = 0; i < 3000; i++) {
+            index.put("note" + (i % 10), "Note " + i, "<p>revision " + i + " of a busy note</p>");
+        }
+        assertEquals(13, index.size());
+        assertEquals(Set.of("note9"), index.search("\"revision 2999\""));
+        assertEquals(Set.of(), index.search("\"revision 2000\""));
+        assertEquals(10, index.search("busy note").size());
+        assertEquals(Set.of("coffee", "grateful"), index.search("coffee"));
+    }
+}
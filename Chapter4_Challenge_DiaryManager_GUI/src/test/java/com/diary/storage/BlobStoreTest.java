@@ -0,0 +1,139 @@
+package com.diary.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.crypto.spec.SecretKeySpec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BlobStoreTest {
+    private static final byte[] PICTURE = "not really a png, but bytes all the same".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] OTHER_PICTURE = "a second picture".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    Path dir;
+
+    private static String html(byte[] picture) {
+        return "<p>Look:</p><img src=\"data:image/png;base64," + Base64.getEncoder().encodeToString(picture) + "\">";
+    }
+
+    private List<Path> blobs() throws IOException {
+        try (Stream<Path> files = Files.walk(dir, 2)) {
+            return files.filter(Files::isRegularFile).filter(p -> !p.getParent().equals(dir)).collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    void storesAPictureOnceHoweverOftenItIsUsed() throws IOException {
+        try (BlobStore store = new BlobStore(dir)) {
+            String first = store.extract(html(PICTURE));
+            String second = store.extract("<div>" + html(PICTURE) + "</div>");
+            assertFalse(first.contains("data:"));
+            assertTrue(first.contains(BlobStore.SCHEME));
+            store.retain("a", first);
+            store.retain("b", second);
+
+            assertEquals(1, blobs().size());
+            assertEquals(1, store.blobCount());
+            assertEquals(new String(PICTURE, StandardCharsets.UTF_8), Files.readString(blobs().get(0)));
+        }
+    }
+
+    @Test
+    void resolvesReferencesToFileUrlsAndBack() throws IOException {
+        try (BlobStore store = new BlobStore(dir)) {
+            String stored = store.extract(html(PICTURE));
+            String resolved = store.resolve(stored);
+            assertTrue(resolved.contains(blobs().get(0).toUri().toString()), resolved);
+            assertEquals(stored, store.extract(resolved));
+
+            String plain = "<p>No pictures here</p>";
+            assertSame(plain, store.extract(plain));
+            assertSame(plain, store.resolve(plain));
+        }
+    }
+
+    @Test
+    void releasingAnEntryRemovesOnlyPicturesNoOtherEntryUses() throws IOException {
+        try (BlobStore store = new BlobStore(dir)) {
+            String shared = store.extract(html(PICTURE));
+            store.retain("a", shared + store.extract(html(OTHER_PICTURE)));
+            store.retain("b", shared);
+            assertEquals(2, blobs().size());
+
+            store.release("a");
+            assertEquals(1, blobs().size());
+            assertEquals(1, store.blobCount());
+            store.release("b");
+            assertEquals(0, blobs().size());
+        }
+    }
+
+    @Test
+    void removesPicturesNothingRefersToOnOpen() throws IOException {
+        try (BlobStore store = new BlobStore(dir)) {
+            store.retain("a", store.extract(html(PICTURE)));
+            // Extracted, but the entry was never saved
+            store.extract(html(OTHER_PICTURE));
+            assertEquals(2, blobs().size());
+        }
+        try (BlobStore store = new BlobStore(dir)) {
+            assertEquals(1, blobs().size());
+            assertEquals(1, store.blobCount());
+        }
+    }
+
+    @Test
+    void leavesPicturesAloneWhenOpenedReadOnly() throws IOException {
+        try (BlobStore store = new BlobStore(dir)) {
+            store.retain("a", store.extract(html(PICTURE)));
+            // Extracted by the writer, which has not saved the entry yet
+            store.extract(html(OTHER_PICTURE));
+        }
+        try (BlobStore store = new BlobStore(dir, null, true)) {
+            assertEquals(2, blobs().size());
+            assertEquals(1, store.blobCount());
+        }
+    }
+
+    @Test
+    void keepsReferencesAcrossReopen() throws IOException {
+        String stored;
+        try (BlobStore store = new BlobStore(dir)) {
+            stored = store.extract(html(PICTURE));
+            store.retain("a", stored);
+        }
+        try (BlobStore store = new BlobStore(dir)) {
+            assertEquals(1, store.blobCount());
+            store.release("a");
+            assertEquals(0, blobs().size());
+        }
+    }
+
+    @Test
+    void encryptsPicturesOnDisk() throws IOException {
+        byte[] key = new byte[32];
+        new Random(11).nextBytes(key);
+        EntryCipher cipher = new EntryCipher(new SecretKeySpec(key, "AES"));
+        try (BlobStore store = new BlobStore(dir, cipher)) {
+            String stored = store.extract(html(PICTURE));
+            store.retain("a", stored);
+
+            String onDisk = new String(Files.readAllBytes(blobs().get(0)), StandardCharsets.ISO_8859_1);
+            assertFalse(onDisk.contains("not really a png"));
+            assertEquals(html(PICTURE), store.resolve(stored));
+        }
+    }
+}
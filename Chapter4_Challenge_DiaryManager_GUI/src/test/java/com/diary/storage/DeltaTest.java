@@ -0,0 +1,95 @@
+package com.diary.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class DeltaTest {
+    private static byte[] text(int paragraphs) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < paragraphs; i++) {
+            text.append("<p>Paragraph ").append(i).append(": the weather was fine and we walked by the river.</p>\n");
+        }
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] roundTrip(byte[] base, byte[] target) throws IOException {
+        byte[] delta = Delta.create(base, target);
+        assertArrayEquals(target, Delta.apply(base, delta));
+        return delta;
+    }
+
+    @Test
+    void smallEditCostsLittleMoreThanTheChange() throws IOException {
+        byte[] base = text(200);
+        String edited = new String(base, StandardCharsets.UTF_8).replace("Paragraph 120:", "Paragraph 120 (edited today):");
+        byte[] target = edited.getBytes(StandardCharsets.UTF_8);
+
+        byte[] delta = roundTrip(base, target);
+        assertTrue(delta.length < 64, "delta of " + delta.length + " bytes");
+    }
+
+    @Test
+    void movedParagraphIsCopiedNotInserted() throws IOException {
+        byte[] base = text(100);
+        String original = new String(base, StandardCharsets.UTF_8);
+        String paragraph = original.substring(original.indexOf("<p>Paragraph 10:"), original.indexOf("<p>Paragraph 11:"));
+        byte[] target = (paragraph + original.replace(paragraph, "")).getBytes(StandardCharsets.UTF_8);
+
+        byte[] delta = roundTrip(base, target);
+        assertTrue(delta.length < 64, "delta of " + delta.length + " bytes");
+    }
+
+    @Test
+    void handlesEmptyAndShortInputs() throws IOException {
+        byte[] empty = new byte[0];
+        byte[] shortText = "hello".getBytes(StandardCharsets.UTF_8);
+        roundTrip(empty, empty);
+        roundTrip(empty, text(3));
+        roundTrip(text(3), empty);
+        roundTrip(shortText, text(3));
+        roundTrip(text(3), shortText);
+        roundTrip(shortText, shortText);
+    }
+
+    @Test
+    void roundTripsRandomEdits() throws IOException {
+        Random random = new Random(42);
+        byte[] current = text(50);
+        for (int round = 0; round < 200; round++) {
+            byte[] next = mutate(current, random);
+            roundTrip(current, next);
+            current = next;
+        }
+    }
+
+    private static byte[] mutate(byte[] bytes, Random random) {
+        int at = bytes.length == 0 ? 0 : random.nextInt(bytes.length);
+        int removed = Math.min(bytes.length - at, random.nextInt(40));
+        byte[] inserted = new byte[random.nextInt(40)];
+        random.nextBytes(inserted);
+        byte[] out = new byte[bytes.length - removed + inserted.length];
+        System.arraycopy(bytes, 0, out, 0, at);
+        System.arraycopy(inserted, 0, out, at, inserted.length);
+        System.arraycopy(bytes, at + removed, out, at + inserted.length, bytes.length - at - removed);
+        return out;
+    }
+
+    @Test
+    void corruptDeltaIsRejected() throws IOException {
+        byte[] base = text(20);
+        byte[] target = new String(base, StandardCharsets.UTF_8).replace("river", "sea").getBytes(StandardCharsets.UTF_8);
+        byte[] delta = Delta.create(base, target);
+
+        assertThrows(IOException.class, () -> Delta.apply(base, Arrays.copyOf(delta, delta.length - 1)));
+        assertThrows(IOException.class, () -> Delta.apply(Arrays.copyOf(base, 10), delta));
+        // Target length 10, then a copy of 10 bytes from offset 100000
+        assertThrows(IOException.class, () -> Delta.apply(base, new byte[] {10, 20, (byte) 0xA0, (byte) 0x8D, 6}));
+    }
+}
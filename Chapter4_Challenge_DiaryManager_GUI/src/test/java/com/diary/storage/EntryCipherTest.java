@@ -0,0 +1,120 @@
+package com.diary.storage;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.diary.model.DiaryEntry;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Random;
+import javax.crypto.spec.SecretKeySpec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class EntryCipherTest {
+    private static final int HEADER_BYTES = 18;
+    private static final int TAG_BYTES = 16;
+
+    private final EntryCipher cipher = cipher(1);
+
+    private static EntryCipher cipher(int seed) {
+        byte[] key = new byte[32];
+        new Random(seed).nextBytes(key);
+        return new EntryCipher(new SecretKeySpec(key, "AES"));
+    }
+
+    private static byte[] plain(int length) {
+        byte[] bytes = new byte[length];
+        new Random(length).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        return Arrays.copyOfRange(buffer.array(), buffer.position(), buffer.limit());
+    }
+
+    @Test
+    void roundTripsValuesOfEveryChunkCount() throws IOException {
+        int chunk = EntryCipher.CHUNK_SIZE;
+        for (int length : new int[] {0, 1, 1000, chunk - 1, chunk, chunk + 1, 3 * chunk + 17}) {
+            byte[] plain = plain(length);
+            ByteBuffer sealed = cipher.seal(ByteBuffer.wrap(plain));
+            assertEquals(length + EntryCipher.overhead(length), sealed.remaining(), "sealed size of " + length);
+            assertTrue(EntryCipher.isSealed(sealed));
+            assertArrayEquals(plain, toArray(cipher.open(sealed)), "round trip of " + length);
+        }
+    }
+
+    @Test
+    void sealingTheSameValueTwiceGivesDifferentBytes() {
+        byte[] plain = plain(100);
+        assertFalse(Arrays.equals(toArray(cipher.seal(ByteBuffer.wrap(plain))), toArray(cipher.seal(ByteBuffer.wrap(plain)))));
+    }
+
+    @Test
+    void detectsAChangedByteInAnyChunk() throws IOException {
+        byte[] sealed = toArray(cipher.seal(ByteBuffer.wrap(plain(2 * EntryCipher.CHUNK_SIZE + 100))));
+        int[] positions = {2, HEADER_BYTES, HEADER_BYTES + EntryCipher.CHUNK_SIZE + TAG_BYTES + 5, sealed.length - 1};
+        for (int position : positions) {
+            byte[] changed = sealed.clone();
+            changed[position] ^= 1;
+            assertThrows(IOException.class, () -> cipher.open(ByteBuffer.wrap(changed)), "changed byte " + position);
+        }
+    }
+
+    @Test
+    void detectsSwappedAndDroppedChunks() {
+        int chunk = EntryCipher.CHUNK_SIZE + TAG_BYTES;
+        byte[] sealed = toArray(cipher.seal(ByteBuffer.wrap(plain(3 * EntryCipher.CHUNK_SIZE))));
+
+        byte[] swapped = sealed.clone();
+        System.arraycopy(sealed, HEADER_BYTES, swapped, HEADER_BYTES + chunk, chunk);
+        System.arraycopy(sealed, HEADER_BYTES + chunk, swapped, HEADER_BYTES, chunk);
+        assertThrows(IOException.class, () -> cipher.open(ByteBuffer.wrap(swapped)));
+
+        // Dropping the last chunk and shortening the length to match still fails: the header is authenticated
+        byte[] dropped = Arrays.copyOf(sealed, sealed.length - chunk);
+        ByteBuffer.wrap(dropped).putInt(2, 2 * EntryCipher.CHUNK_SIZE);
+        assertThrows(IOException.class, () -> cipher.open(ByteBuffer.wrap(dropped)));
+
+        assertThrows(IOException.class, () -> cipher.open(ByteBuffer.wrap(Arrays.copyOf(sealed, sealed.length - 1))));
+    }
+
+    @Test
+    void anotherKeyCannotOpenAValue() {
+        ByteBuffer sealed = cipher.seal(ByteBuffer.wrap(plain(500)));
+        assertThrows(IOException.class, () -> cipher(2).open(sealed));
+    }
+
+    @Test
+    void plainRecordsAreNotMistakenForSealedOnes() {
+        LocalDateTime now = LocalDateTime.now();
+        byte[] record = new EntryCodec().encodeToArray(DiaryEntry.restore("id", "Title", "Content", now, now));
+        assertFalse(EntryCipher.isSealed(ByteBuffer.wrap(record)));
+        assertThrows(IOException.class, () -> cipher.open(ByteBuffer.wrap(record)));
+    }
+
+    @Test
+    void fingerprintsAreStablePerKey() {
+        byte[] data = "an image".getBytes(StandardCharsets.UTF_8);
+        assertArrayEquals(cipher.fingerprint(data), cipher(1).fingerprint(data));
+        assertFalse(Arrays.equals(cipher.fingerprint(data), cipher(2).fingerprint(data)));
+    }
+
+    @Test
+    void unlockRejectsTheWrongPassphrase(@TempDir Path dir) throws IOException {
+        Path params = dir.resolve("crypto.params");
+        EntryCipher created = EntryCipher.unlock(params, "correct horse".toCharArray());
+        ByteBuffer sealed = created.seal(ByteBuffer.wrap(plain(100)));
+
+        assertArrayEquals(plain(100), toArray(EntryCipher.unlock(params, "correct horse".toCharArray()).open(sealed)));
+        assertThrows(IOException.class, () -> EntryCipher.unlock(params, "wrong".toCharArray()));
+    }
+}
@@ -0,0 +1,92 @@
+package com.diary.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.diary.model.DiaryEntry;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+class EntryCodecTest {
+    private static final LocalDateTime CREATED = LocalDateTime.of(2024, 3, 1, 9, 30, 15, 123_456_789);
+    private static final LocalDateTime MODIFIED = LocalDateTime.of(2024, 3, 2, 22, 5, 0, 1);
+
+    private static void assertSameEntry(DiaryEntry expected, DiaryEntry actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getTitle(), actual.getTitle());
+        assertEquals(expected.getContent(), actual.getContent());
+        assertEquals(expected.getCreatedDate(), actual.getCreatedDate());
+        assertEquals(expected.getLastModifiedDate(), actual.getLastModifiedDate());
+    }
+
+    @Test
+    void roundTripsEveryField() throws IOException {
+        DiaryEntry entry = DiaryEntry.restore("id-1", "Café ☕ 日記", "<p>Emoji 😀 and ümlauts</p>", CREATED, MODIFIED);
+        assertSameEntry(entry, EntryCodec.decode(new EntryCodec().encodeToArray(entry)));
+    }
+
+    @Test
+    void roundTripsNullsAndDatesBeforeTheEpoch() throws IOException {
+        LocalDateTime old = LocalDateTime.of(1899, 12, 31, 23, 59, 59, 999_999_999);
+        DiaryEntry entry = DiaryEntry.restore("id-2", null, null, old, old);
+        DiaryEntry decoded = EntryCodec.decode(new EntryCodec().encodeToArray(entry));
+        assertNull(decoded.getTitle());
+        assertSameEntry(entry, decoded);
+    }
+
+    @Test
+    void writesUtf8LikeStringGetBytes() throws IOException {
+        // An unpaired surrogate becomes '?', as String.getBytes does
+        String content = "a\uD800b 😀 é 中";
+        DiaryEntry entry = DiaryEntry.restore("id-3", "t", content, CREATED, MODIFIED);
+        byte[] encoded = new EntryCodec().encodeToArray(entry);
+        assertEquals(content.getBytes(StandardCharsets.UTF_8).length, EntryCodec.utf8Length(content));
+        assertEquals(new String(content.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8),
+                EntryCodec.decode(encoded).getContent());
+    }
+
+    @Test
+    void growsItsBufferForLargeEntriesAndReusesIt() throws IOException {
+        EntryCodec codec = new EntryCodec();
+        char[] large = new char[100_000];
+        Arrays.fill(large, 'ß');
+        DiaryEntry big = DiaryEntry.restore("big", "Big", new String(large), CREATED, MODIFIED);
+        DiaryEntry small = DiaryEntry.restore("small", "Small", "short", CREATED, MODIFIED);
+
+        assertSameEntry(big, EntryCodec.decode(codec.encodeToArray(big)));
+        assertSameEntry(small, EntryCodec.decode(codec.encodeToArray(small)));
+    }
+
+    @Test
+    void readsRecordsWrittenWithJavaSerialization() throws IOException {
+        DiaryEntry entry = DiaryEntry.restore("old-1", "Old entry", "<p>Saved by an older version</p>", CREATED, MODIFIED);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(entry);
+        }
+        ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+
+        assertSameEntry(entry, EntryCodec.decode(record));
+        assertEquals(0, record.remaining());
+    }
+
+    @Test
+    void rejectsEmptyUnknownAndTruncatedRecords() {
+        assertThrows(IOException.class, () -> EntryCodec.decode(new byte[0]));
+        assertThrows(IOException.class, () -> EntryCodec.decode(new byte[] {7, 0, 0}));
+
+        DiaryEntry entry = DiaryEntry.restore("id-4", "Title", "Some content", CREATED, MODIFIED);
+        byte[] encoded = new EntryCodec().encodeToArray(entry);
+        for (int length = 1; length < encoded.length; length++) {
+            byte[] truncated = Arrays.copyOf(encoded, length);
+            assertThrows(IOException.class, () -> EntryCodec.decode(truncated), "decoded " + length + " bytes");
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.diary.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.diary.model.DiaryEntry;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RevisionStoreTest {
+    private static final LocalDateTime CREATED = LocalDateTime.of(2024, 5, 4, 8, 0);
+
+    @TempDir
+    Path dir;
+
+    private static DiaryEntry entry(String id, String content) {
+        return DiaryEntry.restore(id, "Title " + id, content, CREATED, CREATED);
+    }
+
+    private Path log() {
+        return dir.resolve("revisions.log");
+    }
+
+    /**
+     * Flips a bit inside {@code text} where it is stored in the log.
+     */
+    private void corrupt(String text) throws IOException {
+        byte[] bytes = Files.readAllBytes(log());
+        int at = new String(bytes, StandardCharsets.ISO_8859_1).indexOf(text);
+        assertTrue(at >= 0, text + " not found in the log");
+        bytes[at] ^= 1;
+        Files.write(log(), bytes);
+    }
+
+    @Test
+    void rebuildsEveryRevisionAcrossReopen() throws IOException {
+        try (RevisionStore store = new RevisionStore(dir)) {
+            store.append(entry("a", "first version of the entry"));
+            store.append(entry("a", "first version of the entry, edited"));
+            store.append(entry("a", "first version of the entry, edited"));
+            store.append(entry("b", "another entry"));
+        }
+        try (RevisionStore store = new RevisionStore(dir)) {
+            List<RevisionStore.Revision> revisions = store.list("a");
+            assertEquals(2, revisions.size());
+            assertTrue(revisions.get(0).isSnapshot());
+            assertFalse(revisions.get(1).isSnapshot());
+            assertEquals("first version of the entry", store.content("a", 1));
+            assertEquals("first version of the entry, edited", store.content("a", 2));
+            assertEquals("another entry", store.content("b", 1));
+        }
+    }
+
+    @Test
+    void cutsTheLogOffAtACorruptRecord() throws IOException {
+        long sizeBefore;
+        try (RevisionStore store = new RevisionStore(dir)) {
+            store.append(entry("a", "kept"));
+            sizeBefore = store.sizeOnDisk();
+            store.append(entry("b", "corrupted on disk"));
+            store.append(entry("c", "after the corrupt record"));
+        }
+        corrupt("corrupted on disk");
+
+        try (RevisionStore store = new RevisionStore(dir)) {
+            assertEquals(sizeBefore, store.sizeOnDisk());
+            assertEquals(sizeBefore, Files.size(log()));
+            assertEquals("kept", store.content("a", 1));
+            assertFalse(store.hasHistory("b"));
+            assertFalse(store.hasHistory("c"));
+            store.append(entry("c", "written after recovery"));
+        }
+        try (RevisionStore store = new RevisionStore(dir)) {
+            assertEquals("written after recovery", store.content("c", 1));
+        }
+    }
+
+    @Test
+    void startsANewSnapshotWhenTheChainCannotBeRead() throws IOException {
+        try (RevisionStore store = new RevisionStore(dir)) {
+            store.append(entry("a", "a snapshot that will be damaged"));
+            store.append(entry("a", "a snapshot that will be damaged, then a delta"));
+            corrupt("a snapshot that will be damaged");
+
+            // A delta would need the damaged snapshot to be read back; a new snapshot does not
+            store.append(entry("a", "saved after the damage"));
+            assertEquals("saved after the damage", store.content("a", 3));
+        }
+    }
+}
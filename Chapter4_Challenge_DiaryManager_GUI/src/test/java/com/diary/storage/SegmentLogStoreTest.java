@@ -0,0 +1,323 @@
+package com.diary.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.diary.model.DiaryEntry;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import javax.crypto.spec.SecretKeySpec;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SegmentLogStoreTest {
+    private static final LocalDateTime CREATED = LocalDateTime.of(2024, 5, 4, 8, 0);
+
+    @TempDir
+    Path temp;
+    private Path dir;
+
+    @BeforeEach
+    void setUp() {
+        dir = temp.resolve("log");
+    }
+
+    private static DiaryEntry entry(String id, String content) {
+        return DiaryEntry.restore(id, "Title " + id, content, CREATED, CREATED.plusMinutes(content.length()));
+    }
+
+    private SegmentLogStore open() throws IOException {
+        return new SegmentLogStore(dir, SegmentLogStore.DEFAULT_MAX_SEGMENT_BYTES, false);
+    }
+
+    private List<Path> segments(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(p -> p.getFileName().toString().endsWith(".log")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private Path lastSegment() throws IOException {
+        List<Path> segments = segments(dir);
+        return segments.get(segments.size() - 1);
+    }
+
+    private static void copyDirectory(Path from, Path to) throws IOException {
+        Files.createDirectories(to);
+        try (Stream<Path> files = Files.list(from)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.copy(file, to.resolve(file.getFileName()));
+            }
+        }
+    }
+
+    @Test
+    void roundTripsEntriesAcrossReopen() throws IOException {
+        try (SegmentLogStore store = open()) {
+            store.save(entry("a", "first"));
+            store.save(entry("b", "second"));
+            store.save(entry("a", "first, edited"));
+            store.delete("b");
+            store.save(entry("c", "third"));
+        }
+        try (SegmentLogStore store = open()) {
+            assertEquals(2, store.size());
+            assertEquals("first, edited", store.load("a").getContent());
+            assertNull(store.load("b"));
+            assertEquals(CREATED.plusMinutes(5), store.load("c").getLastModifiedDate());
+            assertEquals(2, store.loadSummaries().size());
+        }
+    }
+
+    @Test
+    void rebuildsTheKeyDirectoryWithoutTheIndex() throws IOException {
+        try (SegmentLogStore store = open()) {
+            for (int i = 0; i < 50; i++) {
+                store.save(entry("e" + (i % 10), "revision " + i));
+            }
+            store.delete("e3");
+        }
+        Files.delete(dir.resolve("entries.idx"));
+        try (SegmentLogStore store = open()) {
+            assertEquals(9, store.size());
+            assertEquals("revision 49", store.load("e9").getContent());
+            assertNull(store.load("e3"));
+        }
+    }
+
+    @Test
+    void replaysRecordsWrittenAfterTheIndexAfterACrash() throws IOException {
+        Path crashed = temp.resolve("crashed");
+        try (SegmentLogStore store = open()) {
+            store.save(entry("a", "before"));
+        }
+        try (SegmentLogStore store = open()) {
+            store.save(entry("b", "after the index"));
+            store.save(entry("a", "changed after the index"));
+            store.sync();
+            // What a crash leaves behind: the index from the last close and the records synced since
+            copyDirectory(dir, crashed);
+        }
+        try (SegmentLogStore store = new SegmentLogStore(crashed, SegmentLogStore.DEFAULT_MAX_SEGMENT_BYTES, false)) {
+            assertEquals(2, store.size());
+            assertEquals("changed after the index", store.load("a").getContent());
+            assertEquals("after the index", store.load("b").getContent());
+        }
+    }
+
+    @Test
+    void writesTheIndexPeriodically() throws IOException {
+        Path crashed = temp.resolve("crashed");
+        try (SegmentLogStore store = open()) {
+            for (int i = 0; i < SegmentLogStore.INDEX_INTERVAL_RECORDS + 10; i++) {
+                store.save(entry("e" + (i % 20), "revision " + i));
+            }
+            store.sync();
+            // Never closed, so only the periodic write can have left an index behind
+            copyDirectory(dir, crashed);
+        }
+        EntryIndex index = EntryIndex.read(crashed.resolve("entries.idx"), null);
+        assertNotNull(index);
+        assertEquals(20, index.pointers.size());
+        assertTrue(index.markOffset > 0);
+
+        try (SegmentLogStore store = new SegmentLogStore(crashed, SegmentLogStore.DEFAULT_MAX_SEGMENT_BYTES, false)) {
+            assertEquals(20, store.size());
+            assertEquals("revision " + (SegmentLogStore.INDEX_INTERVAL_RECORDS + 9), store.load("e9").getContent());
+        }
+    }
+
+    @Test
+    void cutsOffATornTail() throws IOException {
+        try (SegmentLogStore store = open()) {
+            store.save(entry("a", "complete"));
+        }
+        Path segment = lastSegment();
+        long size = Files.size(segment);
+        // Half of a record: a header promising more bytes than follow
+        ByteBuffer torn = ByteBuffer.allocate(12).putInt(0).putInt(500).put(SegmentLogStore.TYPE_PUT).put(new byte[3]);
+        Files.write(segment, torn.array(), StandardOpenOption.APPEND);
+
+        try (SegmentLogStore store = open()) {
+            assertEquals(size, Files.size(segment));
+            assertEquals("complete", store.load("a").getContent());
+            store.save(entry("b", "written after recovery"));
+        }
+        try (SegmentLogStore store = open()) {
+            assertEquals("written after recovery", store.load("b").getContent());
+        }
+    }
+
+    @Test
+    void stopsReplayAtACorruptRecord() throws IOException {
+        try (SegmentLogStore store = open()) {
+            store.save(entry("a", "good"));
+            store.save(entry("b", "corrupted on disk"));
+            store.save(entry("c", "after the corrupt record"));
+        }
+        Files.delete(dir.resolve("entries.idx"));
+        Path segment = lastSegment();
+        byte[] bytes = Files.readAllBytes(segment);
+        String text = new String(bytes, StandardCharsets.ISO_8859_1);
+        bytes[text.indexOf("corrupted on disk")] ^= 1;
+        Files.write(segment, bytes);
+
+        try (SegmentLogStore store = open()) {
+            // Nothing after the first bad CRC can be trusted
+            assertEquals(1, store.size());
+            assertEquals("good", store.load("a").getContent());
+            assertNull(store.load("b"));
+            assertNull(store.load("c"));
+        }
+    }
+
+    @Test
+    void compactionKeepsOnlyLiveRecords() throws IOException {
+        try (SegmentLogStore store = new SegmentLogStore(dir, 1024, false)) {
+            for (int i = 0; i < 200; i++) {
+                store.save(entry("e" + (i % 5), "revision " + i + " of an entry that is saved over and over"));
+            }
+            store.delete("e0");
+            long before = totalSize();
+            assertTrue(segments(dir).size() > 2);
+
+            store.compact();
+            assertTrue(segments(dir).size() <= 2, "segments after compaction: " + segments(dir));
+            assertTrue(totalSize() < before / 4, "compacted " + before + " bytes to " + totalSize());
+            assertEquals(4, store.size());
+            assertEquals("revision 199 of an entry that is saved over and over", store.load("e4").getContent());
+            store.save(entry("e9", "after compaction"));
+        }
+        try (SegmentLogStore store = new SegmentLogStore(dir, 1024, false)) {
+            assertEquals(5, store.size());
+            assertNull(store.load("e0"));
+            assertEquals("after compaction", store.load("e9").getContent());
+        }
+    }
+
+    private long totalSize() throws IOException {
+        long total = 0;
+        for (Path segment : segments(dir)) {
+            total += Files.size(segment);
+        }
+        return total;
+    }
+
+    @Test
+    void finishesACompactionInterruptedAfterItsCommitPoint() throws IOException {
+        try (SegmentLogStore store = new SegmentLogStore(dir, 512, false)) {
+            for (int i = 0; i < 60; i++) {
+                store.save(entry("e" + (i % 4), "revision " + i + " with some padding to fill segments"));
+            }
+        }
+        // Before: the segments as they were. After: the same store once compacted.
+        Path before = temp.resolve("before");
+        copyDirectory(dir, before);
+        try (SegmentLogStore store = new SegmentLogStore(dir, 512, false)) {
+            store.compact();
+        }
+        List<Path> compacted = segments(dir);
+        List<Path> original = segments(before);
+        // Compaction rewrote the sealed segments into the newest of them, just before the active one
+        Path target = compacted.get(compacted.size() - 2);
+        long targetId = Long.parseLong(target.getFileName().toString().replaceAll("\\D", ""));
+
+        // A crash right after the .compact file was committed: the old segments are all still there
+        Files.copy(target, before.resolve("segment-" + targetId + ".compact"));
+        Files.delete(before.resolve("entries.idx"));
+        Files.write(before.resolve("segment-000001.tmp"), new byte[] {1, 2, 3});
+
+        try (SegmentLogStore store = new SegmentLogStore(before, 512, false)) {
+            assertEquals(compacted.size(), segments(before).size());
+            assertTrue(segments(before).size() < original.size());
+            assertFalse(Files.exists(before.resolve("segment-000001.tmp")));
+            assertEquals(4, store.size());
+            for (int i = 56; i < 60; i++) {
+                assertEquals("revision " + i + " with some padding to fill segments", store.load("e" + (i % 4)).getContent());
+            }
+        }
+    }
+
+    @Test
+    void readsRecordsWrittenWithJavaSerialization() throws IOException {
+        DiaryEntry old = entry("old", "saved by an older version");
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(serialized)) {
+            out.writeObject(old);
+        }
+        Files.createDirectories(dir);
+        Files.write(dir.resolve("segment-000001.log"), record(old.getId(), serialized.toByteArray()));
+
+        try (SegmentLogStore store = open()) {
+            assertEquals("saved by an older version", store.load("old").getContent());
+            store.save(store.load("old"));
+        }
+        try (SegmentLogStore store = open()) {
+            assertEquals("saved by an older version", store.load("old").getContent());
+        }
+    }
+
+    /**
+     * A put record in the layout the store documents.
+     */
+    private static byte[] record(String id, byte[] value) {
+        byte[] key = id.getBytes(StandardCharsets.UTF_8);
+        int length = 2 + key.length + value.length;
+        ByteBuffer record = ByteBuffer.allocate(SegmentLogStore.RECORD_HEADER_BYTES + length);
+        record.putInt(0).putInt(length).put(SegmentLogStore.TYPE_PUT).putShort((short) key.length).put(key).put(value);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 8, 1 + length);
+        record.putInt(0, (int) crc.getValue());
+        return record.array();
+    }
+
+    @Test
+    void encryptsValuesOnDisk() throws IOException {
+        byte[] key = new byte[32];
+        new Random(7).nextBytes(key);
+        EntryCipher cipher = new EntryCipher(new SecretKeySpec(key, "AES"));
+        try (SegmentLogStore store = new SegmentLogStore(dir, SegmentLogStore.DEFAULT_MAX_SEGMENT_BYTES, false, cipher)) {
+            store.save(entry("secret", "nobody should read this"));
+        }
+        String onDisk = new String(Files.readAllBytes(lastSegment()), StandardCharsets.ISO_8859_1);
+        assertFalse(onDisk.contains("nobody should read this"));
+
+        try (SegmentLogStore store = new SegmentLogStore(dir, SegmentLogStore.DEFAULT_MAX_SEGMENT_BYTES, false, cipher)) {
+            assertEquals("nobody should read this", store.load("secret").getContent());
+        }
+    }
+
+    @Test
+    void aSecondStoreOnTheSameDirectoryOnlyReads() throws IOException {
+        try (SegmentLogStore writer = open(); SegmentLogStore reader = open()) {
+            assertFalse(writer.isReadOnly());
+            assertTrue(reader.isReadOnly());
+            assertThrows(IOException.class, () -> reader.save(entry("x", "refused")));
+
+            writer.save(entry("a", "from the writer"));
+            writer.sync();
+            StoreChanges changes = reader.refresh(null);
+            assertNotNull(changes);
+            assertEquals("from the writer", reader.load("a").getContent());
+        }
+        try (SegmentLogStore store = open()) {
+            assertFalse(store.isReadOnly());
+        }
+    }
+}
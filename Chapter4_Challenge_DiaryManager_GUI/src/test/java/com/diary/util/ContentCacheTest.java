@@ -0,0 +1,178 @@
+package com.diary.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.diary.model.DiaryEntry;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ContentCacheTest {
+    private static final LocalDateTime CREATED = LocalDateTime.of(2024, 5, 4, 8, 0);
+    // Room for three of the bodies below, each weighing 64 + 2 * 100 bytes
+    private static final long MAX_BYTES = 3 * 264;
+
+    @TempDir
+    Path dir;
+    private CountingFileManager fileManager;
+
+    /**
+     * Counts reads of the store and can hold the next one until released.
+     */
+    private static class CountingFileManager extends FileManager {
+        final AtomicInteger loads = new AtomicInteger();
+        volatile CountDownLatch reading;
+        volatile CountDownLatch release;
+
+        CountingFileManager(Path dataDir) {
+            super(dataDir);
+        }
+
+        @Override
+        public DiaryEntry loadEntry(String id) throws IOException {
+            loads.incrementAndGet();
+            DiaryEntry entry = super.loadEntry(id);
+            CountDownLatch hold = release;
+            if (hold != null) {
+                release = null;
+                reading.countDown();
+                try {
+                    hold.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return entry;
+        }
+    }
+
+    @BeforeEach
+    void setUp() throws IOException {
+        fileManager = new CountingFileManager(dir);
+        for (int i = 0; i < 5; i++) {
+            save("e" + i, body(i));
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        fileManager.close();
+    }
+
+    private static String body(int i) {
+        return String.valueOf((char) ('a' + i)).repeat(100);
+    }
+
+    private void save(String id, String content) throws IOException {
+        fileManager.saveEntry(DiaryEntry.restore(id, "Title " + id, content, CREATED, CREATED));
+    }
+
+    @Test
+    void readsTheStoreOnlyOnAMiss() throws IOException {
+        ContentCache cache = new ContentCache(fileManager, MAX_BYTES);
+        assertEquals(body(0), cache.load("e0"));
+        assertEquals(body(0), cache.load("e0"));
+        assertEquals(1, fileManager.loads.get());
+
+        ContentCache.Stats stats = cache.getStats();
+        assertEquals(1, stats.getHits());
+        assertEquals(1, stats.getMisses());
+        assertEquals(1, stats.getResidentEntries());
+        assertEquals(264, stats.getResidentBytes());
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedBodyFirst() throws IOException {
+        ContentCache cache = new ContentCache(fileManager, MAX_BYTES);
+        cache.load("e0");
+        cache.load("e1");
+        cache.load("e2");
+        cache.load("e0");
+        cache.load("e3");
+
+        assertEquals(1, cache.getStats().getEvictions());
+        int loads = fileManager.loads.get();
+        cache.load("e0");
+        assertEquals(loads, fileManager.loads.get());
+        cache.load("e1");
+        assertEquals(loads + 1, fileManager.loads.get());
+    }
+
+    @Test
+    void keepsPinnedBodiesUntilUnpinned() throws IOException {
+        ContentCache cache = new ContentCache(fileManager, MAX_BYTES);
+        cache.pin("e0");
+        for (int i = 1; i < 5; i++) {
+            cache.load("e" + i);
+        }
+        int loads = fileManager.loads.get();
+        assertEquals(body(0), cache.load("e0"));
+        assertEquals(loads, fileManager.loads.get());
+
+        // Once unpinned, e0 is evicted like any other body
+        cache.unpin("e0");
+        cache.load("e1");
+        cache.load("e2");
+        cache.load("e3");
+        assertEquals(loads + 3, fileManager.loads.get());
+        cache.load("e0");
+        assertEquals(loads + 4, fileManager.loads.get());
+    }
+
+    @Test
+    void servesAnUncommittedSaveFromMemory() throws IOException {
+        ContentCache cache = new ContentCache(fileManager, MAX_BYTES);
+        String edited = "edited but not yet saved";
+        cache.putPinned("e0", edited);
+        for (int i = 1; i < 5; i++) {
+            cache.load("e" + i);
+        }
+        assertEquals(edited, cache.load("e0"));
+        assertEquals(4, fileManager.loads.get());
+
+        cache.replace("e0", edited, "as stored");
+        assertEquals("as stored", cache.load("e0"));
+    }
+
+    @Test
+    void doesNotCacheAReadThatRacedWithAnInvalidation() throws Exception {
+        ContentCache cache = new ContentCache(fileManager, MAX_BYTES);
+        fileManager.reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        fileManager.release = release;
+
+        CompletableFuture<String> read = CompletableFuture.supplyAsync(() -> {
+            try {
+                return cache.load("e0");
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        assertTrue(fileManager.reading.await(10, TimeUnit.SECONDS));
+        // Changed by someone else while the old body was being read
+        save("e0", "changed elsewhere");
+        cache.invalidate("e0");
+        release.countDown();
+
+        assertEquals("changed elsewhere", read.get(10, TimeUnit.SECONDS));
+        assertEquals(2, fileManager.loads.get());
+        assertEquals("changed elsewhere", cache.load("e0"));
+    }
+
+    @Test
+    void failsForAnEntryThatNoLongerExists() {
+        ContentCache cache = new ContentCache(fileManager, MAX_BYTES);
+        assertThrows(IOException.class, () -> cache.load("missing"));
+        assertEquals(0, cache.getStats().getResidentEntries());
+    }
+}
@@ -0,0 +1,33 @@
+package com.diary.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.diary.model.DiaryEntry;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FileManagerTest {
+    private static final LocalDateTime CREATED = LocalDateTime.of(2024, 5, 4, 8, 0);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void savesTheEntryWhenItsRevisionCannotBeRecorded() throws IOException {
+        try (FileManager fileManager = new FileManager(dir)) {
+            fileManager.saveRevision(DiaryEntry.restore("a", "Title", "first", CREATED, CREATED));
+            // What a broken revision log looks like to the save: every append fails
+            fileManager.revisions().close();
+
+            fileManager.saveRevision(DiaryEntry.restore("a", "Title", "second", CREATED, CREATED));
+            assertEquals("second", fileManager.loadEntry("a").getContent());
+        }
+        try (FileManager fileManager = new FileManager(dir)) {
+            assertEquals("second", fileManager.loadEntry("a").getContent());
+            assertEquals("first", fileManager.revisions().content("a", 1));
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.diary.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.diary.model.DiaryEntry;
+import com.diary.storage.BlobStore;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class PersistenceQueueTest {
+    private static final LocalDateTime CREATED = LocalDateTime.of(2024, 5, 4, 8, 0);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void savingLeavesTheModifiedDateAlone() throws Exception {
+        String picture = Base64.getEncoder().encodeToString("a picture".getBytes());
+        DiaryEntry plain = DiaryEntry.restore("plain", "Plain", "<p>No pictures</p>", CREATED, CREATED.plusHours(1));
+        DiaryEntry pictured = DiaryEntry.restore("pictured", "Pictured",
+                "<p>Look</p><img src=\"data:image/png;base64," + picture + "\">", CREATED, CREATED.plusHours(2));
+        try (FileManager fileManager = new FileManager(dir);
+             PersistenceQueue queue = new PersistenceQueue(fileManager, PersistenceQueue.DEFAULT_CAPACITY, false)) {
+            queue.save(plain).get(10, TimeUnit.SECONDS);
+            queue.save(pictured).get(10, TimeUnit.SECONDS);
+
+            assertEquals(CREATED.plusHours(1), plain.getLastModifiedDate());
+            assertEquals(CREATED.plusHours(2), pictured.getLastModifiedDate());
+            assertFalse(pictured.getContent().contains("data:"));
+            assertTrue(pictured.getContent().contains(BlobStore.SCHEME));
+            assertEquals("Look", pictured.getPreview());
+            assertEquals(CREATED.plusHours(2), fileManager.loadEntry("pictured").getLastModifiedDate());
+        }
+    }
+}